@@ -6,6 +6,8 @@
  */
 package immutable;
 
+import java.util.ArrayList;
+
 /**
  * Implementation of immutable generic map using association list. See Map for
  * specification.
@@ -77,16 +79,17 @@ public class ImListMap<K, V> implements ImMap<K, V> {
     }
 
     /*
-     * search through list recursively to find binding with matching key
+     * search through list to find binding with matching key; a loop rather
+     * than recursion, so that large maps do not exhaust the stack
      */
     private Binding get(ImList<Binding> bindings, Object key) {
-        if (bindings.size() == 0)
-            return null;
-        Binding b = bindings.first();
-        if (b.key.equals(key))
-            return b;
-        else
-            return get(bindings.rest(), key);
+        while (bindings.size() != 0) {
+            Binding b = bindings.first();
+            if (b.key.equals(key))
+                return b;
+            bindings = bindings.rest();
+        }
+        return null;
     }
 
     public ImMap<K, V> put(K key, V value) {
@@ -94,19 +97,23 @@ public class ImListMap<K, V> implements ImMap<K, V> {
     }
 
     /*
-     * recursively construct new list with binding for given key replaced or
-     * added
+     * construct new list with binding for given key replaced or added at the
+     * end, keeping the order of the other bindings
      */
     private ImList<Binding> put(ImList<Binding> bindings, K key, V value) {
-        if (bindings.size() == 0)
-            return new NonEmptyImList<Binding>(new Binding(key, value));
-        Binding b = bindings.first();
-        if (b.key.equals(key)) {
-            b = new Binding(key, value);
-            return bindings.rest().add(b);
-        } else {
-            return put(bindings.rest(), key, value).add(b);
+        ArrayList<Binding> before = new ArrayList<Binding>();
+        while (bindings.size() != 0 && !bindings.first().key.equals(key)) {
+            before.add(bindings.first());
+            bindings = bindings.rest();
         }
+        ImList<Binding> result;
+        if (bindings.size() == 0)
+            result = new NonEmptyImList<Binding>(new Binding(key, value));
+        else
+            result = bindings.rest().add(new Binding(key, value));
+        for (int i = before.size() - 1; i >= 0; i--)
+            result = result.add(before.get(i));
+        return result;
     }
 
     public int size() {
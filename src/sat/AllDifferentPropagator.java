@@ -0,0 +1,304 @@
+package sat;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The filtering of an AllDifferent constraint for CDCLSolver, after Regin:
+ * items and values form a bipartite graph, with an edge wherever the
+ * literal saying that the item takes the value is not false. The constraint
+ * can hold only if some matching covers every item, and an edge can be
+ * used in a solution only if it is in some such matching. A maximum
+ * matching is kept from call to call and repaired by augmenting paths; the
+ * edges in no maximum matching are then exactly those that lie neither on
+ * an alternating cycle, found as the strongly connected components of the
+ * matching graph, nor on an alternating path from a free value. Before the
+ * matching, two simpler rules are applied: a value taken by one item is
+ * ruled out for the others, and an item with one value left takes it.
+ *
+ * Every deduction comes with a clause that explains it from literals
+ * already false, so that the solver can analyze conflicts through it. The
+ * simpler rules are explained by the clause of a column or row; matching
+ * conflicts and pruned edges are explained by a Hall set: a set S of items
+ * whose values not yet ruled out number no more than S, so that they use
+ * up all of those values. The explanation is that S has no other values:
+ * the disjunction of the false literals of the items of S for the values
+ * outside, together with the negation of a pruned literal.
+ */
+final class AllDifferentPropagator {
+    // values of a variable or literal, as CDCLSolver stores them
+    private static final byte FALSE = 0;
+    private static final byte TRUE = 1;
+    private static final byte UNDEF = 2;
+
+    // lits[i][k] is the literal saying that item i takes value k
+    private final int[][] lits;
+    private final int items;
+    private final int values;
+    // the matching: matchOfItem[i] is the value of item i, or -1, and
+    // matchOfValue[k] the item of value k, or -1
+    private final int[] matchOfItem;
+    private final int[] matchOfValue;
+    // domain[i][k] is true if lits[i][k] was not false at the last filter
+    private final boolean[][] domain;
+    // marks of the searches, equal to stamp when visited by the current one
+    private final int[] itemMark;
+    private final int[] valueMark;
+    private int stamp;
+    // Tarjan's algorithm over the items 0..items-1 and the values
+    // items..items+values-1 as nodes, and the nodes reachable from a free
+    // value
+    private final int[] index;
+    private final int[] low;
+    private final int[] component;
+    private final boolean[] onStack;
+    private final IntVec stack = new IntVec();
+    private int counter;
+    private final boolean[] fromFree;
+    /*
+     * Rep invariant:
+     *     all rows of lits have length values
+     *     matchOfItem[i] == k iff matchOfValue[k] == i, for k >= 0
+     *
+     * Abstraction function:
+     *     represents the constraint that for each item i some lits[i][k] is
+     *     true, and for each value k at most one lits[i][k] is true
+     */
+
+    /**
+     * Requires: all rows of lits have the same length
+     */
+    AllDifferentPropagator(int[][] lits) {
+        this.lits = lits;
+        items = lits.length;
+        values = items == 0 ? 0 : lits[0].length;
+        matchOfItem = new int[items];
+        Arrays.fill(matchOfItem, -1);
+        matchOfValue = new int[values];
+        Arrays.fill(matchOfValue, -1);
+        domain = new boolean[items][values];
+        itemMark = new int[items];
+        valueMark = new int[values];
+        int nodes = items + values;
+        index = new int[nodes];
+        low = new int[nodes];
+        component = new int[nodes];
+        onStack = new boolean[nodes];
+        fromFree = new boolean[nodes];
+    }
+
+    /**
+     * @return the literals of the constraint, by item and value; the array
+     *         must not be modified
+     */
+    int[][] literals() {
+        return lits;
+    }
+
+    /**
+     * Filter the constraint under an assignment.
+     *
+     * @param assign
+     *            the value of each variable, TRUE, FALSE or UNDEF
+     * @param implied
+     *            receives the literals that the constraint forces, each as
+     *            its reason: a clause of that literal first, then literals
+     *            false under assign
+     * @return null, or if the constraint cannot hold under assign, a clause
+     *         of literals false under assign that says why
+     */
+    int[] filter(byte[] assign, List<int[]> implied) {
+        // a value taken by one item is ruled out for the others
+        for (int k = 0; k < values; k++) {
+            int owner = -1;
+            for (int i = 0; i < items; i++) {
+                if (value(assign, lits[i][k]) != TRUE) continue;
+                if (owner >= 0) return new int[] { lits[owner][k] ^ 1, lits[i][k] ^ 1 };
+                owner = i;
+            }
+            if (owner < 0) continue;
+            for (int i = 0; i < items; i++)
+                if (i != owner && value(assign, lits[i][k]) == UNDEF)
+                    implied.add(new int[] { lits[i][k] ^ 1, lits[owner][k] ^ 1 });
+        }
+        // let the solver propagate those before looking for Hall sets
+        if (!implied.isEmpty()) return null;
+
+        for (int i = 0; i < items; i++) {
+            int left = 0;
+            int last = -1;
+            for (int k = 0; k < values; k++) {
+                domain[i][k] = value(assign, lits[i][k]) != FALSE;
+                if (domain[i][k]) {
+                    left++;
+                    last = k;
+                }
+            }
+            // an item with one value left takes it
+            if (left == 1 && value(assign, lits[i][last]) == UNDEF) {
+                int[] reason = new int[values];
+                reason[0] = lits[i][last];
+                for (int k = 0, r = 1; k < values; k++)
+                    if (k != last) reason[r++] = lits[i][k];
+                implied.add(reason);
+            }
+        }
+        if (!implied.isEmpty()) return null;
+        for (int i = 0; i < items; i++) {
+            int k = matchOfItem[i];
+            if (k >= 0 && !domain[i][k]) {
+                matchOfItem[i] = -1;
+                matchOfValue[k] = -1;
+            }
+        }
+        for (int i = 0; i < items; i++) {
+            if (matchOfItem[i] >= 0) continue;
+            stamp++;
+            // the items visited by a failed search are a Hall set with one
+            // value too few
+            if (!augment(i)) return hallClause(0);
+        }
+
+        findComponents();
+        // the explanation of the pruned edges of each value
+        int[][] explained = new int[values][];
+        for (int i = 0; i < items; i++)
+            for (int k = 0; k < values; k++) {
+                if (!domain[i][k] || matchOfItem[i] == k) continue;
+                if (fromFree[items + k] || component[i] == component[items + k]) continue;
+                if (explained[k] == null) {
+                    // the items that can reach the item of k in the
+                    // matching graph are a Hall set holding k, but not i
+                    stamp++;
+                    reach(matchOfValue[k]);
+                    explained[k] = hallClause(1);
+                }
+                int[] reason = explained[k].clone();
+                reason[0] = lits[i][k] ^ 1;
+                if (value(assign, lits[i][k]) == TRUE) return reason;
+                implied.add(reason);
+            }
+        return null;
+    }
+
+    private static byte value(byte[] assign, int lit) {
+        byte a = assign[lit >> 1];
+        if (a == UNDEF) return UNDEF;
+        return (byte) (a ^ (lit & 1));
+    }
+
+    /**
+     * Look for an augmenting path from unmatched item i, marking the items
+     * and values visited, and match along it if one is found.
+     *
+     * @return true if i was matched
+     */
+    private boolean augment(int i) {
+        itemMark[i] = stamp;
+        for (int k = 0; k < values; k++) {
+            if (!domain[i][k] || valueMark[k] == stamp) continue;
+            valueMark[k] = stamp;
+            int j = matchOfValue[k];
+            if (j < 0 || (itemMark[j] != stamp && augment(j))) {
+                matchOfItem[i] = k;
+                matchOfValue[k] = i;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mark item i, and the items and values reachable from it by going from
+     * an item to each value of its domain, and from a value to its item.
+     * Requires: every value reached is matched
+     */
+    private void reach(int i) {
+        itemMark[i] = stamp;
+        for (int k = 0; k < values; k++) {
+            if (!domain[i][k] || valueMark[k] == stamp) continue;
+            valueMark[k] = stamp;
+            int j = matchOfValue[k];
+            if (itemMark[j] != stamp) reach(j);
+        }
+    }
+
+    /**
+     * @return the clause of lits[i][k] for every marked item i and unmarked
+     *         value k, after extra empty slots at the front
+     */
+    private int[] hallClause(int extra) {
+        IntVec clause = new IntVec();
+        for (int e = 0; e < extra; e++)
+            clause.push(-1);
+        for (int i = 0; i < items; i++) {
+            if (itemMark[i] != stamp) continue;
+            for (int k = 0; k < values; k++)
+                if (valueMark[k] != stamp) clause.push(lits[i][k]);
+        }
+        return clause.toArray();
+    }
+
+    /**
+     * Find the strongly connected components of the matching graph, in
+     * which an item has an edge to its value and a value has an edge to
+     * each other item whose domain holds it, and the nodes reachable from
+     * a free value.
+     * Requires: every item is matched
+     */
+    private void findComponents() {
+        Arrays.fill(index, -1);
+        Arrays.fill(fromFree, false);
+        counter = 0;
+        for (int node = 0; node < items + values; node++)
+            if (index[node] < 0) strongConnect(node);
+        IntVec queue = new IntVec();
+        for (int k = 0; k < values; k++)
+            if (matchOfValue[k] < 0) {
+                fromFree[items + k] = true;
+                queue.push(items + k);
+            }
+        while (!queue.isEmpty()) {
+            int node = queue.pop();
+            for (int next = successor(node, -1); next >= 0; next = successor(node, next))
+                if (!fromFree[next]) {
+                    fromFree[next] = true;
+                    queue.push(next);
+                }
+        }
+    }
+
+    private void strongConnect(int node) {
+        index[node] = low[node] = counter++;
+        stack.push(node);
+        onStack[node] = true;
+        for (int next = successor(node, -1); next >= 0; next = successor(node, next)) {
+            if (index[next] < 0) {
+                strongConnect(next);
+                low[node] = Math.min(low[node], low[next]);
+            } else if (onStack[next]) {
+                low[node] = Math.min(low[node], index[next]);
+            }
+        }
+        if (low[node] == index[node]) {
+            int member;
+            do {
+                member = stack.pop();
+                onStack[member] = false;
+                component[member] = node;
+            } while (member != node);
+        }
+    }
+
+    /**
+     * @return the successor of node in the matching graph that follows
+     *         after, or the first one if after is -1; -1 if there is none
+     */
+    private int successor(int node, int after) {
+        if (node < items) return after < 0 ? items + matchOfItem[node] : -1;
+        int k = node - items;
+        for (int j = after + 1; j < items; j++)
+            if (domain[j][k] && matchOfItem[j] != k) return j;
+        return -1;
+    }
+}
@@ -0,0 +1,1172 @@
+package sat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import sat.env.Environment;
+import sat.formula.CompiledFormula;
+
+/**
+ * A conflict-driven clause learning (CDCL) SAT solver.
+ *
+ * Where the DPLL search in SATSolver undoes only the most recent decision
+ * when it reaches a contradiction, this solver analyses each conflict back
+ * to its first unique implication point (1-UIP), learns the resulting clause
+ * so that the same conflict can never happen again, and jumps back to the
+ * highest decision level at which the learned clause becomes unit.
+ *
+ * The search restarts from level 0 whenever the RestartPolicy of its
+ * SolverConfig says so. With phase saving, each decision gives a variable
+ * the value it had when it was last unassigned, so a restart quickly rebuilds
+ * most of the assignment it abandoned.
+ *
+ * Clauses live in a ClauseStore, which is either on the heap or, for
+ * problems with millions of clauses, in an off-heap arena that the garbage
+ * collector never scans; see SolverConfig.withOffHeapClauses.
+ *
+ * Learned clauses are kept in a LearnedClauses database, which is reduced
+ * every few thousand conflicts, and at once whenever the learned clauses
+ * outgrow the byte budget of the SolverConfig.
+ *
+ * The solver works on a CompiledFormula: variables are numbered densely from
+ * 0, the literal for variable v is the int 2v and its negation 2v+1, so that
+ * negating a literal is lit ^ 1 and its variable is lit >> 1.
+ *
+ * A solve may be given assumptions: literals that are taken as the first
+ * decisions, one decision level each, so that everything learned from them
+ * is still implied by the problem alone. The solver can therefore be called
+ * again with other assumptions, keeping its learned clauses, activities and
+ * saved phases; see IncrementalSolver. When the assumptions cannot all hold,
+ * the solver reports a subset of them that already cannot. Clauses may
+ * also be added between solves, such as those that block the solutions
+ * already found; see SATSolver.countSolutions.
+ *
+ * AtMostOne constraints of the problem are propagated natively: when a
+ * literal of one becomes true, every other literal of it is made false,
+ * with the constraint as the reason, and no pairwise clauses are stored.
+ * AllDifferent constraints are filtered by an AllDifferentPropagator
+ * whenever propagation through the clauses is done and one of their
+ * literals has been assigned; the clauses that explain its deductions are
+ * kept only while the literals they imply stay assigned.
+ *
+ * An ExternalPropagator may be connected, to add reasoning of the client's
+ * own: it is told about assignments and backtracks, asked for implied
+ * literals after the constraints of the problem are propagated, asked for
+ * the reason of an implied literal only when conflict analysis needs it,
+ * and shown every model before it is returned.
+ *
+ * If its SolverConfig holds a ProofWriter, the solver writes a DRAT proof
+ * to it: every clause it learns, every learned clause it evicts, the
+ * clauses the external propagator explains its literals with, which a
+ * checker accepts only if the problem implies them by unit propagation, and
+ * the empty clause once the problem is found unsatisfiable. The proof is of
+ * the problem with its constraints expanded into clauses, which the solver
+ * then works on instead.
+ *
+ * The first solve may begin with a LocalSearch, if the SolverConfig asks
+ * for one: a solution it finds is returned, and otherwise its best
+ * assignment replaces the phases, so that the first decisions head
+ * towards it.
+ *
+ * A solve gives up when it has used up a budget of its SolverConfig, in
+ * conflicts, decisions or propagations, runs past its time limit, or its
+ * CancellationToken is cancelled. The counts are compared at every step of
+ * the search; the clock and the token, which cost more, are looked at only
+ * every POLL_INTERVAL steps.
+ *
+ * In a portfolio, several solvers run on the same problem in different
+ * threads: each shares its short learned clauses through a ClauseExchange
+ * and takes in those of the others at every restart, and each can be
+ * stopped from another thread once one of them has an answer.
+ *
+ * A CDCLSolver is mutable.
+ */
+class CDCLSolver {
+    // values of a variable or literal
+    private static final byte FALSE = 0;
+    private static final byte TRUE = 1;
+    private static final byte UNDEF = 2;
+    // reason of a decision or a top-level fact
+    private static final int NO_REASON = -1;
+    // reason of a literal whose explaining clause is held in explanation,
+    // and conflict whose clause is explainedConflict
+    private static final int EXPLAINED = -2;
+    // reason of a literal implied by the external propagator, which has
+    // not been asked for the clause yet
+    private static final int EXTERNAL = -3;
+    // factor by which variable activities decay after each conflict
+    private static final double VAR_DECAY = 0.95;
+    // conflicts before the first reduction of the learned clauses, and
+    // growth of that interval after each reduction
+    private static final int FIRST_REDUCE = 2000;
+    private static final int REDUCE_INCREMENT = 300;
+    // fewest conflicts between two reductions forced by the byte budget, so
+    // that locked clauses over budget do not cause a reduction per conflict
+    private static final int MIN_REDUCE_GAP = 100;
+    // steps of the search between two looks at the clock and the
+    // cancellation token
+    private static final int POLL_INTERVAL = 256;
+
+    // the problem, which also maps variable numbers back to variables
+    private final CompiledFormula formula;
+    // the clauses of the problem and the learned ones, by reference
+    private final ClauseStore clauses;
+    // the learned clauses among them
+    private final LearnedClauses learned;
+    // number of conflicts at which to reduce the learned clauses next
+    private long nextReduce = FIRST_REDUCE;
+    private long lastReduce;
+    private long reduceInterval = FIRST_REDUCE;
+    // watches[lit] holds pairs (cr, blocker): clause cr has lit as one of
+    // its first two literals, and blocker is some other literal of cr whose
+    // truth lets propagation skip the clause without reading it
+    private final IntVec[] watches;
+    // the literals of each AtMostOne constraint, and amoOccurs[lit] holds
+    // the constraints that contain lit
+    private final int[][] atMostOnes;
+    private final IntVec[] amoOccurs;
+    // the second true literal of a conflict in an AtMostOne constraint
+    private int amoConflict;
+    // the AllDifferent constraints, adOccurs[v] holds those over variable v,
+    // and adQueue those to filter, for which adDirty is true
+    private final AllDifferentPropagator[] allDifferents;
+    private final IntVec[] adOccurs;
+    private final boolean[] adDirty;
+    private final IntVec adQueue = new IntVec();
+    // the literals implied by the last filter, each as its reason
+    private final List<int[]> implied = new ArrayList<int[]>();
+    // explanation[v] is the clause that forced v if its reason is EXPLAINED,
+    // with the literal of v first, and explainedConflict the clause of the
+    // last EXPLAINED conflict
+    private final int[][] explanation;
+    private int[] explainedConflict;
+    // the external propagator, if any, observed[v] if it is told about v,
+    // and trail[externalHead..trailSize-1] the assignments not told yet
+    private ExternalPropagator external;
+    private boolean[] observed;
+    private int externalHead;
+
+    // assign[v] is TRUE, FALSE or UNDEF
+    private final byte[] assign;
+    // level[v] is the decision level at which v was assigned
+    private final int[] level;
+    // reason[v] is the clause that forced v, or NO_REASON, EXPLAINED or
+    // EXTERNAL, or if v was forced by an AtMostOne constraint in which
+    // literal lit became true, amoReason(lit)
+    private final int[] reason;
+    // assigned literals in chronological order
+    private final int[] trail;
+    private int trailSize;
+    // trailLim.get(d) is the position in trail of the decision of level d+1
+    private final IntVec trailLim = new IntVec();
+    // trail[qhead..trailSize-1] have not yet been propagated
+    private int qhead;
+    // scratch marks used by conflict analysis
+    private final boolean[] seen;
+    // branching order on variable activity
+    private final VarOrder order;
+    // phase[v] is the value a decision gives v: its last value when phase
+    // saving is on, otherwise always TRUE
+    private final byte[] phase;
+    private final boolean phaseSaving;
+    // levelStamp[d] == stamp iff level d was already counted by lbd()
+    private int[] levelStamp;
+    private int stamp;
+    // schedule of restarts, private to this solve
+    private final RestartPolicy restarts;
+    private final SolverStats stats = new SolverStats();
+    // true once the problem is known to be unsatisfiable at level 0
+    private boolean inconsistent;
+    // assumptions of the last solve that together could not hold
+    private final IntVec failed = new IntVec();
+    // where learned clauses are shared with other solvers, if anywhere,
+    // and the number of this solver there
+    private ClauseExchange exchange;
+    private int exchangeId;
+    // set by another thread to abandon the search
+    private volatile boolean stopped;
+    // the limits of the configuration, per solve, and the counts at which
+    // the current solve reaches them
+    private final long conflictLimit;
+    private final long decisionLimit;
+    private final long propagationLimit;
+    private final long timeLimit;
+    private final CancellationToken cancellation;
+    private long maxConflicts;
+    private long maxDecisions;
+    private long maxPropagations;
+    private long deadline;
+    // steps left before the clock and the token are looked at again
+    private int poll;
+    // true if the last solve gave up before it found an answer
+    private boolean gaveUp;
+    // where the proof is written, if anywhere
+    private final ProofWriter proof;
+    // flips of the local search before the first solve, and the seed it
+    // draws from; localSearchFlips is 0 once it has run
+    private long localSearchFlips;
+    private final long seed;
+
+    /*
+     * Rep invariant:
+     *     for every variable v, assign[v] != UNDEF iff v appears exactly
+     *         once in trail[0..trailSize-1]
+     *     trailLim is non-decreasing and every element is <= trailSize
+     *     0 <= qhead <= trailSize
+     *     every clause in clauses has at least two literals; unit clauses
+     *         of the problem are assigned at level 0 instead
+     *     every stored clause cr is watched exactly by its first two
+     *         literals: the watches of each of them hold one pair for cr
+     *     after propagate() returns NO_REASON, no watched literal of a clause
+     *         is false unless the other watched literal is true
+     *     every unassigned variable is in order
+     *
+     * Abstraction function:
+     *     represents the search state of the conjunction of clauses over
+     *     the variables of formula, under the partial assignment on the trail
+     */
+
+    /**
+     * Create a solver for the clauses of formula, configured by config.
+     */
+    CDCLSolver(CompiledFormula formula, SolverConfig config) {
+        proof = config.getProof();
+        // a proof is checked against clauses only
+        if (proof != null) formula = formula.expandConstraints();
+        this.formula = formula;
+        clauses = config.isOffHeapClauses() ? ClauseStore.offHeap() : ClauseStore.onHeap();
+        int n = formula.getNumVariables();
+        watches = new IntVec[2 * n];
+        for (int lit = 0; lit < 2 * n; lit++)
+            watches[lit] = new IntVec();
+        assign = new byte[n];
+        for (int v = 0; v < n; v++)
+            assign[v] = UNDEF;
+        level = new int[n];
+        reason = new int[n];
+        trail = new int[n];
+        seen = new boolean[n];
+        order = new VarOrder(n, VAR_DECAY);
+        phase = new byte[n];
+        for (int v = 0; v < n; v++)
+            phase[v] = TRUE;
+        phaseSaving = config.isPhaseSaving();
+        conflictLimit = config.getConflictLimit();
+        decisionLimit = config.getDecisionLimit();
+        propagationLimit = config.getPropagationLimit();
+        timeLimit = config.getTimeLimit();
+        cancellation = config.getCancellation();
+        localSearchFlips = config.getLocalSearchFlips();
+        seed = config.getSeed();
+        levelStamp = new int[n + 1];
+        restarts = config.getRestartPolicy().copy();
+        learned = new LearnedClauses(config.getLearnedClauseBudget());
+        stats.restartPolicy = restarts.toString();
+        if (config.getSeed() != 0) {
+            Random random = new Random(config.getSeed());
+            order.shuffle(random);
+            for (int v = 0; v < n; v++)
+                phase[v] = random.nextBoolean() ? TRUE : FALSE;
+        }
+
+        for (int i = 0; i < formula.getNumClauses(); i++)
+            addProblemClause(formula.clause(i));
+        atMostOnes = new int[formula.getNumAtMostOnes()][];
+        amoOccurs = new IntVec[2 * n];
+        for (int lit = 0; lit < 2 * n; lit++)
+            amoOccurs[lit] = new IntVec();
+        for (int i = 0; i < atMostOnes.length; i++)
+            addAtMostOne(i, formula.atMostOne(i));
+        explanation = new int[n][];
+        allDifferents = new AllDifferentPropagator[formula.getNumAllDifferents()];
+        adOccurs = new IntVec[n];
+        for (int v = 0; v < n; v++)
+            adOccurs[v] = new IntVec();
+        adDirty = new boolean[allDifferents.length];
+        for (int i = 0; i < allDifferents.length; i++) {
+            allDifferents[i] = new AllDifferentPropagator(formula.allDifferent(i));
+            for (int[] row : allDifferents[i].literals())
+                for (int q : row)
+                    if (adOccurs[q >> 1].isEmpty() || adOccurs[q >> 1].last() != i)
+                        adOccurs[q >> 1].push(i);
+            // every constraint is filtered once at level 0
+            adDirty[i] = true;
+            adQueue.push(i);
+        }
+    }
+
+    /**
+     * Add AtMostOne constraint i of the problem. A literal given twice must
+     * be false; if a literal and its negation are both given, one of them
+     * is true, so all the other literals must be false.
+     */
+    private void addAtMostOne(int i, int[] lits) {
+        int[] sorted = lits.clone();
+        Arrays.sort(sorted);
+        IntVec distinct = new IntVec(lits.length);
+        for (int k = 0; k < sorted.length; k++) {
+            int q = sorted[k];
+            if (k + 1 < sorted.length && sorted[k + 1] == q) {
+                addProblemClause(new int[] { q ^ 1 });
+            } else if (k + 1 < sorted.length && sorted[k + 1] == (q ^ 1)) {
+                for (int other : sorted)
+                    if (other >> 1 != q >> 1) addProblemClause(new int[] { other ^ 1 });
+                atMostOnes[i] = new int[0];
+                return;
+            }
+            if (distinct.isEmpty() || distinct.last() != q) distinct.push(q);
+        }
+        atMostOnes[i] = distinct.toArray();
+        for (int q : atMostOnes[i])
+            amoOccurs[q].push(i);
+    }
+
+    /**
+     * Add a clause of the problem at decision level 0.
+     */
+    private void addProblemClause(int[] lits) {
+        if (inconsistent) return;
+        if (lits.length == 0) {
+            refuted();
+        } else if (lits.length == 1) {
+            byte val = value(lits[0]);
+            if (val == FALSE) refuted();
+            else if (val == UNDEF) enqueue(lits[0], NO_REASON);
+        } else {
+            attach(lits);
+        }
+    }
+
+    /**
+     * Search for a satisfying assignment.
+     *
+     * @return an environment binding every variable of the problem for which
+     *         the problem evaluates to Bool.TRUE, or null if no such
+     *         environment exists.
+     */
+    Environment solve() {
+        boolean[] model = solveModel();
+        return model == null ? null : formula.toEnvironment(model);
+    }
+
+    /**
+     * Search for a satisfying assignment.
+     *
+     * @return the value of each variable, by number, in an assignment for
+     *         which the problem evaluates to Bool.TRUE, or null if no such
+     *         assignment exists.
+     */
+    boolean[] solveModel() {
+        return solveModel(new int[0]);
+    }
+
+    /**
+     * Search for a satisfying assignment that makes every literal of
+     * assumptions true. Afterwards the solver is back at decision level 0,
+     * ready to be called again.
+     *
+     * @return the value of each variable, by number, in such an assignment
+     *         for which the problem evaluates to Bool.TRUE, or null if no
+     *         such assignment exists; in that case getFailedAssumptions()
+     *         tells which assumptions were to blame. Null also if the solve
+     *         gave up, which isStopped() then tells.
+     */
+    boolean[] solveModel(int[] assumptions) {
+        long started = System.nanoTime();
+        failed.clear();
+        gaveUp = false;
+        maxConflicts = plus(stats.conflicts, conflictLimit);
+        maxDecisions = plus(stats.decisions, decisionLimit);
+        maxPropagations = plus(stats.propagations, propagationLimit);
+        deadline = timeLimit == Long.MAX_VALUE ? Long.MAX_VALUE
+                : started + Math.min(timeLimit, Long.MAX_VALUE / 4000000) * 1000000;
+        poll = POLL_INTERVAL;
+        // every assumption may open a level of its own
+        int levels = assign.length + assumptions.length + 1;
+        if (levelStamp.length < levels) levelStamp = new int[levels];
+        try {
+            if (localSearchFlips > 0 && !inconsistent) {
+                boolean[] model = walk(assumptions);
+                if (model != null) return model;
+            }
+            return search(assumptions);
+        } finally {
+            cancelUntil(0);
+            stats.searchNanos += System.nanoTime() - started;
+        }
+    }
+
+    /**
+     * Run the local search, and take its best assignment as the phases.
+     *
+     * @return the solution it found, if it makes every assumption true and
+     *         there is no external propagator to ask, otherwise null
+     */
+    private boolean[] walk(int[] assumptions) {
+        LocalSearch walk = new LocalSearch(formula, seed);
+        boolean[] model = walk.search(localSearchFlips, deadline, cancellation);
+        localSearchFlips = 0;
+        stats.flips += walk.getFlips();
+        boolean[] best = model != null ? model : walk.getBest();
+        for (int v = 0; v < phase.length; v++)
+            phase[v] = best[v] ? TRUE : FALSE;
+        if (model == null || external != null) return null;
+        for (int p : assumptions)
+            if (model[p >> 1] == ((p & 1) != 0)) return null;
+        return model;
+    }
+
+    /**
+     * Requires: decision level 0, which is the case between solves, and no
+     * proof, which the clause would make invalid
+     * Add a clause to the problem for every later solve, even if the
+     * problem does not imply it, such as one that blocks a solution already
+     * found. Literals false at level 0 are dropped, and a clause true at
+     * level 0, or that holds a literal and its negation, is skipped. Unlike
+     * a learned clause, it is never evicted.
+     */
+    void addClause(int[] lits) {
+        assert decisionLevel() == 0 && proof == null;
+        int[] sorted = lits.clone();
+        Arrays.sort(sorted);
+        IntVec kept = new IntVec(sorted.length);
+        for (int k = 0; k < sorted.length; k++) {
+            int q = sorted[k];
+            byte val = value(q);
+            if (val == TRUE || (k > 0 && sorted[k - 1] == (q ^ 1))) return;
+            if (val == UNDEF && (k == 0 || sorted[k - 1] != q)) kept.push(q);
+        }
+        addProblemClause(kept.toArray());
+    }
+
+    /**
+     * @return the assumptions of the last solve that cannot all be true
+     *         together with the problem: empty if the problem is
+     *         unsatisfiable by itself, and empty if the last solve found a
+     *         solution
+     */
+    int[] getFailedAssumptions() {
+        return failed.toArray();
+    }
+
+    /**
+     * Share learned clauses over exchange, as solver number id of it.
+     */
+    void share(ClauseExchange exchange, int id) {
+        this.exchange = exchange;
+        exchangeId = id;
+    }
+
+    /**
+     * Connect propagator, to take part in every solve from now on. Requires
+     * decision level 0, which is the case between solves.
+     */
+    void connect(ExternalPropagator propagator) {
+        external = propagator;
+        observed = new boolean[assign.length];
+        for (int v = 0; v < assign.length; v++)
+            observed[v] = propagator.observes(v);
+        // the assignments at level 0 are told at the next propagation
+        externalHead = 0;
+    }
+
+    /**
+     * Make the current solve, or the next one, give up as soon as it sees
+     * this. Safe to call from any thread.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return true if the last solve gave up, because stop() was called or
+     *         a limit of the configuration was reached, in which case its
+     *         null result says nothing about the problem
+     */
+    boolean isStopped() {
+        return gaveUp;
+    }
+
+    /**
+     * @return a + b, or Long.MAX_VALUE if that is more. Requires a, b >= 0
+     */
+    private static long plus(long a, long b) {
+        return a > Long.MAX_VALUE - b ? Long.MAX_VALUE : a + b;
+    }
+
+    /**
+     * @return true if the current solve must give up: it was stopped, has
+     *         used up a budget, or, looked at every POLL_INTERVAL calls,
+     *         has run out of time or been cancelled
+     */
+    private boolean outOfBudget() {
+        if (stopped || stats.conflicts > maxConflicts || stats.decisions > maxDecisions
+                || stats.propagations > maxPropagations)
+            return true;
+        if (--poll > 0) return false;
+        poll = POLL_INTERVAL;
+        return (cancellation != null && cancellation.isCancelled())
+                || (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0);
+    }
+
+    /**
+     * @return the statistics of this solver so far
+     */
+    SolverStats getStats() {
+        return stats;
+    }
+
+    private boolean[] search(int[] assumptions) {
+        if (inconsistent) return null;
+        IntVec learnt = new IntVec();
+        while (true) {
+            if (outOfBudget()) {
+                gaveUp = true;
+                return null;
+            }
+            int confl = propagateAll();
+            if (confl == NO_REASON && external != null && trailSize == assign.length)
+                confl = checkExternalModel();
+            if (confl == EXPLAINED) {
+                // an explained conflict may lie wholly below the current
+                // level: analysis starts from its highest level
+                int highest = 0;
+                for (int q : explainedConflict)
+                    highest = Math.max(highest, level[q >> 1]);
+                cancelUntil(highest);
+            }
+            if (confl != NO_REASON) {
+                stats.conflicts++;
+                if (decisionLevel() == 0) {
+                    refuted();
+                    return null;
+                }
+                learnt.clear();
+                int backtrackLevel = analyze(confl, learnt);
+                order.decayAll();
+                learned.decayAll();
+                int[] lits = learnt.toArray();
+                if (proof != null) proof.add(lits);
+                int lbd = lbd(lits);
+                if (exchange != null && ClauseExchange.worthSharing(lits.length, lbd)) {
+                    exchange.export(exchangeId, lits);
+                    stats.exported++;
+                }
+                stats.backtracks += decisionLevel() - backtrackLevel;
+                cancelUntil(backtrackLevel);
+                if (lits.length == 1) {
+                    enqueue(lits[0], NO_REASON);
+                } else {
+                    int cr = attach(lits);
+                    learned.add(cr, lits.length, lbd);
+                    enqueue(lits[0], cr);
+                }
+                if (stats.conflicts >= nextReduce || (learned.overBudget()
+                        && stats.conflicts >= lastReduce + MIN_REDUCE_GAP))
+                    reduceLearned();
+                if (restarts.conflict(lbd)) {
+                    cancelUntil(0);
+                    restarts.restarted();
+                    stats.restarts++;
+                    if (exchange != null) importShared();
+                    if (inconsistent) return null;
+                }
+            } else {
+                // decide the assumptions first, then by activity
+                int next = -1;
+                while (next == -1 && decisionLevel() < assumptions.length) {
+                    int p = assumptions[decisionLevel()];
+                    if (value(p) == TRUE) {
+                        // already implied: open an empty level for it
+                        newDecisionLevel();
+                    } else if (value(p) == FALSE) {
+                        analyzeFinal(p);
+                        return null;
+                    } else {
+                        next = p;
+                    }
+                }
+                if (next == -1) {
+                    next = pickBranchLiteral();
+                    if (next == -1) return model();
+                    stats.decisions++;
+                }
+                newDecisionLevel();
+                enqueue(next, NO_REASON);
+            }
+        }
+    }
+
+    /**
+     * Requires: decision level 0, with everything propagated
+     * Add the clauses other solvers have shared since the last call, as
+     * learned clauses: literals false at level 0 are dropped, a clause true
+     * at level 0 is skipped, and a unit clause is enqueued.
+     */
+    private void importShared() {
+        int[] c;
+        while (!inconsistent && (c = exchange.poll(exchangeId)) != null) {
+            stats.imported++;
+            IntVec lits = new IntVec(c.length);
+            boolean satisfied = false;
+            for (int q : c) {
+                byte val = value(q);
+                if (val == TRUE) satisfied = true;
+                else if (val == UNDEF) lits.push(q);
+            }
+            if (satisfied) continue;
+            if (lits.isEmpty()) {
+                refuted();
+            } else if (lits.size() == 1) {
+                enqueue(lits.get(0), NO_REASON);
+            } else {
+                int cr = attach(lits.toArray());
+                learned.add(cr, lits.size(), lits.size());
+            }
+        }
+    }
+
+    /**
+     * @return the value of literal lit under the current assignment
+     */
+    private byte value(int lit) {
+        byte a = assign[lit >> 1];
+        if (a == UNDEF) return UNDEF;
+        return (byte) (a ^ (lit & 1));
+    }
+
+    /**
+     * Record that the problem is unsatisfiable, ending the proof, if any,
+     * with the empty clause.
+     */
+    private void refuted() {
+        if (!inconsistent && proof != null) proof.add(new int[0]);
+        inconsistent = true;
+    }
+
+    private int decisionLevel() {
+        return trailLim.size();
+    }
+
+    /**
+     * Open a new decision level.
+     */
+    private void newDecisionLevel() {
+        if (external != null) {
+            notifyExternal();
+            external.notifyNewDecisionLevel();
+        }
+        trailLim.push(trailSize);
+        if (trailLim.size() > stats.maxDepth) stats.maxDepth = trailLim.size();
+    }
+
+    /**
+     * Requires: lit is unassigned
+     * Make lit true at the current decision level, forced by clause from.
+     */
+    private void enqueue(int lit, int from) {
+        int v = lit >> 1;
+        assign[v] = (byte) ((lit & 1) ^ 1);
+        level[v] = decisionLevel();
+        reason[v] = from;
+        trail[trailSize++] = lit;
+    }
+
+    /**
+     * Store a clause and watch its first two literals.
+     * Requires: lits has at least two literals
+     * @return the reference of the new clause
+     */
+    private int attach(int[] lits) {
+        int cr = clauses.add(lits);
+        watches[lits[0]].push(cr);
+        watches[lits[0]].push(lits[1]);
+        watches[lits[1]].push(cr);
+        watches[lits[1]].push(lits[0]);
+        return cr;
+    }
+
+    /**
+     * Propagate all enqueued literals using two watched literals per clause:
+     * when a literal becomes false only the clauses watching it are visited,
+     * and each either finds a new non-false literal to watch, or forces its
+     * other watched literal, or is in conflict. Watches are never moved back
+     * on backtracking, since a watch that was valid stays valid when
+     * assignments are undone.
+     *
+     * @return the reference of a clause that has become false, or NO_REASON
+     *         if no conflict was found
+     */
+    private int propagate() {
+        // clauses read, counted here rather than in stats for speed
+        int visited = 0;
+        while (qhead < trailSize) {
+            int p = trail[qhead++];
+            stats.propagations++;
+            IntVec constraints = adOccurs[p >> 1];
+            for (int i = 0; i < constraints.size(); i++) {
+                int c = constraints.get(i);
+                if (!adDirty[c]) {
+                    adDirty[c] = true;
+                    adQueue.push(c);
+                }
+            }
+            // every other literal of a constraint holding p must be false
+            IntVec groups = amoOccurs[p];
+            for (int g = 0; g < groups.size(); g++) {
+                for (int q : atMostOnes[groups.get(g)]) {
+                    if (q == p) continue;
+                    byte val = value(q);
+                    if (val == TRUE) {
+                        amoConflict = q;
+                        qhead = trailSize;
+                        stats.clausesVisited += visited;
+                        return amoReason(p);
+                    }
+                    if (val == UNDEF) enqueue(q ^ 1, amoReason(p));
+                }
+            }
+            int falseLit = p ^ 1;
+            IntVec ws = watches[falseLit];
+            int n = ws.size();
+            int i = 0;
+            int j = 0;
+            while (i < n) {
+                int cr = ws.get(i);
+                int blocker = ws.get(i + 1);
+                i += 2;
+                if (value(blocker) == TRUE) {
+                    ws.set(j++, cr);
+                    ws.set(j++, blocker);
+                    continue;
+                }
+                visited++;
+                // make sure the false literal is the second one
+                int first = clauses.get(cr, 0);
+                if (first == falseLit) {
+                    first = clauses.get(cr, 1);
+                    clauses.set(cr, 0, first);
+                    clauses.set(cr, 1, falseLit);
+                }
+                if (first != blocker && value(first) == TRUE) {
+                    ws.set(j++, cr);
+                    ws.set(j++, first);
+                    continue;
+                }
+                // look for a new literal to watch
+                boolean moved = false;
+                int size = clauses.size(cr);
+                for (int k = 2; k < size; k++) {
+                    int lit = clauses.get(cr, k);
+                    if (value(lit) != FALSE) {
+                        clauses.set(cr, 1, lit);
+                        clauses.set(cr, k, falseLit);
+                        watches[lit].push(cr);
+                        watches[lit].push(first);
+                        moved = true;
+                        break;
+                    }
+                }
+                if (moved) continue;
+                // the clause is unit or false under the assignment
+                ws.set(j++, cr);
+                ws.set(j++, first);
+                if (value(first) == FALSE) {
+                    while (i < n)
+                        ws.set(j++, ws.get(i++));
+                    ws.shrinkTo(j);
+                    qhead = trailSize;
+                    stats.clausesVisited += visited;
+                    return cr;
+                }
+                enqueue(first, cr);
+            }
+            ws.shrinkTo(j);
+        }
+        stats.clausesVisited += visited;
+        return NO_REASON;
+    }
+
+    /**
+     * Analyse a conflict down to the first unique implication point, bumping
+     * the activity of every variable met on the way.
+     *
+     * @param confl
+     *            reference of the clause that became false
+     * @param learnt
+     *            empty vector that receives the learned clause; its first
+     *            literal is the asserting one and its second literal, if
+     *            any, has the highest decision level of the rest
+     * @return the decision level to jump back to
+     */
+    private int analyze(int confl, IntVec learnt) {
+        learnt.push(-1);
+        int pathCount = 0;
+        int p = -1;
+        int index = trailSize - 1;
+        do {
+            if (confl == EXTERNAL) confl = explainExternal(p);
+            if (confl >= 0 && learned.contains(confl) && learned.tier(confl) != LearnedClauses.CORE)
+                learned.used(confl, lbd(confl));
+            int size = reasonSize(confl, p);
+            for (int k = 0; k < size; k++) {
+                int q = reasonLiteral(confl, k, p);
+                if (q == p) continue;
+                int v = q >> 1;
+                if (!seen[v] && level[v] > 0) {
+                    seen[v] = true;
+                    order.bump(v);
+                    if (level[v] >= decisionLevel()) pathCount++;
+                    else learnt.push(q);
+                }
+            }
+            while (!seen[trail[index] >> 1])
+                index--;
+            p = trail[index--];
+            confl = reason[p >> 1];
+            seen[p >> 1] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        learnt.set(0, p ^ 1);
+
+        int backtrackLevel = 0;
+        if (learnt.size() > 1) {
+            int max = 1;
+            for (int i = 2; i < learnt.size(); i++)
+                if (level[learnt.get(i) >> 1] > level[learnt.get(max) >> 1])
+                    max = i;
+            int q = learnt.get(max);
+            learnt.set(max, learnt.get(1));
+            learnt.set(1, q);
+            backtrackLevel = level[q >> 1];
+        }
+        for (int i = 1; i < learnt.size(); i++)
+            seen[learnt.get(i) >> 1] = false;
+        return backtrackLevel;
+    }
+
+    /**
+     * Requires: every decision on the trail is an assumption
+     * Find the assumptions that force the assumption p to be false, by
+     * following the reasons of ~p back to the decisions they came from,
+     * and put them with p into failed.
+     */
+    private void analyzeFinal(int p) {
+        failed.push(p);
+        int x = p >> 1;
+        if (level[x] == 0) return;
+        seen[x] = true;
+        for (int i = trailSize - 1; i >= trailLim.get(0); i--) {
+            int v = trail[i] >> 1;
+            if (!seen[v]) continue;
+            int r = reason[v];
+            if (r == EXTERNAL) r = explainExternal(trail[i]);
+            if (r == NO_REASON) {
+                failed.push(trail[i]);
+            } else {
+                int size = reasonSize(r, trail[i]);
+                for (int k = 0; k < size; k++) {
+                    int u = reasonLiteral(r, k, trail[i]) >> 1;
+                    if (u != v && level[u] > 0) seen[u] = true;
+                }
+            }
+            seen[v] = false;
+        }
+        seen[x] = false;
+    }
+
+    /**
+     * Propagate through the clauses and AtMostOne constraints, then filter
+     * the AllDifferent constraints that have had literals assigned, then
+     * ask the external propagator, if any, until none of them has anything
+     * left to imply.
+     *
+     * @return a conflict, as propagate returns it, or NO_REASON
+     */
+    private int propagateAll() {
+        while (true) {
+            int confl = propagate();
+            if (confl != NO_REASON) return confl;
+            int before = trailSize;
+            if (!adQueue.isEmpty()) {
+                confl = filterAllDifferents();
+                if (confl != NO_REASON) return confl;
+                if (trailSize != before) continue;
+            }
+            if (external == null) return NO_REASON;
+            confl = propagateExternal();
+            if (confl != NO_REASON || trailSize == before) return confl;
+        }
+    }
+
+    /**
+     * Tell the external propagator about the assignments it has not been
+     * told about yet.
+     */
+    private void notifyExternal() {
+        for (; externalHead < trailSize; externalHead++) {
+            int lit = trail[externalHead];
+            if (observed[lit >> 1]) external.notifyAssignment(lit);
+        }
+    }
+
+    /**
+     * Enqueue the literals the external propagator implies.
+     *
+     * @return EXPLAINED if one of them is false, or NO_REASON
+     */
+    private int propagateExternal() {
+        notifyExternal();
+        for (int lit = external.propagate(); lit != -1; lit = external.propagate()) {
+            byte val = value(lit);
+            if (val == FALSE) {
+                explainedConflict = externalClause(external.reason(lit), lit);
+                return EXPLAINED;
+            }
+            if (val == UNDEF) {
+                enqueue(lit, EXTERNAL);
+                // the checker derives facts at level 0 by unit propagation
+                // alone, so their reasons must be in the proof
+                if (proof != null && decisionLevel() == 0) explainExternal(lit);
+            }
+        }
+        return NO_REASON;
+    }
+
+    /**
+     * Show the complete assignment to the external propagator.
+     *
+     * @return EXPLAINED if it rejects the assignment, or NO_REASON
+     */
+    private int checkExternalModel() {
+        notifyExternal();
+        int[] clause = external.checkModel(model());
+        if (clause == null) return NO_REASON;
+        explainedConflict = externalClause(clause, -1);
+        return EXPLAINED;
+    }
+
+    /**
+     * Requires: the reason of the literal of p is EXTERNAL
+     * Ask the external propagator for the reason of p, and keep it as an
+     * explanation.
+     *
+     * @return EXPLAINED, the reason of p from now on
+     */
+    private int explainExternal(int p) {
+        explanation[p >> 1] = externalClause(external.reason(p), p);
+        reason[p >> 1] = EXPLAINED;
+        return EXPLAINED;
+    }
+
+    /**
+     * @return clause, a clause given by the external propagator, after
+     *         checking that it has implied first, unless implied is -1, and
+     *         that all its other literals are false, and adding it to the
+     *         proof, if any
+     */
+    private int[] externalClause(int[] clause, int implied) {
+        boolean ok = clause != null && (implied == -1 ? clause.length > 0 : clause.length > 0 && clause[0] == implied);
+        for (int k = implied == -1 ? 0 : 1; ok && k < clause.length; k++)
+            ok = value(clause[k]) == FALSE;
+        if (!ok) throw new IllegalStateException("external propagator gave a clause that is not "
+                + (implied == -1 ? "false" : "a reason for " + implied) + ": " + Arrays.toString(clause));
+        if (proof != null) proof.add(clause);
+        return clause;
+    }
+
+    /**
+     * Filter the queued AllDifferent constraints, until one of them implies
+     * literals, which are then enqueued, or is in conflict.
+     *
+     * @return EXPLAINED for a conflict, or NO_REASON
+     */
+    private int filterAllDifferents() {
+        while (!adQueue.isEmpty()) {
+            int c = adQueue.pop();
+            adDirty[c] = false;
+            int[] confl = allDifferents[c].filter(assign, implied);
+            if (confl != null) {
+                implied.clear();
+                explainedConflict = confl;
+                return EXPLAINED;
+            }
+            if (implied.isEmpty()) continue;
+            for (int[] clause : implied) {
+                byte val = value(clause[0]);
+                if (val == FALSE) {
+                    implied.clear();
+                    explainedConflict = clause;
+                    return EXPLAINED;
+                }
+                if (val == UNDEF) {
+                    explanation[clause[0] >> 1] = clause;
+                    enqueue(clause[0], EXPLAINED);
+                }
+            }
+            implied.clear();
+            return NO_REASON;
+        }
+        return NO_REASON;
+    }
+
+    /**
+     * @return the reason of a literal made false by an AtMostOne constraint
+     *         in which lit became true
+     */
+    private static int amoReason(int lit) {
+        return -4 - lit;
+    }
+
+    /**
+     * @param r
+     *            the reason of literal implied, or a conflict returned by
+     *            propagateAll, in which case implied is -1
+     * @return the number of literals of the clause behind r: a stored
+     *         clause, an explanation, or for an AtMostOne constraint, a
+     *         binary clause
+     */
+    private int reasonSize(int r, int implied) {
+        if (r >= 0) return clauses.size(r);
+        if (r == EXPLAINED) return implied == -1 ? explainedConflict.length : explanation[implied >> 1].length;
+        return 2;
+    }
+
+    /**
+     * @param r
+     *            the reason of literal implied, or a conflict returned by
+     *            propagateAll, in which case implied is -1
+     * @return literal k of the clause behind r. The clause behind
+     *         amoReason(lit) is (~lit | implied) for a reason, and
+     *         (~lit | ~amoConflict) for a conflict.
+     */
+    private int reasonLiteral(int r, int k, int implied) {
+        if (r >= 0) return clauses.get(r, k);
+        if (r == EXPLAINED) return implied == -1 ? explainedConflict[k] : explanation[implied >> 1][k];
+        if (k == 0) return (-4 - r) ^ 1;
+        return implied == -1 ? amoConflict ^ 1 : implied;
+    }
+
+    /**
+     * Evict the least useful learned clauses, as chosen by the learned clause
+     * database. Clauses that are the reason of a current assignment are kept.
+     */
+    private void reduceLearned() {
+        boolean[] locked = new boolean[clauses.handleLimit()];
+        for (int i = 0; i < trailSize; i++) {
+            int r = reason[trail[i] >> 1];
+            if (r >= 0) locked[r] = true;
+        }
+        IntVec evicted = learned.reduce(locked);
+        for (int i = 0; i < evicted.size(); i++) {
+            int cr = evicted.get(i);
+            if (proof != null) {
+                proof.begin(true);
+                for (int k = 0; k < clauses.size(cr); k++)
+                    proof.literal(clauses.get(cr, k));
+                proof.end();
+            }
+            clauses.remove(cr);
+        }
+        // drop the watches of the evicted clauses
+        for (IntVec ws : watches) {
+            int j = 0;
+            for (int i = 0; i < ws.size(); i += 2) {
+                if (clauses.contains(ws.get(i))) {
+                    ws.set(j++, ws.get(i));
+                    ws.set(j++, ws.get(i + 1));
+                }
+            }
+            ws.shrinkTo(j);
+        }
+        stats.reductions.add(new SolverStats.Reduction(stats.conflicts,
+                learned.count(LearnedClauses.CORE), learned.count(LearnedClauses.MID),
+                learned.count(LearnedClauses.LOCAL), evicted.size(), learned.bytes()));
+        lastReduce = stats.conflicts;
+        if (lastReduce >= nextReduce) {
+            reduceInterval += REDUCE_INCREMENT;
+            nextReduce = lastReduce + reduceInterval;
+        }
+    }
+
+    /**
+     * @return the literal block distance of lits: the number of distinct
+     *         decision levels among them
+     */
+    private int lbd(int[] lits) {
+        stamp++;
+        int distinct = 0;
+        for (int lit : lits) {
+            int d = level[lit >> 1];
+            if (levelStamp[d] != stamp) {
+                levelStamp[d] = stamp;
+                distinct++;
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * @return the literal block distance of the stored clause cr
+     */
+    private int lbd(int cr) {
+        stamp++;
+        int distinct = 0;
+        int size = clauses.size(cr);
+        for (int k = 0; k < size; k++) {
+            int d = level[clauses.get(cr, k) >> 1];
+            if (levelStamp[d] != stamp) {
+                levelStamp[d] = stamp;
+                distinct++;
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Undo every assignment made above decision level lvl, saving the phase
+     * of each variable unassigned.
+     */
+    private void cancelUntil(int lvl) {
+        if (decisionLevel() <= lvl) return;
+        int stop = trailLim.get(lvl);
+        if (external != null) {
+            externalHead = Math.min(externalHead, stop);
+            external.notifyBacktrack(lvl);
+        }
+        for (int i = trailSize - 1; i >= stop; i--) {
+            int v = trail[i] >> 1;
+            if (phaseSaving) phase[v] = assign[v];
+            assign[v] = UNDEF;
+            reason[v] = NO_REASON;
+            order.insert(v);
+        }
+        trailSize = stop;
+        qhead = stop;
+        trailLim.shrinkTo(lvl);
+    }
+
+    /**
+     * @return the literal giving the most active unassigned variable its
+     *         saved phase, or -1 if every variable is assigned
+     */
+    private int pickBranchLiteral() {
+        while (!order.isEmpty()) {
+            int v = order.removeMax();
+            if (assign[v] == UNDEF) return (v << 1) | (phase[v] == TRUE ? 0 : 1);
+        }
+        return -1;
+    }
+
+    /**
+     * @return the current (complete) assignment, by variable number
+     */
+    private boolean[] model() {
+        boolean[] model = new boolean[assign.length];
+        for (int v = 0; v < assign.length; v++)
+            model[v] = assign[v] == TRUE;
+        return model;
+    }
+}
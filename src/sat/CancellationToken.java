@@ -0,0 +1,33 @@
+package sat;
+
+/**
+ * A flag by which one thread asks the solves of another to give up. A
+ * solve whose SolverConfig holds the token looks at it now and then while
+ * it searches, and once it is cancelled returns the outcome
+ * SolveResult.Outcome.UNKNOWN instead of an answer.
+ *
+ * A token cannot be reset: every solve that holds it, now or later, gives
+ * up. This datatype is mutable, and safe to share between threads.
+ */
+public class CancellationToken {
+    private volatile boolean cancelled;
+
+    /**
+     * Ask every solve holding this token to give up.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if cancel() has been called
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public String toString() {
+        return "CancellationToken[" + (cancelled ? "cancelled" : "active") + "]";
+    }
+}
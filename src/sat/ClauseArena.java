@@ -0,0 +1,147 @@
+package sat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A ClauseStore that keeps the literals of all clauses back to back in one
+ * contiguous block of memory outside the Java heap. However many clauses are
+ * stored, the garbage collector sees a handful of objects, and reading the
+ * clauses in order of creation scans memory sequentially.
+ *
+ * Each clause takes size+2 ints of the arena: its size, its handle (or -1
+ * once removed), and its literals. Removing a clause only marks it; once
+ * removed clauses waste more than half of the arena, the live clauses are
+ * slid down over them. Handles are kept in an on-heap table of offsets, so
+ * compaction does not change them.
+ * This datatype is mutable.
+ */
+final class ClauseArena extends ClauseStore {
+    // ints of arena header before the literals of a clause
+    private static final int HEADER = 2;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    // the arena: ints [0, top) are in use
+    private IntBuffer arena;
+    private int top;
+    // ints of arena taken by removed clauses
+    private int wasted;
+    // offsets[cr] is the position of clause cr in arena, or -1 if cr is free
+    private int[] offsets = new int[64];
+    private int handles;
+    // handles that are free for reuse
+    private final IntVec free = new IntVec();
+    /*
+     * Rep invariant:
+     *     0 <= wasted <= top <= arena.capacity()
+     *     arena[0..top) is a sequence of records (size, handle, literals),
+     *         each of length size + HEADER
+     *     for 0 <= cr < handles, offsets[cr] == -1 iff cr is in free, and
+     *         otherwise the record at offsets[cr] has handle cr
+     *     wasted is the total length of the records whose handle is -1
+     */
+
+    ClauseArena() {
+        arena = allocate(INITIAL_CAPACITY);
+    }
+
+    private static IntBuffer allocate(int ints) {
+        return ByteBuffer.allocateDirect(4 * ints).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    int add(int[] lits) {
+        int need = lits.length + HEADER;
+        if (top + need > arena.capacity()) makeRoom(need);
+        int cr;
+        if (free.isEmpty()) {
+            if (handles == offsets.length) offsets = Arrays.copyOf(offsets, 2 * handles);
+            cr = handles++;
+        } else {
+            cr = free.pop();
+        }
+        offsets[cr] = top;
+        arena.put(top, lits.length);
+        arena.put(top + 1, cr);
+        for (int k = 0; k < lits.length; k++)
+            arena.put(top + HEADER + k, lits[k]);
+        top += need;
+        return cr;
+    }
+
+    void remove(int cr) {
+        int at = offsets[cr];
+        arena.put(at + 1, -1);
+        wasted += arena.get(at) + HEADER;
+        offsets[cr] = -1;
+        free.push(cr);
+    }
+
+    boolean contains(int cr) {
+        return cr >= 0 && cr < handles && offsets[cr] >= 0;
+    }
+
+    int handleLimit() {
+        return handles;
+    }
+
+    int size(int cr) {
+        return arena.get(offsets[cr]);
+    }
+
+    int get(int cr, int k) {
+        return arena.get(offsets[cr] + HEADER + k);
+    }
+
+    void set(int cr, int k, int lit) {
+        arena.put(offsets[cr] + HEADER + k, lit);
+    }
+
+    /**
+     * @return number of ints of the arena in use, including removed clauses
+     *         not yet compacted away
+     */
+    int used() {
+        return top;
+    }
+
+    /**
+     * Make room for need more ints, by compacting if removed clauses waste
+     * more than half of the arena, and otherwise by moving to an arena
+     * twice as large.
+     */
+    private void makeRoom(int need) {
+        if (wasted > top / 2) compact();
+        if (top + need <= arena.capacity()) return;
+        long capacity = Math.max(2L * arena.capacity(), (long) top + need);
+        if (capacity > Integer.MAX_VALUE / 4)
+            throw new OutOfMemoryError("ClauseArena: more than " + Integer.MAX_VALUE / 4 + " ints");
+        IntBuffer bigger = allocate((int) capacity);
+        for (int i = 0; i < top; i++)
+            bigger.put(i, arena.get(i));
+        arena = bigger;
+    }
+
+    /**
+     * Slide the live clauses down over the removed ones, keeping their order.
+     */
+    void compact() {
+        int read = 0;
+        int write = 0;
+        while (read < top) {
+            int length = arena.get(read) + HEADER;
+            int cr = arena.get(read + 1);
+            if (cr >= 0) {
+                if (write != read)
+                    for (int i = 0; i < length; i++)
+                        arena.put(write + i, arena.get(read + i));
+                offsets[cr] = write;
+                write += length;
+            }
+            read += length;
+        }
+        top = write;
+        wasted = 0;
+    }
+}
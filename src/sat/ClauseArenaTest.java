@@ -0,0 +1,71 @@
+package sat;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ClauseArenaTest {
+
+    // make sure assertions are turned on!  
+    // we don't want to run test cases without assertions too.
+    // see the handout to find out how to turn them on.
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false;
+    }
+
+    @Test
+    public void testAddGetSet() {
+    	ClauseArena arena = new ClauseArena();
+    	int a = arena.add(new int[] {2, 5, 7});
+    	int b = arena.add(new int[] {0, 3});
+    	assertEquals(3, arena.size(a));
+    	assertEquals(2, arena.size(b));
+    	assertEquals(7, arena.get(a, 2));
+    	arena.set(a, 0, 7);
+    	arena.set(a, 2, 2);
+    	assertEquals(7, arena.get(a, 0));
+    	assertEquals(2, arena.get(a, 2));
+    	assertEquals(3, arena.get(b, 1));
+    }
+
+    @Test
+    public void testRemoveReusesHandleAndCompacts() {
+    	ClauseArena arena = new ClauseArena();
+    	int a = arena.add(new int[] {2, 4, 6, 8});
+    	int b = arena.add(new int[] {1, 3});
+    	int c = arena.add(new int[] {5, 9, 11});
+    	arena.remove(b);
+    	assertFalse(arena.contains(b));
+    	int d = arena.add(new int[] {12, 14});
+    	assertEquals(b, d);
+    	arena.remove(a);
+    	int before = arena.used();
+    	arena.compact();
+    	assertEquals(before - 6 - 4, arena.used());
+    	// handles survive compaction
+    	assertEquals(11, arena.get(c, 2));
+    	assertEquals(14, arena.get(d, 1));
+    	assertEquals(3, arena.handleLimit());
+    }
+
+    @Test
+    public void testGrowsPastInitialCapacity() {
+    	ClauseArena arena = new ClauseArena();
+    	int n = 100000;
+    	for (int i = 0; i < n; i++) {
+    		int cr = arena.add(new int[] {2 * i, 2 * i + 3});
+    		if (i % 3 != 0) arena.remove(cr);
+    	}
+    	int live = 0;
+    	for (int cr = 0; cr < arena.handleLimit(); cr++) {
+    		if (arena.contains(cr)) {
+    			live++;
+    			assertEquals(arena.get(cr, 0) + 3, arena.get(cr, 1));
+    		}
+    	}
+    	assertEquals((n + 2) / 3, live);
+    	// without compaction all 4n ints would still be in use
+    	assertTrue(arena.used() < 3 * n);
+    }
+}
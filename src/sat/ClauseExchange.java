@@ -0,0 +1,64 @@
+package sat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The channel over which the solvers of a portfolio share learned clauses.
+ * Each solver has an inbox, a lock-free queue: a solver that learns a short
+ * clause offers a copy of it to the inbox of every other solver, and each
+ * solver drains its own inbox when it is back at decision level 0, so that
+ * neither side ever waits for the other.
+ *
+ * Only clauses of at most MAX_SIZE literals, or of LBD at most
+ * LearnedClauses.CORE_LBD, are shared: they are the ones most likely to be
+ * useful to another solver, and cheap to copy.
+ * This datatype is thread-safe.
+ */
+final class ClauseExchange {
+    // longest clause shared whatever its LBD
+    static final int MAX_SIZE = 8;
+
+    // inboxes.get(i) holds the clauses shared with solver i, not yet taken
+    private final List<ConcurrentLinkedQueue<int[]>> inboxes;
+    /*
+     * Rep invariant:
+     *     no clause in an inbox is ever modified
+     */
+
+    /**
+     * Create an exchange between solvers 0..n-1.
+     */
+    ClauseExchange(int n) {
+        inboxes = new ArrayList<ConcurrentLinkedQueue<int[]>>(n);
+        for (int i = 0; i < n; i++)
+            inboxes.add(new ConcurrentLinkedQueue<int[]>());
+    }
+
+    /**
+     * @return true if a learned clause of size literals and the given LBD
+     *         is worth sharing
+     */
+    static boolean worthSharing(int size, int lbd) {
+        return size <= MAX_SIZE || lbd <= LearnedClauses.CORE_LBD;
+    }
+
+    /**
+     * Share a clause learned by solver from with every other solver. The
+     * literals are copied, so the caller may go on modifying lits.
+     */
+    void export(int from, int[] lits) {
+        int[] copy = lits.clone();
+        for (int i = 0; i < inboxes.size(); i++)
+            if (i != from) inboxes.get(i).offer(copy);
+    }
+
+    /**
+     * @return the next clause shared with solver to, or null if there is
+     *         none; the clause must not be modified
+     */
+    int[] poll(int to) {
+        return inboxes.get(to).poll();
+    }
+}
@@ -0,0 +1,70 @@
+package sat;
+
+/**
+ * Storage for the clauses of a CDCLSolver. Each stored clause is named by an
+ * int handle, which stays the same for as long as the clause is stored, so
+ * that watches, reasons and learned clause metadata can refer to it; the
+ * handle of a removed clause may be given to a clause added later.
+ *
+ * The literals of a stored clause may be read and rearranged in place, which
+ * is how the solver moves its watched literals to the front.
+ * This datatype is mutable.
+ */
+abstract class ClauseStore {
+
+    /**
+     * @return a store that keeps each clause in its own int[] on the heap
+     */
+    static ClauseStore onHeap() {
+        return new HeapClauseStore();
+    }
+
+    /**
+     * @return a store that keeps all clauses in one contiguous arena of
+     *         memory outside the Java heap
+     */
+    static ClauseStore offHeap() {
+        return new ClauseArena();
+    }
+
+    /**
+     * Store the clause of literals lits. The store may keep lits itself, so
+     * the caller must not use the array afterwards.
+     * @return the handle of the new clause
+     */
+    abstract int add(int[] lits);
+
+    /**
+     * Requires: contains(cr)
+     * Remove clause cr, freeing its handle.
+     */
+    abstract void remove(int cr);
+
+    /**
+     * @return true if cr is the handle of a stored clause
+     */
+    abstract boolean contains(int cr);
+
+    /**
+     * @return an upper bound, exclusive, on the handles in use
+     */
+    abstract int handleLimit();
+
+    /**
+     * Requires: contains(cr)
+     * @return number of literals of clause cr
+     */
+    abstract int size(int cr);
+
+    /**
+     * Requires: contains(cr) and 0 <= k < size(cr)
+     * @return the kth literal of clause cr
+     */
+    abstract int get(int cr, int k);
+
+    /**
+     * Requires: contains(cr) and 0 <= k < size(cr)
+     * Make lit the kth literal of clause cr.
+     */
+    abstract void set(int cr, int k, int lit);
+}
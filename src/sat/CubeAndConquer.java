@@ -0,0 +1,391 @@
+package sat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import sat.env.Environment;
+import sat.formula.CompiledFormula;
+
+/**
+ * Cube-and-conquer: a lookahead splits the problem into cubes, partial
+ * assignments that between them cover every assignment the problem could
+ * have a solution in, and the cubes are then solved independently by CDCL
+ * solvers on a work-stealing ForkJoinPool, until one of them has a solution
+ * or all of them are refuted.
+ *
+ * The lookahead works like a DPLL search cut off at a given depth. At each
+ * node it tries both values of a few promising variables, propagating each
+ * through the clauses and AtMostOne constraints: a value that leads to a
+ * conflict is a failed literal, and its negation is added to the cube;
+ * otherwise the variable whose two values each imply the most other
+ * assignments is split on. Cubes whose propagation fails are refuted on
+ * the spot and never handed out.
+ *
+ * Each worker thread keeps one CDCLSolver for all the cubes it solves,
+ * passing the cube as assumptions, so what it learns from one cube helps
+ * with the next.
+ *
+ * The limits of the configuration bound the solve of each cube, but its
+ * time limit and cancellation token bound the whole: a cube is skipped if
+ * either has run out before it starts. Unless some cube has a solution, a
+ * cube given up or skipped leaves the outcome UNKNOWN.
+ */
+final class CubeAndConquer {
+    // split depth used by SATSolver.solveCubes(Formula)
+    static final int DEFAULT_DEPTH = 10;
+    // variables looked ahead at each node of the split
+    private static final int CANDIDATES = 24;
+    // values of a variable or literal
+    private static final byte FALSE = 0;
+    private static final byte TRUE = 1;
+    private static final byte UNDEF = 2;
+
+    private final CompiledFormula formula;
+    private final SolverConfig config;
+    private final int depth;
+    // occurs[lit] holds the clauses containing lit
+    private final IntVec[] occurs;
+    // the literals of each AtMostOne constraint, and amoOccurs[lit] holds
+    // the constraints containing lit
+    private final int[][] atMostOnes;
+    private final IntVec[] amoOccurs;
+    // variables by number of occurrences, most frequent first
+    private final int[] byOccurrences;
+    // the lookahead assignment, and the literals it made true in order
+    private final byte[] value;
+    private final IntVec trail = new IntVec();
+    // the cubes made so far; lookahead conflicts found the rest refuted
+    private final List<int[]> cubes = new ArrayList<int[]>();
+
+    // the solution found by conquer, if any
+    private volatile boolean[] model;
+    // when the time limit runs out, by System.nanoTime(), and whether some
+    // cube was given up or skipped
+    private final long deadline;
+    private volatile boolean gaveUp;
+    // every solver made by a worker, so that all can be stopped
+    private final ConcurrentLinkedQueue<CDCLSolver> solvers = new ConcurrentLinkedQueue<CDCLSolver>();
+    private final ConcurrentLinkedQueue<SolverStats.Cube> timings = new ConcurrentLinkedQueue<SolverStats.Cube>();
+    // the solver of each worker thread, made on first use
+    private final ThreadLocal<CDCLSolver> local = new ThreadLocal<CDCLSolver>() {
+        @Override
+        protected CDCLSolver initialValue() {
+            CDCLSolver solver = new CDCLSolver(formula, config);
+            solvers.add(solver);
+            // a solution may have been found while this one was made
+            if (model != null) solver.stop();
+            return solver;
+        }
+    };
+    /*
+     * Rep invariant:
+     *     value[v] != UNDEF iff v is the variable of a literal of trail
+     *     the cubes, together with the assignments refuted by the
+     *         lookahead, cover every assignment of the problem
+     */
+
+    private CubeAndConquer(CompiledFormula formula, SolverConfig config, int depth) {
+        this.formula = formula;
+        this.config = config;
+        this.depth = depth;
+        deadline = config.getTimeLimit() == Long.MAX_VALUE ? Long.MAX_VALUE
+                : System.nanoTime() + Math.min(config.getTimeLimit(), Long.MAX_VALUE / 4000000) * 1000000;
+        int n = formula.getNumVariables();
+        occurs = new IntVec[2 * n];
+        for (int lit = 0; lit < 2 * n; lit++)
+            occurs[lit] = new IntVec();
+        for (int i = 0; i < formula.getNumClauses(); i++)
+            for (int k = 0; k < formula.clauseSize(i); k++)
+                occurs[formula.literalAt(i, k)].push(i);
+        atMostOnes = new int[formula.getNumAtMostOnes()][];
+        amoOccurs = new IntVec[2 * n];
+        for (int lit = 0; lit < 2 * n; lit++)
+            amoOccurs[lit] = new IntVec();
+        for (int i = 0; i < atMostOnes.length; i++) {
+            atMostOnes[i] = formula.atMostOne(i);
+            for (int q : atMostOnes[i])
+                amoOccurs[q].push(i);
+        }
+        value = new byte[n];
+        for (int v = 0; v < n; v++)
+            value[v] = UNDEF;
+        Integer[] vars = new Integer[n];
+        for (int v = 0; v < n; v++)
+            vars[v] = v;
+        Arrays.sort(vars, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return occurrences(b) - occurrences(a);
+            }
+        });
+        byOccurrences = new int[n];
+        for (int v = 0; v < n; v++)
+            byOccurrences[v] = vars[v];
+    }
+
+    private int occurrences(int v) {
+        return occurs[2 * v].size() + occurs[2 * v + 1].size() + amoOccurs[2 * v].size();
+    }
+
+    /**
+     * Split formula into cubes of at most depth decisions each, and solve
+     * them in parallel on pool, with solvers configured by config.
+     * Requires depth >= 0
+     *
+     * @return the solution, if any, and the statistics of all the solvers
+     *         together, including the time taken by each cube
+     */
+    static SolveResult solve(CompiledFormula formula, SolverConfig config, int depth,
+            ForkJoinPool pool) {
+        CubeAndConquer cc = new CubeAndConquer(formula, config, depth);
+        long started = System.nanoTime();
+        cc.cube();
+        long cubed = System.nanoTime();
+        if (!cc.cubes.isEmpty()) pool.invoke(cc.new Conquer(0, cc.cubes.size()));
+
+        SolverStats stats = new SolverStats();
+        stats.restartPolicy = config.getRestartPolicy().toString();
+        stats.cubingNanos = cubed - started;
+        stats.searchNanos = System.nanoTime() - cubed;
+        for (CDCLSolver solver : cc.solvers) {
+            SolverStats s = solver.getStats();
+            stats.decisions += s.decisions;
+            stats.conflicts += s.conflicts;
+            stats.propagations += s.propagations;
+            stats.restarts += s.restarts;
+            stats.flips += s.flips;
+            stats.backtracks += s.backtracks;
+            stats.maxDepth = Math.max(stats.maxDepth, s.maxDepth);
+            stats.clausesVisited += s.clausesVisited;
+            stats.reductions.addAll(s.reductions);
+        }
+        stats.cubes.addAll(cc.timings);
+        boolean[] found = cc.model;
+        if (found == null && cc.gaveUp) return new SolveResult(SolveResult.Outcome.UNKNOWN, null, stats);
+        if (found == null) return new SolveResult(null, stats);
+        long decoding = System.nanoTime();
+        Environment env = formula.toEnvironment(found);
+        stats.decodeNanos = System.nanoTime() - decoding;
+        return new SolveResult(env, stats);
+    }
+
+    /**
+     * @return true if the time limit of the configuration has run out or
+     *         its cancellation token is cancelled
+     */
+    private boolean expired() {
+        CancellationToken token = config.getCancellation();
+        return (token != null && token.isCancelled())
+                || (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0);
+    }
+
+    /**
+     * Make the cubes, starting from the unit clauses of the problem.
+     */
+    private void cube() {
+        for (int i = 0; i < formula.getNumClauses(); i++) {
+            if (formula.clauseSize(i) == 0) return;
+            if (formula.clauseSize(i) == 1) {
+                int lit = formula.literalAt(i, 0);
+                if (value(lit) == FALSE) return;
+                if (value(lit) == UNDEF && !assign(lit)) return;
+            }
+        }
+        split(new IntVec(), 0);
+    }
+
+    /**
+     * Requires: the current assignment propagates without conflict
+     * Make the cubes that extend cube, which holds d decisions.
+     */
+    private void split(IntVec cube, int d) {
+        int mark = trail.size();
+        int cubeMark = cube.size();
+        int best = -1;
+        boolean refuted = false;
+        // look ahead until no candidate is a failed literal
+        boolean again = true;
+        while (again && !refuted) {
+            again = false;
+            best = -1;
+            long bestScore = -1;
+            int tried = 0;
+            for (int i = 0; i < byOccurrences.length && tried < CANDIDATES; i++) {
+                int v = byOccurrences[i];
+                if (value[v] != UNDEF) continue;
+                tried++;
+                int pos = lookahead(2 * v);
+                int neg = lookahead(2 * v + 1);
+                if (pos < 0 && neg < 0) {
+                    refuted = true;
+                    break;
+                }
+                if (pos < 0 || neg < 0) {
+                    int forced = pos < 0 ? 2 * v + 1 : 2 * v;
+                    cube.push(forced);
+                    if (!assign(forced)) refuted = true;
+                    again = true;
+                    break;
+                }
+                long score = (long) (pos + 1) * (neg + 1);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = v;
+                }
+            }
+        }
+        if (!refuted) {
+            if (best == -1 || d == depth) {
+                cubes.add(cube.toArray());
+            } else {
+                for (int lit = 2 * best; lit <= 2 * best + 1; lit++) {
+                    int branchMark = trail.size();
+                    cube.push(lit);
+                    if (assign(lit)) split(cube, d + 1);
+                    undo(branchMark);
+                    cube.pop();
+                }
+            }
+        }
+        undo(mark);
+        cube.shrinkTo(cubeMark);
+    }
+
+    /**
+     * Requires: lit is unassigned
+     * @return the number of literals that making lit true implies, or -1 if
+     *         that leads to a conflict; the assignment is left unchanged
+     */
+    private int lookahead(int lit) {
+        int mark = trail.size();
+        boolean ok = assign(lit);
+        int implied = trail.size() - mark - 1;
+        undo(mark);
+        return ok ? implied : -1;
+    }
+
+    /**
+     * Requires: lit is unassigned
+     * Make lit true and propagate it through the clauses and AtMostOne
+     * constraints.
+     *
+     * @return false if that made a clause false, or two literals of an
+     *         AtMostOne constraint true; the assignment is then
+     *         left partly propagated, to be undone by the caller
+     */
+    private boolean assign(int lit) {
+        int head = trail.size();
+        set(lit);
+        while (head < trail.size()) {
+            int p = trail.get(head++);
+            IntVec groups = amoOccurs[p];
+            for (int i = 0; i < groups.size(); i++) {
+                for (int q : atMostOnes[groups.get(i)]) {
+                    if (q == p) continue;
+                    byte val = value(q);
+                    if (val == TRUE) return false;
+                    if (val == UNDEF) set(q ^ 1);
+                }
+            }
+            IntVec occ = occurs[p ^ 1];
+            for (int i = 0; i < occ.size(); i++) {
+                int c = occ.get(i);
+                int unit = -1;
+                int free = 0;
+                for (int k = 0; k < formula.clauseSize(c); k++) {
+                    int q = formula.literalAt(c, k);
+                    byte val = value(q);
+                    if (val == TRUE) {
+                        free = 2;
+                        break;
+                    }
+                    if (val == UNDEF && q != unit) {
+                        unit = q;
+                        free++;
+                    }
+                }
+                if (free == 0) return false;
+                if (free == 1) set(unit);
+            }
+        }
+        return true;
+    }
+
+    private void set(int lit) {
+        value[lit >> 1] = (byte) ((lit & 1) ^ 1);
+        trail.push(lit);
+    }
+
+    /**
+     * Undo the assignments made since the trail had size mark.
+     */
+    private void undo(int mark) {
+        for (int i = mark; i < trail.size(); i++)
+            value[trail.get(i) >> 1] = UNDEF;
+        trail.shrinkTo(mark);
+    }
+
+    private byte value(int lit) {
+        byte a = value[lit >> 1];
+        if (a == UNDEF) return UNDEF;
+        return (byte) (a ^ (lit & 1));
+    }
+
+    /**
+     * Solve cube i with the solver of the current thread.
+     */
+    private void solveCube(int i) {
+        CDCLSolver solver = local.get();
+        int[] cube = cubes.get(i);
+        long conflicts = solver.getStats().conflicts;
+        long started = System.nanoTime();
+        boolean[] found = solver.solveModel(cube);
+        long nanos = System.nanoTime() - started;
+        timings.add(new SolverStats.Cube(i, cube.length, nanos,
+                solver.getStats().conflicts - conflicts, found != null,
+                found == null && solver.isStopped()));
+        if (found == null) {
+            if (solver.isStopped()) gaveUp = true;
+            return;
+        }
+        synchronized (this) {
+            if (model == null) model = found;
+        }
+        for (CDCLSolver s : solvers)
+            s.stop();
+    }
+
+    /**
+     * Solves cubes from..to-1, by halving the range until a single cube is
+     * left, so that idle workers can steal the other halves.
+     */
+    private class Conquer extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        Conquer(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (model != null) return;
+            if (expired()) {
+                gaveUp = true;
+                return;
+            }
+            if (to - from == 1) {
+                solveCube(from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Conquer(from, mid), new Conquer(mid, to));
+        }
+    }
+}
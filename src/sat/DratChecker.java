@@ -0,0 +1,328 @@
+package sat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import sat.formula.CompiledFormula;
+
+/**
+ * A forward checker of DRAT proofs, for the proofs the solver writes to a
+ * ProofWriter. Starting from the clauses of the problem, with its
+ * constraints expanded as Dimacs.write expands them, it reads the proof in
+ * order: every added clause must be implied by the clauses so far through
+ * reverse unit propagation (RUP), that is, making all its literals false
+ * must lead to a conflict by unit propagation; failing that, it must be a
+ * resolution asymmetric tautology (RAT) on its first literal. A deleted
+ * clause must be present, and is removed.
+ *
+ * Unlike a backward checker such as drat-trim, this one checks every
+ * lemma, needed or not, which is slower on large proofs but simple, and
+ * fast enough for the proofs of the tests.
+ *
+ * A DratChecker is mutable, and checks a single proof.
+ */
+final class DratChecker {
+    // values of a literal
+    private static final byte FALSE = 0;
+    private static final byte TRUE = 1;
+    private static final byte UNDEF = 2;
+
+    private final int variables;
+    // clauses.get(i) holds the literals of clause i, its first two watched
+    // if it has more than one, or null once it is deleted
+    private final List<int[]> clauses = new ArrayList<int[]>();
+    // the live clauses by their sorted literals, for deletions
+    private final HashMap<Key, IntVec> index = new HashMap<Key, IntVec>();
+    // watches[lit] holds the clauses lit is watched by; deleted ones are
+    // dropped as they are met
+    private final IntVec[] watches;
+    // the unit clauses, which may also hold deleted ones
+    private final IntVec units = new IntVec();
+    // number of live empty clauses
+    private int empties;
+    // value[lit] under the assignment of the current check
+    private final byte[] value;
+    private final IntVec trail = new IntVec();
+
+    /**
+     * Create a checker of proofs for formula.
+     */
+    DratChecker(CompiledFormula formula) {
+        formula = formula.expandConstraints();
+        variables = formula.getNumVariables();
+        watches = new IntVec[2 * variables];
+        for (int lit = 0; lit < 2 * variables; lit++)
+            watches[lit] = new IntVec();
+        value = new byte[2 * variables];
+        Arrays.fill(value, UNDEF);
+        for (int i = 0; i < formula.getNumClauses(); i++)
+            add(formula.clause(i));
+    }
+
+    /**
+     * Check proof, written in format, against the problem.
+     *
+     * @return true iff proof is a valid DRAT proof that ends, or stops, with
+     *         the empty clause, so that the problem is unsatisfiable
+     */
+    boolean check(byte[] proof, ProofWriter.Format format) {
+        List<int[]> steps = new ArrayList<int[]>();
+        boolean[] deletions = parse(proof, format, steps);
+        if (deletions == null) return false;
+        for (int s = 0; s < steps.size(); s++) {
+            int[] lits = normalize(steps.get(s));
+            if (deletions[s]) {
+                if (lits != null && !delete(lits)) return false;
+            } else {
+                if (lits == null) continue;
+                if (!implied(lits)) return false;
+                if (lits.length == 0) return true;
+                add(lits);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the clauses of proof, written in format, into steps, and
+     *         whether each is deleted, or null if proof is malformed or
+     *         mentions variables the problem does not have
+     */
+    private boolean[] parse(byte[] proof, ProofWriter.Format format, List<int[]> steps) {
+        List<Boolean> deleted = new ArrayList<Boolean>();
+        IntVec lits = new IntVec();
+        int i = 0;
+        while (i < proof.length) {
+            boolean deletion;
+            lits.clear();
+            if (format == ProofWriter.Format.BINARY) {
+                if (proof[i] != 'a' && proof[i] != 'd') return null;
+                deletion = proof[i++] == 'd';
+                while (true) {
+                    int n = 0;
+                    int shift = 0;
+                    int b;
+                    do {
+                        if (i == proof.length || shift > 28) return null;
+                        b = proof[i++] & 0xff;
+                        n |= (b & 0x7f) << shift;
+                        shift += 7;
+                    } while ((b & 0x80) != 0);
+                    if (n == 0) break;
+                    if (n < 2 || n - 2 >= 2 * variables) return null;
+                    lits.push(n - 2);
+                }
+            } else {
+                while (i < proof.length && Character.isWhitespace(proof[i]))
+                    i++;
+                if (i == proof.length) break;
+                deletion = proof[i] == 'd';
+                if (deletion) i++;
+                while (true) {
+                    while (i < proof.length && Character.isWhitespace(proof[i]))
+                        i++;
+                    if (i == proof.length) return null;
+                    boolean negated = proof[i] == '-';
+                    if (negated) i++;
+                    long n = 0;
+                    int start = i;
+                    while (i < proof.length && proof[i] >= '0' && proof[i] <= '9' && n <= variables)
+                        n = 10 * n + proof[i++] - '0';
+                    if (i == start || n > variables) return null;
+                    if (n == 0) break;
+                    lits.push(CompiledFormula.literal((int) n - 1, negated));
+                }
+            }
+            steps.add(lits.toArray());
+            deleted.add(deletion);
+        }
+        boolean[] deletions = new boolean[deleted.size()];
+        for (int k = 0; k < deletions.length; k++)
+            deletions[k] = deleted.get(k);
+        return deletions;
+    }
+
+    /**
+     * @return the literals of lits sorted without repeats, or null if the
+     *         clause holds a literal and its negation and so always holds
+     */
+    private static int[] normalize(int[] lits) {
+        int[] sorted = lits.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int k = 0; k < sorted.length; k++) {
+            if (n > 0 && sorted[n - 1] == sorted[k]) continue;
+            if (n > 0 && sorted[n - 1] == (sorted[k] ^ 1)) return null;
+            sorted[n++] = sorted[k];
+        }
+        return Arrays.copyOf(sorted, n);
+    }
+
+    /**
+     * Add the clause of lits, sorted without repeats, and watch it.
+     */
+    private void add(int[] lits) {
+        lits = normalize(lits);
+        if (lits == null) return;
+        int i = clauses.size();
+        clauses.add(lits.clone());
+        Key key = new Key(lits);
+        IntVec same = index.get(key);
+        if (same == null) index.put(key, same = new IntVec());
+        same.push(i);
+        if (lits.length == 0) {
+            empties++;
+        } else if (lits.length == 1) {
+            units.push(i);
+        } else {
+            watches[lits[0]].push(i);
+            watches[lits[1]].push(i);
+        }
+    }
+
+    /**
+     * Delete one clause of the literals lits, sorted without repeats.
+     *
+     * @return false if there is none
+     */
+    private boolean delete(int[] lits) {
+        IntVec same = index.get(new Key(lits));
+        if (same == null || same.isEmpty()) return false;
+        clauses.set(same.pop(), null);
+        if (lits.length == 0) empties--;
+        return true;
+    }
+
+    /**
+     * @return true if the clause of lits, sorted without repeats, is RUP, or
+     *         RAT on its first literal
+     */
+    private boolean implied(int[] lits) {
+        if (rup(lits, null)) return true;
+        if (lits.length == 0) return false;
+        int pivot = lits[0] ^ 1;
+        for (int[] c : clauses) {
+            if (c == null) continue;
+            boolean holds = false;
+            for (int q : c)
+                holds |= q == pivot;
+            if (holds && !rup(lits, c)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if making every literal of lits false, and every literal
+     *         of resolvent but its one negating the first literal of lits,
+     *         if resolvent is not null, leads to a conflict by unit
+     *         propagation
+     */
+    private boolean rup(int[] lits, int[] resolvent) {
+        try {
+            if (empties > 0) return true;
+            for (int q : lits)
+                if (!assume(q ^ 1)) return true;
+            if (resolvent != null)
+                for (int q : resolvent)
+                    if (q != (lits[0] ^ 1) && !assume(q ^ 1)) return true;
+            for (int k = 0; k < units.size(); k++) {
+                int[] c = clauses.get(units.get(k));
+                if (c != null && !assume(c[0])) return true;
+            }
+            return propagate();
+        } finally {
+            for (int k = 0; k < trail.size(); k++) {
+                value[trail.get(k)] = UNDEF;
+                value[trail.get(k) ^ 1] = UNDEF;
+            }
+            trail.clear();
+        }
+    }
+
+    /**
+     * Make lit true, unless it already is.
+     *
+     * @return false if lit is already false
+     */
+    private boolean assume(int lit) {
+        if (value[lit] == FALSE) return false;
+        if (value[lit] == UNDEF) {
+            value[lit] = TRUE;
+            value[lit ^ 1] = FALSE;
+            trail.push(lit);
+        }
+        return true;
+    }
+
+    /**
+     * Propagate the literals on the trail through the watched clauses.
+     *
+     * @return true if a clause became false
+     */
+    private boolean propagate() {
+        for (int head = 0; head < trail.size(); head++) {
+            int falseLit = trail.get(head) ^ 1;
+            IntVec ws = watches[falseLit];
+            int i = 0;
+            int j = 0;
+            boolean conflict = false;
+            while (i < ws.size()) {
+                int cr = ws.get(i++);
+                int[] c = clauses.get(cr);
+                if (c == null) continue;
+                if (conflict) {
+                    ws.set(j++, cr);
+                    continue;
+                }
+                if (c[0] == falseLit) {
+                    c[0] = c[1];
+                    c[1] = falseLit;
+                }
+                boolean moved = false;
+                if (value[c[0]] != TRUE) {
+                    for (int k = 2; k < c.length; k++) {
+                        if (value[c[k]] != FALSE) {
+                            c[1] = c[k];
+                            c[k] = falseLit;
+                            watches[c[1]].push(cr);
+                            moved = true;
+                            break;
+                        }
+                    }
+                }
+                if (moved) continue;
+                ws.set(j++, cr);
+                if (value[c[0]] == FALSE) conflict = true;
+                else if (value[c[0]] == UNDEF) assume(c[0]);
+            }
+            ws.shrinkTo(j);
+            if (conflict) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The sorted literals of a clause, as a key of index.
+     */
+    private static final class Key {
+        private final int[] lits;
+        private final int hash;
+
+        Key(int[] lits) {
+            this.lits = lits;
+            hash = Arrays.hashCode(lits);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(lits, ((Key) o).lits);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
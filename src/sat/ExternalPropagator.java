@@ -0,0 +1,80 @@
+package sat;
+
+/**
+ * Reasoning that a client plugs into the CDCL search, for constraints that
+ * are cheaper to check in a form of its own than as clauses, in the manner
+ * of the IPASIR-UP interface of incremental SAT solvers.
+ *
+ * Literals are those of the CompiledFormula the solver was made for: the
+ * literal of variable number v is 2v, and its negation 2v+1.
+ *
+ * The solver tells the propagator about every assignment of the variables
+ * it observes, in the order they are made, and about every new decision
+ * level and every backtrack. Whenever propagation through the clauses is
+ * done, the solver asks the propagator for literals that its constraints
+ * imply. The reasons for those are lazy: the solver asks for the clause
+ * behind an implied literal only if conflict analysis reaches it, which
+ * for most literals is never. The propagator must therefore remember, for
+ * each literal it has implied and that is still assigned, enough to build
+ * the clause later; the clause must hold only literals that were already
+ * false when the literal was implied. Last, every complete assignment that
+ * satisfies the clauses is shown to the propagator before the solver
+ * returns it, so that constraints it does not propagate eagerly are still
+ * enforced.
+ *
+ * Each clause the propagator gives must follow from the problem together
+ * with its constraints, since the solver learns from it. All methods are
+ * called from the thread that runs the solve.
+ */
+public interface ExternalPropagator {
+
+    /**
+     * @return true if the propagator is to be told about the assignments of
+     *         variable number v; asked once for each variable, when the
+     *         propagator is connected
+     */
+    boolean observes(int v);
+
+    /**
+     * The solver has made lit true, at the current decision level. An
+     * assignment is undone only by a backtrack below its level; those at
+     * level 0 are never undone.
+     */
+    void notifyAssignment(int lit);
+
+    /**
+     * The solver has opened a new decision level, whose assignments will
+     * follow.
+     */
+    void notifyNewDecisionLevel();
+
+    /**
+     * The solver has undone every assignment above decision level level,
+     * which is now the current one.
+     */
+    void notifyBacktrack(int level);
+
+    /**
+     * @return a literal implied by the constraints of the propagator under
+     *         the assignments told so far, or -1 if there is none. An
+     *         implied literal that is already false is a conflict, whose
+     *         reason is then asked for at once.
+     */
+    int propagate();
+
+    /**
+     * Requires: lit was returned by propagate() and is still assigned
+     * @return the reason for lit: a clause whose first literal is lit and
+     *         whose other literals were false when lit was returned
+     */
+    int[] reason(int lit);
+
+    /**
+     * @param model
+     *            the value of each variable, by number, in an assignment
+     *            that satisfies the clauses of the problem
+     * @return null if the constraints of the propagator hold in model, and
+     *         otherwise a clause that model makes false
+     */
+    int[] checkModel(boolean[] model);
+}
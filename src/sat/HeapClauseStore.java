@@ -0,0 +1,53 @@
+package sat;
+
+import java.util.ArrayList;
+
+/**
+ * A ClauseStore that keeps each clause in its own int[] on the Java heap.
+ * This datatype is mutable.
+ */
+final class HeapClauseStore extends ClauseStore {
+    // clauses.get(cr) holds the literals of clause cr, or null if cr is free
+    private final ArrayList<int[]> clauses = new ArrayList<int[]>();
+    // handles that are free for reuse
+    private final IntVec free = new IntVec();
+    /*
+     * Rep invariant:
+     *     cr is in free iff 0 <= cr < clauses.size() and clauses.get(cr) == null
+     */
+
+    int add(int[] lits) {
+        if (free.isEmpty()) {
+            clauses.add(lits);
+            return clauses.size() - 1;
+        }
+        int cr = free.pop();
+        clauses.set(cr, lits);
+        return cr;
+    }
+
+    void remove(int cr) {
+        clauses.set(cr, null);
+        free.push(cr);
+    }
+
+    boolean contains(int cr) {
+        return cr >= 0 && cr < clauses.size() && clauses.get(cr) != null;
+    }
+
+    int handleLimit() {
+        return clauses.size();
+    }
+
+    int size(int cr) {
+        return clauses.get(cr).length;
+    }
+
+    int get(int cr, int k) {
+        return clauses.get(cr)[k];
+    }
+
+    void set(int cr, int k, int lit) {
+        clauses.get(cr)[k] = lit;
+    }
+}
@@ -0,0 +1,160 @@
+package sat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import sat.env.Environment;
+import sat.env.Variable;
+import sat.formula.CompiledFormula;
+import sat.formula.Formula;
+import sat.formula.Literal;
+import sat.formula.NegLiteral;
+import sat.formula.PosLiteral;
+
+/**
+ * An incremental SAT solver: a fixed set of rules is loaded once, and then
+ * solved repeatedly under different assumptions, literals that must be true
+ * in that solve only. This suits a batch of problems that differ only in a
+ * few unit clauses, such as Sudoku puzzles, whose rules are always the same
+ * and whose givens can be passed as assumptions:
+ *
+ *     IncrementalSolver solver = new IncrementalSolver(new Sudoku(3).getRules());
+ *     for (Sudoku puzzle : puzzles)
+ *         puzzle.interpretSolution(solver.solve(puzzle.getGivens()));
+ *
+ * The clauses learned while solving are implied by the rules alone, so they
+ * are all kept from one solve to the next, as are variable activities and
+ * saved phases; later solves only pay for their own search.
+ *
+ * Preprocessing is never applied, whatever the configuration says, since it
+ * could remove the variables that later assumptions mention. The limits of
+ * the configuration bound each solve on its own. A proof, if the
+ * configuration asks for one, covers all the solves: it holds the clauses
+ * learned in each, which the rules imply whatever the assumptions, and ends
+ * in the empty clause only once the rules themselves are found
+ * unsatisfiable.
+ * An IncrementalSolver is mutable.
+ */
+public class IncrementalSolver {
+    private final CompiledFormula rules;
+    private final CDCLSolver solver;
+    // assumptions of the last solve that could not all hold
+    private List<Literal> failed = Collections.emptyList();
+    // what the last solve found out, null before the first
+    private SolveResult.Outcome outcome;
+    /*
+     * Rep invariant:
+     *     rules != null, solver != null, failed != null
+     *
+     * Abstraction function:
+     *     represents the rules, and what solving them has learned so far
+     */
+
+    /**
+     * Load rules into a solver with the default configuration.
+     */
+    public IncrementalSolver(Formula rules) {
+        this(rules, new SolverConfig());
+    }
+
+    /**
+     * Load rules into a solver configured by config.
+     */
+    public IncrementalSolver(Formula rules, SolverConfig config) {
+        this(rules.compile(), config);
+    }
+
+    /**
+     * Load compiled rules into a solver configured by config.
+     */
+    public IncrementalSolver(CompiledFormula rules, SolverConfig config) {
+        this.rules = rules;
+        solver = new CDCLSolver(rules, config);
+    }
+
+    /**
+     * Solve the rules with every literal of assumptions true. Assumptions
+     * over variables that the rules do not mention are simply made true in
+     * the result.
+     *
+     * @return an environment binding every variable of the rules and of the
+     *         assumptions, for which the rules and all the assumptions
+     *         evaluate to Bool.TRUE, or null if no such environment exists
+     *         or the solve gave up on a limit of the configuration, which
+     *         getOutcome() tells apart
+     */
+    public Environment solve(Literal... assumptions) {
+        int[] lits = new int[assumptions.length];
+        int n = 0;
+        // assumptions over variables outside the rules
+        HashMap<Variable, Literal> free = new HashMap<Variable, Literal>();
+        for (Literal l : assumptions) {
+            int lit = rules.getLiteral(l);
+            if (lit >= 0) {
+                lits[n++] = lit;
+            } else {
+                Literal other = free.put(l.getVariable(), l);
+                if (other != null && !other.equals(l)) {
+                    failed = new ArrayList<Literal>();
+                    failed.add(other);
+                    failed.add(l);
+                    outcome = SolveResult.Outcome.UNSATISFIABLE;
+                    return null;
+                }
+            }
+        }
+        boolean[] model = solver.solveModel(Arrays.copyOf(lits, n));
+        if (model == null) {
+            outcome = solver.isStopped() ? SolveResult.Outcome.UNKNOWN : SolveResult.Outcome.UNSATISFIABLE;
+            failed = new ArrayList<Literal>();
+            for (int lit : solver.getFailedAssumptions())
+                failed.add(toLiteral(lit));
+            return null;
+        }
+        failed = Collections.emptyList();
+        outcome = SolveResult.Outcome.SATISFIABLE;
+        long decoding = System.nanoTime();
+        Environment env = rules.toEnvironment(model);
+        for (Literal l : free.values())
+            env = l instanceof NegLiteral ? env.putFalse(l.getVariable()) : env.putTrue(l.getVariable());
+        solver.getStats().decodeNanos += System.nanoTime() - decoding;
+        return env;
+    }
+
+    /**
+     * @return if the last solve found no solution, assumptions of it that
+     *         already cannot all be true together with the rules; empty if
+     *         the rules are unsatisfiable by themselves, or if the last solve
+     *         found a solution
+     */
+    public List<Literal> getFailedAssumptions() {
+        return Collections.unmodifiableList(failed);
+    }
+
+    /**
+     * @return what the last solve found out, or null if there was none
+     */
+    public SolveResult.Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * @return the statistics of all solves so far
+     */
+    public SolverStats getStats() {
+        return solver.getStats();
+    }
+
+    private Literal toLiteral(int lit) {
+        Variable v = rules.getVariable(CompiledFormula.variableOf(lit));
+        return CompiledFormula.isNegated(lit) ? NegLiteral.make(v) : PosLiteral.make(v);
+    }
+
+    @Override
+    public String toString() {
+        return "IncrementalSolver[" + rules + "]";
+    }
+}
@@ -0,0 +1,129 @@
+package sat;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sat.env.Bool;
+import sat.env.Environment;
+import sat.formula.Clause;
+import sat.formula.Formula;
+import sat.formula.Literal;
+import sat.formula.PosLiteral;
+import sudoku.Sudoku;
+import sudoku.Sudoku.ParseException;
+
+public class IncrementalSolverTest {
+    Literal a = PosLiteral.make("a");
+    Literal b = PosLiteral.make("b");
+    Literal c = PosLiteral.make("c");
+    Literal na = a.getNegation();
+    Literal nb = b.getNegation();
+
+    // make sure assertions are turned on!
+    // we don't want to run test cases without assertions too.
+    // see the handout to find out how to turn them on.
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false;
+    }
+
+    @Test
+    public void testSudokuBatch() throws IOException, ParseException {
+    	IncrementalSolver solver = new IncrementalSolver(new Sudoku(3).getRules());
+    	for (String name : new String[] { "easy", "easy2", "hard", "hard2", "evil" }) {
+    		Sudoku puzzle = Sudoku.fromFile(3, "samples/sudoku_" + name + ".txt");
+    		Environment e = solver.solve(puzzle.getGivens());
+    		assertNotNull(e);
+    		assertTrue(SATSolverTest.satisfies(puzzle.getProblem(), e));
+    		assertFalse(puzzle.interpretSolution(e).toString().contains("."));
+    	}
+    }
+
+    @Test
+    public void testFailedAssumptions() {
+    	// (~a | ~b) & (a | c)
+    	Formula f = new Formula(make(na, nb)).addClause(make(a, c));
+    	IncrementalSolver solver = new IncrementalSolver(f);
+    	assertNull(solver.solve(c, a, b));
+    	assertEquals(2, solver.getFailedAssumptions().size());
+    	assertTrue(solver.getFailedAssumptions().contains(a));
+    	assertTrue(solver.getFailedAssumptions().contains(b));
+    	// the solver is still usable, and the rules alone still satisfiable
+    	Environment e = solver.solve(b);
+    	assertNotNull(e);
+    	assertTrue(solver.getFailedAssumptions().isEmpty());
+    	assertEquals(Bool.TRUE, b.getVariable().eval(e));
+    	assertEquals(Bool.TRUE, c.getVariable().eval(e));
+    }
+
+    @Test
+    public void testAssumptionOutsideRules() {
+    	Literal d = PosLiteral.make("d");
+    	IncrementalSolver solver = new IncrementalSolver(new Formula(make(a, b)));
+    	Environment e = solver.solve(d.getNegation(), na);
+    	assertEquals(Bool.FALSE, d.getVariable().eval(e));
+    	assertEquals(Bool.TRUE, b.getVariable().eval(e));
+    	assertNull(solver.solve(d, d.getNegation()));
+    	assertEquals(2, solver.getFailedAssumptions().size());
+    }
+
+    @Test
+    public void testUnsatisfiableRulesStayLearned() {
+    	IncrementalSolver solver = new IncrementalSolver(SATSolverTest.pigeonhole(6, 5));
+    	assertNull(solver.solve());
+    	long conflicts = solver.getStats().getConflicts();
+    	assertNull(solver.solve());
+    	assertEquals(conflicts, solver.getStats().getConflicts());
+    	assertTrue(solver.getFailedAssumptions().isEmpty());
+    }
+
+    @Test
+    public void testOutcome() {
+    	// each solve gets the whole conflict limit, and giving up on one
+    	// says nothing about the next
+    	IncrementalSolver solver = new IncrementalSolver(SATSolverTest.pigeonhole(11, 10),
+    			new SolverConfig().withConflictLimit(50));
+    	assertNull(solver.getOutcome());
+    	assertNull(solver.solve());
+    	assertEquals(SolveResult.Outcome.UNKNOWN, solver.getOutcome());
+    	Literal p = PosLiteral.make("p0h0");
+    	assertNull(solver.solve(p, p.getNegation()));
+    	assertEquals(SolveResult.Outcome.UNSATISFIABLE, solver.getOutcome());
+    	assertNull(solver.solve());
+    	assertEquals(SolveResult.Outcome.UNKNOWN, solver.getOutcome());
+    	assertTrue(solver.getStats().getConflicts() > 100);
+    }
+
+    @Test
+    public void testMatchesFreshSolver() {
+    	Random random = new Random(6005);
+    	for (int round = 0; round < 20; round++) {
+    		Formula rules = PreprocessorTest.randomFormula(random, 12, 40);
+    		IncrementalSolver solver = new IncrementalSolver(rules);
+    		for (int k = 0; k < 10; k++) {
+    			Literal[] assumptions = new Literal[3];
+    			Formula f = rules;
+    			for (int i = 0; i < assumptions.length; i++) {
+    				Literal l = PosLiteral.make("r" + random.nextInt(12));
+    				assumptions[i] = random.nextBoolean() ? l : l.getNegation();
+    				f = f.addClause(make(assumptions[i]));
+    			}
+    			Environment e = solver.solve(assumptions);
+    			assertEquals(SATSolver.solve(f) == null, e == null);
+    			if (e != null) assertTrue(SATSolverTest.satisfies(f, e));
+    		}
+    	}
+    }
+
+    private static Clause make(Literal... e) {
+        Clause c = new Clause();
+        for (int i = 0; i < e.length; ++i) {
+            c = c.add(e[i]);
+        }
+        return c;
+    }
+}
@@ -0,0 +1,106 @@
+package sat;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of primitive ints, used by the solver internals in place
+ * of List&lt;Integer&gt; so that the hot loops do not box.
+ * This datatype is mutable.
+ */
+final class IntVec {
+    private int[] data;
+    private int size;
+    /*
+     * Rep invariant:
+     *     data != null
+     *     0 <= size <= data.length
+     * 
+     * Abstraction function:
+     *     represents the sequence data[0], ..., data[size-1]
+     */
+
+    IntVec() {
+        this(4);
+    }
+
+    IntVec(int capacity) {
+        data = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * @return number of elements in this
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return true if this contains no elements
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Requires: 0 <= i < size()
+     * @return the ith element
+     */
+    int get(int i) {
+        return data[i];
+    }
+
+    /**
+     * Requires: 0 <= i < size()
+     * Replace the ith element with x.
+     */
+    void set(int i, int x) {
+        data[i] = x;
+    }
+
+    /**
+     * Append x to the end of this.
+     */
+    void push(int x) {
+        if (size == data.length)
+            data = Arrays.copyOf(data, size * 2);
+        data[size++] = x;
+    }
+
+    /**
+     * Requires: this is non-empty
+     * @return the last element, which is removed
+     */
+    int pop() {
+        return data[--size];
+    }
+
+    /**
+     * Requires: this is non-empty
+     * @return the last element
+     */
+    int last() {
+        return data[size - 1];
+    }
+
+    /**
+     * Requires: 0 <= n <= size()
+     * Drop all but the first n elements.
+     */
+    void shrinkTo(int n) {
+        size = n;
+    }
+
+    /**
+     * Remove all elements.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return a new array holding the elements of this in order
+     */
+    int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
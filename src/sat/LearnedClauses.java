@@ -0,0 +1,237 @@
+package sat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * The bookkeeping of the clauses learned by a CDCLSolver, which decides which
+ * of them to keep when the solver periodically reduces its clause database.
+ *
+ * Learned clauses are kept in three tiers by literal block distance (LBD),
+ * the number of distinct decision levels among their literals when learned:
+ * core clauses (LBD <= CORE_LBD) are kept for good; mid clauses
+ * (LBD <= MID_LBD) are kept as long as they keep taking part in conflicts,
+ * and are demoted to the local tier once they sit out a whole reduction;
+ * local clauses compete on activity, and the less active half of them is
+ * evicted at each reduction. On top of that, the total estimated size of
+ * the learned clauses is held under a byte budget, by evicting further
+ * local, then mid, then core clauses in order of activity.
+ *
+ * Clauses are named by the references the solver gives them; a clause that
+ * is the reason of a current assignment is locked and is never evicted.
+ * This datatype is mutable.
+ */
+final class LearnedClauses {
+    static final int CORE = 0;
+    static final int MID = 1;
+    static final int LOCAL = 2;
+    static final int CORE_LBD = 2;
+    static final int MID_LBD = 6;
+
+    // estimated heap cost of a clause of n literals: the int[] (header plus
+    // n ints), its two watch entries, and the metadata kept here
+    private static final int CLAUSE_OVERHEAD = 16 + 16 + 24;
+    // activities above this are rescaled to keep doubles finite
+    private static final double RESCALE_LIMIT = 1e20;
+    // factor by which clause activities decay after each conflict
+    private static final double DECAY = 0.999;
+
+    // references of the learned clauses currently in the database
+    private final IntVec refs = new IntVec();
+    // per-reference metadata, indexed by clause reference
+    private int[] size = new int[0];
+    private int[] lbd = new int[0];
+    private int[] tier = new int[0];
+    private double[] activity = new double[0];
+    private boolean[] used = new boolean[0];
+    private double increment = 1;
+    // total estimated size of the clauses in refs
+    private long bytes;
+    private final long budget;
+    /*
+     * Rep invariant:
+     *     every element of refs is distinct and < size.length
+     *     bytes == sum over cr in refs of bytes(size[cr])
+     *     tier[cr] == CORE implies lbd[cr] <= CORE_LBD
+     *     all metadata arrays have the same length
+     */
+
+    /**
+     * Create an empty database whose clauses may take up about budget bytes.
+     */
+    LearnedClauses(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return estimated bytes taken by a learned clause of n literals
+     */
+    static long bytes(int n) {
+        return CLAUSE_OVERHEAD + 4L * n;
+    }
+
+    /**
+     * @return the tier of a clause with the given LBD
+     */
+    static int tierOf(int lbd) {
+        if (lbd <= CORE_LBD) return CORE;
+        if (lbd <= MID_LBD) return MID;
+        return LOCAL;
+    }
+
+    /**
+     * Requires: cr is not in this database
+     * Record a new learned clause cr of n literals and the given LBD.
+     */
+    void add(int cr, int n, int clauseLbd) {
+        if (cr >= size.length) {
+            int capacity = Math.max(cr + 1, size.length * 2);
+            size = Arrays.copyOf(size, capacity);
+            lbd = Arrays.copyOf(lbd, capacity);
+            tier = Arrays.copyOf(tier, capacity);
+            activity = Arrays.copyOf(activity, capacity);
+            used = Arrays.copyOf(used, capacity);
+        }
+        refs.push(cr);
+        size[cr] = n;
+        lbd[cr] = clauseLbd;
+        tier[cr] = tierOf(clauseLbd);
+        activity[cr] = increment;
+        used[cr] = true;
+        bytes += bytes(n);
+    }
+
+    /**
+     * @return true if cr is a learned clause of this database
+     */
+    boolean contains(int cr) {
+        return cr < size.length && size[cr] > 0;
+    }
+
+    /**
+     * Requires: contains(cr)
+     * Note that cr took part in a conflict, and that its LBD under the
+     * current assignment is now clauseLbd: bump its activity, and promote it
+     * to a better tier if its LBD dropped.
+     */
+    void used(int cr, int clauseLbd) {
+        used[cr] = true;
+        activity[cr] += increment;
+        if (activity[cr] > RESCALE_LIMIT) {
+            for (int i = 0; i < refs.size(); i++)
+                activity[refs.get(i)] *= 1 / RESCALE_LIMIT;
+            increment *= 1 / RESCALE_LIMIT;
+        }
+        if (clauseLbd < lbd[cr]) {
+            lbd[cr] = clauseLbd;
+            tier[cr] = Math.min(tier[cr], tierOf(clauseLbd));
+        }
+    }
+
+    /**
+     * Age all clause activities, by making future bumps count for more.
+     */
+    void decayAll() {
+        increment /= DECAY;
+    }
+
+    /**
+     * @return the number of learned clauses
+     */
+    int count() {
+        return refs.size();
+    }
+
+    /**
+     * @return estimated bytes taken by the learned clauses
+     */
+    long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return true if the learned clauses take up more than the budget
+     */
+    boolean overBudget() {
+        return bytes > budget;
+    }
+
+    /**
+     * Requires: contains(cr)
+     * @return the tier of cr
+     */
+    int tier(int cr) {
+        return tier[cr];
+    }
+
+    /**
+     * Choose the clauses to evict: the less active half of the local tier,
+     * then, while over budget, further local, mid and core clauses in order
+     * of activity. Mid clauses not used since the last reduction are demoted
+     * to local first. The evicted clauses are removed from this database.
+     *
+     * @param locked
+     *            locked[cr] is true if cr is the reason of a current
+     *            assignment; it may be shorter than the largest reference,
+     *            in which case the missing entries are false
+     * @return the references of the evicted clauses
+     */
+    IntVec reduce(boolean[] locked) {
+        ArrayList<Integer> local = new ArrayList<Integer>();
+        ArrayList<Integer> mid = new ArrayList<Integer>();
+        ArrayList<Integer> core = new ArrayList<Integer>();
+        for (int i = 0; i < refs.size(); i++) {
+            int cr = refs.get(i);
+            if (tier[cr] == MID && !used[cr]) tier[cr] = LOCAL;
+            used[cr] = false;
+            if (cr < locked.length && locked[cr]) continue;
+            if (tier[cr] == LOCAL) local.add(cr);
+            else if (tier[cr] == MID) mid.add(cr);
+            else core.add(cr);
+        }
+        // least active first, and of equal activity, highest LBD first
+        Comparator<Integer> leastUseful = new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int c = Double.compare(activity[a], activity[b]);
+                if (c != 0) return c;
+                return lbd[b] - lbd[a];
+            }
+        };
+        Collections.sort(local, leastUseful);
+        Collections.sort(mid, leastUseful);
+        Collections.sort(core, leastUseful);
+
+        IntVec evicted = new IntVec();
+        int half = local.size() / 2;
+        for (int i = 0; i < local.size(); i++)
+            if (i < half || overBudget()) evict(local.get(i), evicted);
+        for (int i = 0; i < mid.size() && overBudget(); i++)
+            evict(mid.get(i), evicted);
+        for (int i = 0; i < core.size() && overBudget(); i++)
+            evict(core.get(i), evicted);
+
+        int j = 0;
+        for (int i = 0; i < refs.size(); i++)
+            if (size[refs.get(i)] > 0) refs.set(j++, refs.get(i));
+        refs.shrinkTo(j);
+        return evicted;
+    }
+
+    private void evict(int cr, IntVec evicted) {
+        bytes -= bytes(size[cr]);
+        size[cr] = 0;
+        evicted.push(cr);
+    }
+
+    /**
+     * @return the number of clauses of this database in tier t
+     */
+    int count(int t) {
+        int n = 0;
+        for (int i = 0; i < refs.size(); i++)
+            if (tier[refs.get(i)] == t) n++;
+        return n;
+    }
+}
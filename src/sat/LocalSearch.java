@@ -0,0 +1,358 @@
+package sat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import sat.formula.CompiledFormula;
+
+/**
+ * A stochastic local search for a solution, in the style of probSAT: start
+ * from a random assignment and, as long as some clause is false, pick one
+ * of the false clauses at random and flip a variable of it. A variable
+ * whose flip makes no true clause false is flipped at once, as WalkSAT
+ * does; otherwise one is drawn with probability proportional to
+ * (EPS + break)^-CB, where break is the number of clauses the flip would
+ * make false, so that flips that break much are rare but never impossible.
+ *
+ * The search can find a solution of a satisfiable problem far faster than
+ * a complete search, but it never proves that there is none: it gives up
+ * after a set number of flips. The best assignment it met, the one with
+ * the fewest false clauses, is a good guess at the phases of a complete
+ * search; see SolverConfig.withLocalSearch.
+ *
+ * Everything a step needs is kept up to date incrementally as variables
+ * flip: the number of true literals of each clause, the variables that
+ * alone make each clause true and so the break count of every variable,
+ * and the false clauses, in an array from which a clause is added or
+ * removed in constant time. A flip then costs time in proportion to the
+ * number of clauses its variable occurs in.
+ *
+ * AtMostOne and AllDifferent constraints are searched as their clauses,
+ * as CompiledFormula.expandConstraints gives them. The search is
+ * deterministic given its seed.
+ *
+ * A LocalSearch is mutable.
+ */
+final class LocalSearch {
+    // the break weight is (EPS + break)^-CB, which suits 3-SAT
+    private static final double EPS = 1.0;
+    private static final double CB = 2.3;
+    // break counts whose weight is looked up rather than computed
+    private static final int TABLE = 64;
+    // flips between two looks at the clock and the cancellation token
+    private static final int POLL_INTERVAL = 4096;
+
+    // literals of clause c are lits[starts[c] .. starts[c+1]-1], without
+    // repeats and never both a literal and its negation
+    private final int[] lits;
+    private final int[] starts;
+    // occurs[occStarts[lit] .. occStarts[lit+1]-1] are the clauses of lit
+    private final int[] occurs;
+    private final int[] occStarts;
+    private final Random random;
+    // true if some clause is empty, so that no assignment satisfies them
+    private final boolean empty;
+
+    // value[v] is the current value of variable v
+    private final boolean[] value;
+    // numTrue[c] is the number of true literals of clause c, and
+    // trueVars[c] the exclusive or of their variables, which is the one
+    // variable that makes c true when numTrue[c] == 1
+    private final int[] numTrue;
+    private final int[] trueVars;
+    // breaks[v] is the number of clauses v alone makes true
+    private final int[] breaks;
+    // unsat[0..numUnsat-1] are the false clauses, and unsatPos[c] is the
+    // position of false clause c in unsat
+    private final int[] unsat;
+    private final int[] unsatPos;
+    private int numUnsat;
+    // the assignment with the fewest false clauses met so far
+    private final boolean[] best;
+    private int bestUnsat;
+    private long flips;
+    // weight[b] is the weight of a flip that breaks b clauses, and
+    // candidates and weights scratch space for the variables of a clause
+    private final double[] weight = new double[TABLE];
+    private int[] candidates = new int[16];
+    private double[] weights = new double[16];
+
+    /*
+     * Rep invariant:
+     *     numTrue, trueVars and breaks agree with value, as described above
+     *     unsat[0..numUnsat-1] holds exactly the clauses c with
+     *         numTrue[c] == 0, and unsat[unsatPos[c]] == c for each of them
+     *     bestUnsat is the number of false clauses under best
+     *
+     * Abstraction function:
+     *     represents a search over assignments of the variables of the
+     *     problem, currently at value
+     */
+
+    /**
+     * Create a search for a solution of formula, starting from an
+     * assignment drawn from seed, as are all its later choices.
+     */
+    LocalSearch(CompiledFormula formula, long seed) {
+        formula = formula.expandConstraints();
+        int n = formula.getNumVariables();
+        int m = formula.getNumClauses();
+        random = new Random(seed);
+        for (int b = 0; b < TABLE; b++)
+            weight[b] = Math.pow(EPS + b, -CB);
+
+        // copy the clauses without repeated literals or tautologies
+        int total = 0;
+        for (int c = 0; c < m; c++)
+            total += formula.clauseSize(c);
+        int[] clauseLits = new int[total];
+        int[] clauseStarts = new int[m + 1];
+        int[] mark = new int[2 * n];
+        int k = 0;
+        int kept = 0;
+        boolean hasEmpty = false;
+        for (int c = 0; c < m; c++) {
+            int start = k;
+            boolean tautology = false;
+            for (int j = 0; j < formula.clauseSize(c); j++) {
+                int lit = formula.literalAt(c, j);
+                if (mark[lit] == c + 1) continue;
+                if (mark[lit ^ 1] == c + 1) tautology = true;
+                mark[lit] = c + 1;
+                clauseLits[k++] = lit;
+            }
+            if (tautology) {
+                k = start;
+                continue;
+            }
+            hasEmpty |= k == start;
+            clauseStarts[++kept] = k;
+        }
+        empty = hasEmpty;
+        lits = Arrays.copyOf(clauseLits, k);
+        starts = Arrays.copyOf(clauseStarts, kept + 1);
+
+        occStarts = new int[2 * n + 1];
+        for (int lit : lits)
+            occStarts[lit + 1]++;
+        for (int lit = 0; lit < 2 * n; lit++)
+            occStarts[lit + 1] += occStarts[lit];
+        occurs = new int[lits.length];
+        int[] fill = Arrays.copyOf(occStarts, 2 * n);
+        for (int c = 0; c < kept; c++)
+            for (int j = starts[c]; j < starts[c + 1]; j++)
+                occurs[fill[lits[j]]++] = c;
+
+        value = new boolean[n];
+        for (int v = 0; v < n; v++)
+            value[v] = random.nextBoolean();
+        numTrue = new int[kept];
+        trueVars = new int[kept];
+        breaks = new int[n];
+        unsat = new int[kept];
+        unsatPos = new int[kept];
+        best = new boolean[n];
+        initialize();
+    }
+
+    /**
+     * Compute the counts, the false clauses and the best assignment from
+     * value.
+     */
+    private void initialize() {
+        Arrays.fill(breaks, 0);
+        numUnsat = 0;
+        for (int c = 0; c < numTrue.length; c++) {
+            int count = 0;
+            int vars = 0;
+            for (int j = starts[c]; j < starts[c + 1]; j++) {
+                if (isTrue(lits[j])) {
+                    count++;
+                    vars ^= lits[j] >> 1;
+                }
+            }
+            numTrue[c] = count;
+            trueVars[c] = vars;
+            if (count == 0) addUnsat(c);
+            else if (count == 1) breaks[vars]++;
+        }
+        System.arraycopy(value, 0, best, 0, value.length);
+        bestUnsat = numUnsat;
+    }
+
+    /**
+     * Start the search again from phases, phases[v] being the value of
+     * variable v. Requires phases.length to be the number of variables
+     */
+    void reset(boolean[] phases) {
+        System.arraycopy(phases, 0, value, 0, value.length);
+        initialize();
+    }
+
+    private boolean isTrue(int lit) {
+        return value[lit >> 1] != ((lit & 1) != 0);
+    }
+
+    private void addUnsat(int c) {
+        unsatPos[c] = numUnsat;
+        unsat[numUnsat++] = c;
+    }
+
+    private void removeUnsat(int c) {
+        int last = unsat[--numUnsat];
+        unsat[unsatPos[c]] = last;
+        unsatPos[last] = unsatPos[c];
+    }
+
+    /**
+     * Search until every clause is true, maxFlips flips have been made in
+     * this call, System.nanoTime() passes deadline, or token, if not null,
+     * is cancelled; the clock and the token are looked at every
+     * POLL_INTERVAL flips.
+     *
+     * @return the value of each variable, by number, in an assignment that
+     *         makes every clause true, or null if none was found
+     */
+    boolean[] search(long maxFlips, long deadline, CancellationToken token) {
+        if (empty) return null;
+        for (long i = 0; numUnsat > 0; i++) {
+            if (i >= maxFlips) return null;
+            if (i % POLL_INTERVAL == POLL_INTERVAL - 1 && ((token != null && token.isCancelled())
+                    || (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0)))
+                return null;
+            flip(pick(unsat[random.nextInt(numUnsat)]));
+            if (numUnsat < bestUnsat) {
+                System.arraycopy(value, 0, best, 0, value.length);
+                bestUnsat = numUnsat;
+            }
+        }
+        return value.clone();
+    }
+
+    /**
+     * Requires: clause c is false
+     * @return the variable of c to flip
+     */
+    private int pick(int c) {
+        int size = starts[c + 1] - starts[c];
+        if (candidates.length < size) {
+            candidates = new int[2 * size];
+            weights = new double[2 * size];
+        }
+        // variables that break nothing come first, chosen among evenly
+        int free = 0;
+        for (int j = starts[c]; j < starts[c + 1]; j++) {
+            int v = lits[j] >> 1;
+            if (breaks[v] == 0) candidates[free++] = v;
+        }
+        if (free > 0) return candidates[random.nextInt(free)];
+        double sum = 0;
+        for (int j = 0; j < size; j++) {
+            int b = breaks[lits[starts[c] + j] >> 1];
+            sum += b < TABLE ? weight[b] : Math.pow(EPS + b, -CB);
+            weights[j] = sum;
+        }
+        double r = random.nextDouble() * sum;
+        int j = 0;
+        while (j < size - 1 && weights[j] <= r)
+            j++;
+        return lits[starts[c] + j] >> 1;
+    }
+
+    /**
+     * Flip variable v, bringing the counts and the false clauses up to
+     * date.
+     */
+    private void flip(int v) {
+        flips++;
+        value[v] = !value[v];
+        int made = value[v] ? 2 * v : 2 * v + 1;
+        // clauses of the literal made true gain a true literal
+        for (int i = occStarts[made]; i < occStarts[made + 1]; i++) {
+            int c = occurs[i];
+            int count = numTrue[c]++;
+            if (count == 0) {
+                removeUnsat(c);
+                breaks[v]++;
+            } else if (count == 1) {
+                breaks[trueVars[c]]--;
+            }
+            trueVars[c] ^= v;
+        }
+        // and those of its negation lose one
+        int lost = made ^ 1;
+        for (int i = occStarts[lost]; i < occStarts[lost + 1]; i++) {
+            int c = occurs[i];
+            int count = --numTrue[c];
+            trueVars[c] ^= v;
+            if (count == 0) {
+                addUnsat(c);
+                breaks[v]--;
+            } else if (count == 1) {
+                breaks[trueVars[c]]++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of flips made so far
+     */
+    long getFlips() {
+        return flips;
+    }
+
+    /**
+     * @return the number of clauses false under the current assignment
+     */
+    int getUnsatisfied() {
+        return numUnsat;
+    }
+
+    /**
+     * @return a copy of the assignment with the fewest false clauses met
+     *         so far, by variable number
+     */
+    boolean[] getBest() {
+        return best.clone();
+    }
+
+    /**
+     * @return the number of clauses false under getBest()
+     */
+    int getBestUnsatisfied() {
+        return bestUnsat;
+    }
+
+    /**
+     * Check the rep invariant by recomputing everything kept incrementally.
+     */
+    void checkRep() {
+        int[] expectedBreaks = new int[breaks.length];
+        int falseClauses = 0;
+        for (int c = 0; c < numTrue.length; c++) {
+            int count = 0;
+            int vars = 0;
+            for (int j = starts[c]; j < starts[c + 1]; j++) {
+                if (isTrue(lits[j])) {
+                    count++;
+                    vars ^= lits[j] >> 1;
+                }
+            }
+            assert numTrue[c] == count : "LocalSearch, Rep invariant: numTrue";
+            assert trueVars[c] == vars : "LocalSearch, Rep invariant: trueVars";
+            if (count == 1) expectedBreaks[vars]++;
+            if (count == 0) {
+                falseClauses++;
+                assert unsatPos[c] < numUnsat && unsat[unsatPos[c]] == c : "LocalSearch, Rep invariant: unsat";
+            }
+        }
+        assert falseClauses == numUnsat : "LocalSearch, Rep invariant: numUnsat";
+        assert Arrays.equals(breaks, expectedBreaks) : "LocalSearch, Rep invariant: breaks";
+    }
+
+    @Override
+    public String toString() {
+        return "LocalSearch[clauses=" + numTrue.length + ", unsatisfied=" + numUnsat
+                + ", best=" + bestUnsat + ", flips=" + flips + "]";
+    }
+}
@@ -0,0 +1,167 @@
+package sat;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sat.formula.Clause;
+import sat.formula.CompiledFormula;
+import sat.formula.Formula;
+import sat.formula.Literal;
+import sat.formula.PosLiteral;
+import sudoku.Sudoku;
+import sudoku.Sudoku.ParseException;
+
+public class LocalSearchTest {
+
+    // make sure assertions are turned on!
+    // we don't want to run test cases without assertions too.
+    // see the handout to find out how to turn them on.
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false;
+    }
+
+    @Test
+    public void testFindsSolutions() {
+    	for (long seed = 1; seed <= 5; seed++) {
+    		Formula f = planted(300, 4.0, seed);
+    		LocalSearch walk = new LocalSearch(f.compile(), seed);
+    		boolean[] model = walk.search(10000000, Long.MAX_VALUE, null);
+    		assertNotNull(model);
+    		walk.checkRep();
+    		assertEquals(0, walk.getUnsatisfied());
+    		assertTrue(SATSolverTest.satisfies(f, f.compile().toEnvironment(model)));
+    	}
+    }
+
+    @Test
+    public void testIncrementalCounts() {
+    	// the counts kept flip by flip agree with counts made from scratch,
+    	// on clauses of all sizes, repeats and tautologies included
+    	Random random = new Random(6005);
+    	Clause all = new Clause();
+    	for (int v = 0; v < 30; v++)
+    		all = all.add(PosLiteral.make("v" + v));
+    	List<int[]> clauses = new ArrayList<int[]>();
+    	for (int i = 0; i < 150; i++) {
+    		int[] c = new int[1 + random.nextInt(5)];
+    		for (int k = 0; k < c.length; k++)
+    			c[k] = random.nextInt(60);
+    		clauses.add(c);
+    	}
+    	CompiledFormula f = new Formula(all).compile().withClauses(clauses);
+    	LocalSearch walk = new LocalSearch(f, 1);
+    	walk.checkRep();
+    	for (int round = 0; round < 50; round++) {
+    		walk.search(37, Long.MAX_VALUE, null);
+    		walk.checkRep();
+    	}
+    	boolean[] phases = new boolean[f.getNumVariables()];
+    	walk.reset(phases);
+    	walk.checkRep();
+    	assertTrue(walk.getBestUnsatisfied() <= walk.getUnsatisfied());
+    }
+
+    @Test
+    public void testSeeds() {
+    	Formula f = planted(200, 4.2, 17);
+    	LocalSearch a = new LocalSearch(f.compile(), 99);
+    	LocalSearch b = new LocalSearch(f.compile(), 99);
+    	boolean[] ma = a.search(10000000, Long.MAX_VALUE, null);
+    	boolean[] mb = b.search(10000000, Long.MAX_VALUE, null);
+    	assertNotNull(ma);
+    	assertEquals(a.getFlips(), b.getFlips());
+    	assertTrue(Arrays.equals(ma, mb));
+    	LocalSearch c = new LocalSearch(f.compile(), 100);
+    	c.search(10000000, Long.MAX_VALUE, null);
+    	assertTrue(c.getFlips() != a.getFlips() || !Arrays.equals(ma, c.getBest()));
+
+    	SolverConfig config = new SolverConfig().withSeed(5);
+    	SolveResult r1 = SATSolver.solveLocal(f, config, 10000000);
+    	SolveResult r2 = SATSolver.solveLocal(f, config, 10000000);
+    	assertEquals(SolveResult.Outcome.SATISFIABLE, r1.getOutcome());
+    	assertEquals(r1.getStats().getFlips(), r2.getStats().getFlips());
+    	assertEquals(r1.getEnvironment().toString(), r2.getEnvironment().toString());
+    }
+
+    @Test
+    public void testGivesUp() {
+    	// local search cannot refute, so it runs out of flips
+    	Formula f = SATSolverTest.pigeonhole(5, 4);
+    	LocalSearch walk = new LocalSearch(f.compile(), 3);
+    	assertNull(walk.search(5000, Long.MAX_VALUE, null));
+    	assertEquals(5000, walk.getFlips());
+    	assertTrue(walk.getBestUnsatisfied() >= 1);
+    	SolveResult r = SATSolver.solveLocal(f, new SolverConfig(), 5000);
+    	assertEquals(SolveResult.Outcome.UNKNOWN, r.getOutcome());
+    	assertEquals(5000, r.getStats().getFlips());
+    	CancellationToken token = new CancellationToken();
+    	token.cancel();
+    	r = SATSolver.solveLocal(f, new SolverConfig().withCancellation(token), Long.MAX_VALUE);
+    	assertEquals(SolveResult.Outcome.UNKNOWN, r.getOutcome());
+    	// an empty clause is never satisfied
+    	assertNull(new LocalSearch(new Formula(new Clause()).compile(), 1).search(10, Long.MAX_VALUE, null));
+    }
+
+    @Test
+    public void testSeedsCompleteSearch() throws IOException, ParseException {
+    	// solutions come straight from the local search when it finds them,
+    	// and the complete search still answers when it does not
+    	Formula f = planted(200, 4.0, 3);
+    	SolveResult r = SATSolver.solve(f, new SolverConfig().withLocalSearch(10000000));
+    	assertTrue(r.isSatisfiable());
+    	assertTrue(r.getStats().getFlips() > 0);
+    	assertEquals(0, r.getStats().getDecisions());
+    	assertTrue(SATSolverTest.satisfies(f, r.getEnvironment()));
+
+    	r = SATSolver.solve(SATSolverTest.pigeonhole(6, 5), new SolverConfig().withLocalSearch(1000));
+    	assertEquals(SolveResult.Outcome.UNSATISFIABLE, r.getOutcome());
+    	assertEquals(1000, r.getStats().getFlips());
+
+    	Sudoku s = Sudoku.fromFile(3, "samples/sudoku_evil.txt");
+    	Formula problem = s.getGlobalProblem();
+    	r = SATSolver.solve(problem, new SolverConfig().withLocalSearch(2000).withPreprocessing(true));
+    	assertTrue(r.isSatisfiable());
+    	assertEquals(s.interpretSolution(SATSolver.solve(problem)).toString(),
+    			s.interpretSolution(r.getEnvironment()).toString());
+    }
+
+    /**
+     * @return a random 3-SAT formula over n variables with ratio * n
+     *         clauses, each of them true under an assignment drawn from seed
+     */
+    static Formula planted(int n, double ratio, long seed) {
+    	Random random = new Random(seed);
+    	boolean[] hidden = new boolean[n];
+    	Literal[] vars = new Literal[n];
+    	for (int v = 0; v < n; v++) {
+    		hidden[v] = random.nextBoolean();
+    		vars[v] = PosLiteral.make("x" + v);
+    	}
+    	Formula f = new Formula();
+    	for (int i = 0; i < ratio * n; i++) {
+    		int[] vs = new int[3];
+    		boolean[] negated = new boolean[3];
+    		boolean holds = false;
+    		while (!holds) {
+    			for (int k = 0; k < 3; k++) {
+    				vs[k] = random.nextInt(n);
+    				negated[k] = random.nextBoolean();
+    				holds |= hidden[vs[k]] != negated[k];
+    			}
+    		}
+    		Clause c = new Clause();
+    		for (int k = 0; k < 3 && c != null; k++)
+    			c = c.add(negated[k] ? vars[vs[k]].getNegation() : vars[vs[k]]);
+    		if (c != null) f = f.addClause(c);
+    	}
+    	return f;
+    }
+}
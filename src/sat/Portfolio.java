@@ -0,0 +1,130 @@
+package sat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import sat.env.Environment;
+import sat.formula.CompiledFormula;
+
+/**
+ * A parallel portfolio: several CDCLSolvers, configured differently, race on
+ * the same problem in threads of their own, sharing their short learned
+ * clauses through a ClauseExchange. The first solver to find a solution, or
+ * to prove there is none, wins, and the others are stopped.
+ *
+ * Since solvers with different restart policies, phase heuristics and
+ * random seeds take very different paths through the search space, the
+ * portfolio is usually as fast as the luckiest of them, and clause sharing
+ * lets each profit from what the others have learned.
+ */
+final class Portfolio {
+
+    private Portfolio() {
+    }
+
+    /**
+     * @return n configurations that differ from base in restart policy,
+     *         phase saving and seed; the first is base itself
+     *         Requires n > 0
+     */
+    static List<SolverConfig> configs(SolverConfig base, int n) {
+        List<SolverConfig> configs = new ArrayList<SolverConfig>();
+        for (int i = 0; i < n; i++) {
+            SolverConfig c;
+            switch (i % 4) {
+            case 0:
+                c = base;
+                break;
+            case 1:
+                c = base.withRestartPolicy(RestartPolicy.glucose(50, 0.8));
+                break;
+            case 2:
+                c = base.withRestartPolicy(RestartPolicy.geometric(100, 1.5));
+                break;
+            default:
+                c = base.withRestartPolicy(RestartPolicy.luby(512)).withPhaseSaving(false);
+                break;
+            }
+            configs.add(i == 0 ? c : c.withSeed(i));
+        }
+        return configs;
+    }
+
+    /**
+     * Race one solver per configuration on formula, each in its own thread.
+     *
+     * @return the result of the first solver to finish, with its statistics
+     */
+    static SolveResult solve(CompiledFormula formula, List<SolverConfig> configs) {
+        final int n = configs.size();
+        ClauseExchange exchange = new ClauseExchange(n);
+        final List<CDCLSolver> solvers = new ArrayList<CDCLSolver>();
+        for (int i = 0; i < n; i++) {
+            CDCLSolver solver = new CDCLSolver(formula, configs.get(i));
+            solver.share(exchange, i);
+            solvers.add(solver);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(n, new ThreadFactory() {
+            private int count;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "portfolio-" + count++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        CompletionService<Integer> done = new ExecutorCompletionService<Integer>(pool);
+        final boolean[][] models = new boolean[n][];
+        for (int i = 0; i < n; i++) {
+            final int id = i;
+            done.submit(new Callable<Integer>() {
+                public Integer call() {
+                    models[id] = solvers.get(id).solveModel();
+                    return id;
+                }
+            });
+        }
+        try {
+            // the first solver to finish with an answer wins; one that gave
+            // up on a limit of its configuration is passed over, and if all
+            // give up, the last of them reports the result
+            int winner = -1;
+            for (int i = 0; i < n; i++) {
+                winner = done.take().get();
+                if (!solvers.get(winner).isStopped()) break;
+            }
+            for (CDCLSolver solver : solvers)
+                solver.stop();
+            boolean[] model = models[winner];
+            CDCLSolver solver = solvers.get(winner);
+            if (solver.isStopped())
+                return new SolveResult(SolveResult.Outcome.UNKNOWN, null, solver.getStats());
+            if (model == null) return new SolveResult(null, solver.getStats());
+            long decoding = System.nanoTime();
+            Environment env = formula.toEnvironment(model);
+            solver.getStats().decodeNanos += System.nanoTime() - decoding;
+            return new SolveResult(env, solver.getStats());
+        } catch (InterruptedException e) {
+            for (CDCLSolver solver : solvers)
+                solver.stop();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while solving", e);
+        } catch (ExecutionException e) {
+            for (CDCLSolver solver : solvers)
+                solver.stop();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
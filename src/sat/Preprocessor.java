@@ -0,0 +1,884 @@
+package sat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+import sat.env.Bool;
+import sat.env.Environment;
+import sat.formula.CompiledFormula;
+import sat.formula.Formula;
+
+/**
+ * A preprocessor that simplifies a formula before it is solved, in the style
+ * of SatELite: unit clauses (such as the givens of a Sudoku) are propagated
+ * away, duplicate and subsumed clauses are removed, clauses are strengthened
+ * by self-subsuming resolution, failed literals are fixed by probing,
+ * equivalent literals are substituted by one representative, and variables
+ * are eliminated by resolution whenever that does not make the formula grow
+ * by more than a set number of clauses.
+ *
+ * The simplified formula is satisfiable iff the original one is. A solution
+ * of the simplified formula is turned into a solution of the original by
+ * extendModel, which gives the fixed and eliminated variables values that
+ * satisfy the clauses removed along with them.
+ *
+ * Typical use:
+ *     Preprocessor p = new Preprocessor(formula);
+ *     p.preprocess();
+ *     Environment e = SATSolver.solve(p.getFormula());
+ *     if (e != null) e = p.extendModel(e);
+ *
+ * A Preprocessor is mutable and is meant to simplify a single formula.
+ */
+public class Preprocessor {
+    // values of a variable or literal
+    private static final byte FALSE = 0;
+    private static final byte TRUE = 1;
+    private static final byte UNDEF = 2;
+    // variables whose elimination would need more than this many
+    // resolutions are not tried
+    private static final int MAX_RESOLUTIONS = 1000;
+    // resolvents longer than this stop an elimination
+    private static final int MAX_RESOLVENT_LENGTH = 20;
+    // passes over the variables made by eliminateVariables
+    private static final int MAX_ELIMINATION_ROUNDS = 3;
+    // default time allowed for probing, in milliseconds
+    private static final long DEFAULT_PROBING_MILLIS = 1000;
+
+    // the formula being simplified, which also numbers the variables
+    private final CompiledFormula original;
+    // clauses.get(i) holds the literals of clause i, or null if removed
+    private final ArrayList<int[]> clauses = new ArrayList<int[]>();
+    // occurs[lit] holds the indices of clauses containing lit; it may also
+    // hold removed clauses, and clauses lit was deleted from
+    private final IntVec[] occurs;
+    // signature[i] has bit (v mod 64) set for each variable v of clause i,
+    // so that a clause can only be a subset of clause j if its signature is
+    private long[] signature = new long[64];
+    // value[v] is the value v is fixed to at the top level, or UNDEF
+    private final byte[] value;
+    // literals fixed but not yet propagated
+    private final IntVec units = new IntVec();
+    // eliminated[v] is true once v was eliminated by resolution
+    private final boolean[] eliminated;
+    // frozen[v] is true if v must keep occurring in the formula
+    private final boolean[] frozen;
+    // the clauses removed by eliminations, for extendModel: each is stored
+    // as its literals, the literal to make true if the clause is false
+    // coming first, followed by its length
+    private final IntVec elimStack = new IntVec();
+    // scratch marks on literals, used by resolve
+    private final int[] mark;
+    // assignment made while probing a literal, on top of value, and the
+    // literals it made true
+    private final byte[] probe;
+    private final IntVec probeTrail = new IntVec();
+    private int stamp;
+    // true once the formula is known to be unsatisfiable
+    private boolean unsat;
+    // allowed growth in clauses per elimination
+    private int clauseGrowth;
+    // time allowed for each probing pass, in nanoseconds
+    private long probingNanos = DEFAULT_PROBING_MILLIS * 1000000;
+
+    private int fixedCount;
+    private int eliminatedCount;
+    private int duplicateCount;
+    private int subsumedCount;
+    private int strengthenedCount;
+    private int failedCount;
+    private int substitutedCount;
+    /*
+     * Rep invariant:
+     *     every clause in clauses has at least two literals, no duplicate
+     *         literals, no literal and its negation, and no fixed,
+     *         eliminated or substituted variable
+     *     outside of probe, every element of probe is UNDEF
+     *     for every clause i and literal lit of clause i, occurs[lit]
+     *         contains i
+     *     for every clause i, signature[i] == signature(clauses.get(i))
+     *
+     * Abstraction function:
+     *     the simplified formula is the conjunction of the clauses that are
+     *     not null; unsat means it is the false formula
+     */
+
+    /**
+     * Create a preprocessor for formula.
+     */
+    public Preprocessor(Formula formula) {
+        this(formula.compile());
+    }
+
+    /**
+     * Create a preprocessor for a compiled formula. Its AtMostOne and
+     * AllDifferent constraints are taken as their clauses, so the
+     * simplified formula has clauses only.
+     */
+    public Preprocessor(CompiledFormula formula) {
+        original = formula;
+        int n = formula.getNumVariables();
+        occurs = new IntVec[2 * n];
+        for (int lit = 0; lit < 2 * n; lit++)
+            occurs[lit] = new IntVec();
+        value = new byte[n];
+        Arrays.fill(value, UNDEF);
+        eliminated = new boolean[n];
+        frozen = new boolean[n];
+        mark = new int[2 * n];
+        probe = new byte[n];
+        Arrays.fill(probe, UNDEF);
+        for (int i = 0; i < formula.getNumClauses(); i++)
+            addClause(formula.clause(i));
+        for (int i = 0; i < formula.getNumAtMostOnes(); i++) {
+            int[] lits = formula.atMostOne(i);
+            for (int j = 0; j < lits.length; j++)
+                for (int k = j + 1; k < lits.length; k++)
+                    addClause(new int[] { lits[j] ^ 1, lits[k] ^ 1 });
+        }
+        for (int i = 0; i < formula.getNumAllDifferents(); i++) {
+            int[][] table = formula.allDifferent(i);
+            for (int[] row : table)
+                addClause(row);
+            for (int k = 0; k < (table.length == 0 ? 0 : table[0].length); k++)
+                for (int j = 0; j < table.length; j++)
+                    for (int j2 = j + 1; j2 < table.length; j2++)
+                        addClause(new int[] { table[j][k] ^ 1, table[j2][k] ^ 1 });
+        }
+        propagateUnits();
+    }
+
+    /**
+     * Keep variable number v from being eliminated, so that it still occurs
+     * in the simplified formula, for instance because it will be assumed or
+     * inspected by the client; if it is fixed, it occurs as a unit clause.
+     * Requires no pass has run yet.
+     */
+    public void freeze(int v) {
+        frozen[v] = true;
+    }
+
+    /**
+     * Set how many clauses an elimination may add beyond those it removes.
+     * The default is 0, so that eliminations never grow the formula.
+     * Requires growth >= 0
+     */
+    public void setClauseGrowth(int growth) {
+        clauseGrowth = growth;
+    }
+
+    /**
+     * Set how long each probing pass may run before it stops, leaving the
+     * rest of the literals unprobed. The default is one second.
+     * Requires millis >= 0
+     */
+    public void setProbingTimeLimit(long millis) {
+        probingNanos = millis * 1000000;
+    }
+
+    /**
+     * Run all simplifications.
+     */
+    public void preprocess() {
+        removeSubsumed();
+        probeFailedLiterals();
+        substituteEquivalentLiterals();
+        eliminateVariables();
+        removeSubsumed();
+    }
+
+    /**
+     * Probe literals: make a literal true, propagate it through the clauses,
+     * and if that falsifies a clause, the literal is failed and its negation
+     * is fixed. A literal implied by probing both a variable and its negation
+     * is fixed as well. Probing stops when the time limit runs out.
+     *
+     * @return number of variables fixed by probing
+     */
+    public int probeFailedLiterals() {
+        int before = fixedCount;
+        long deadline = System.nanoTime() + probingNanos;
+        IntVec implied = new IntVec();
+        for (int v = 0; v < value.length && !unsat; v++) {
+            if (System.nanoTime() - deadline > 0) break;
+            if (value[v] != UNDEF || eliminated[v]) continue;
+            if (occurs[2 * v].isEmpty() && occurs[2 * v + 1].isEmpty()) continue;
+            if (!probe(2 * v)) {
+                unprobe();
+                failedCount++;
+                fix(2 * v + 1);
+                propagateUnits();
+                continue;
+            }
+            implied.clear();
+            for (int i = 1; i < probeTrail.size(); i++)
+                implied.push(probeTrail.get(i));
+            unprobe();
+            if (!probe(2 * v + 1)) {
+                unprobe();
+                failedCount++;
+                fix(2 * v);
+                propagateUnits();
+                continue;
+            }
+            // keep the literals implied both ways
+            for (int i = 0; i < implied.size(); i++) {
+                int q = implied.get(i);
+                if (probeValue(q) != TRUE) implied.set(i, -1);
+            }
+            unprobe();
+            for (int i = 0; i < implied.size(); i++) {
+                int q = implied.get(i);
+                if (q >= 0 && value(q) == UNDEF) fix(q);
+            }
+            propagateUnits();
+        }
+        return fixedCount - before;
+    }
+
+    /**
+     * Requires: lit is unassigned and nothing is being probed
+     * Make lit true in probe and propagate it.
+     *
+     * @return false if propagation falsified a clause
+     */
+    private boolean probe(int lit) {
+        setProbe(lit);
+        for (int head = 0; head < probeTrail.size(); head++) {
+            int p = probeTrail.get(head);
+            IntVec occ = occurrences(p ^ 1);
+            for (int i = 0; i < occ.size(); i++) {
+                int unit = -1;
+                int free = 0;
+                for (int q : clauses.get(occ.get(i))) {
+                    byte val = probeValue(q);
+                    if (val == TRUE) {
+                        free = 2;
+                        break;
+                    }
+                    if (val == UNDEF) {
+                        unit = q;
+                        free++;
+                    }
+                }
+                if (free == 0) return false;
+                if (free == 1) setProbe(unit);
+            }
+        }
+        return true;
+    }
+
+    private void setProbe(int lit) {
+        probe[lit >> 1] = (byte) ((lit & 1) ^ 1);
+        probeTrail.push(lit);
+    }
+
+    /**
+     * Undo the assignment made by probe.
+     */
+    private void unprobe() {
+        for (int i = 0; i < probeTrail.size(); i++)
+            probe[probeTrail.get(i) >> 1] = UNDEF;
+        probeTrail.clear();
+    }
+
+    /**
+     * @return value of lit at the top level or, failing that, in probe
+     */
+    private byte probeValue(int lit) {
+        byte a = value[lit >> 1];
+        if (a == UNDEF) a = probe[lit >> 1];
+        if (a == UNDEF) return UNDEF;
+        return (byte) (a ^ (lit & 1));
+    }
+
+    /**
+     * Substitute equivalent literals. Every binary clause (a | b) gives the
+     * implications ~a -> b and ~b -> a; the literals of a strongly connected
+     * component of this implication graph are all equivalent, so each is
+     * replaced by one representative throughout the clauses. A component
+     * holding both a literal and its negation makes the formula
+     * unsatisfiable. Frozen variables are never substituted away.
+     *
+     * @return number of variables substituted
+     */
+    public int substituteEquivalentLiterals() {
+        if (unsat) return 0;
+        int before = substitutedCount;
+        int n = value.length;
+        IntVec[] implications = new IntVec[2 * n];
+        for (int lit = 0; lit < 2 * n; lit++)
+            implications[lit] = new IntVec();
+        for (int[] c : clauses) {
+            if (c == null || c.length != 2) continue;
+            implications[c[0] ^ 1].push(c[1]);
+            implications[c[1] ^ 1].push(c[0]);
+        }
+        int[] representative = components(implications);
+
+        for (int v = 0; v < n && !unsat; v++) {
+            int r = representative[2 * v];
+            if (r == representative[2 * v + 1]) {
+                unsat = true;
+                break;
+            }
+            if (r == 2 * v || frozen[v] || value[v] != UNDEF) continue;
+            // v is equivalent to r: save v <-> r for extendModel, then
+            // rewrite the clauses of v over r
+            elimStack.push(2 * v);
+            elimStack.push(r ^ 1);
+            elimStack.push(2);
+            elimStack.push(2 * v + 1);
+            elimStack.push(r);
+            elimStack.push(2);
+            for (int sign = 0; sign < 2; sign++) {
+                IntVec occ = occurrences(2 * v + sign);
+                for (int i = 0; i < occ.size(); i++) {
+                    int[] c = clauses.get(occ.get(i));
+                    clauses.set(occ.get(i), null);
+                    int[] d = new int[c.length];
+                    for (int k = 0; k < c.length; k++)
+                        d[k] = c[k] >> 1 == v ? r ^ (c[k] & 1) : c[k];
+                    addClause(d);
+                }
+            }
+            occurs[2 * v].clear();
+            occurs[2 * v + 1].clear();
+            eliminated[v] = true;
+            substitutedCount++;
+        }
+        propagateUnits();
+        return substitutedCount - before;
+    }
+
+    /**
+     * Find the strongly connected components of the implication graph by
+     * Tarjan's algorithm, run with an explicit stack.
+     *
+     * @return for each literal, the representative of its component: its
+     *         literal of the lowest numbered frozen variable if it has one,
+     *         otherwise of the lowest numbered variable. As the negations of
+     *         a component form a component too, representative[lit ^ 1] is
+     *         representative[lit] ^ 1 unless lit and ~lit are equivalent
+     */
+    private int[] components(IntVec[] implications) {
+        int size = implications.length;
+        int[] index = new int[size];
+        int[] low = new int[size];
+        boolean[] onStack = new boolean[size];
+        int[] representative = new int[size];
+        Arrays.fill(index, -1);
+        IntVec component = new IntVec();
+        IntVec callStack = new IntVec();
+        IntVec edge = new IntVec();
+        int counter = 0;
+        for (int root = 0; root < size; root++) {
+            if (index[root] >= 0) continue;
+            callStack.push(root);
+            edge.push(0);
+            index[root] = low[root] = counter++;
+            component.push(root);
+            onStack[root] = true;
+            while (!callStack.isEmpty()) {
+                int lit = callStack.last();
+                int e = edge.pop();
+                if (e < implications[lit].size()) {
+                    edge.push(e + 1);
+                    int next = implications[lit].get(e);
+                    if (index[next] < 0) {
+                        index[next] = low[next] = counter++;
+                        component.push(next);
+                        onStack[next] = true;
+                        callStack.push(next);
+                        edge.push(0);
+                    } else if (onStack[next]) {
+                        low[lit] = Math.min(low[lit], index[next]);
+                    }
+                    continue;
+                }
+                callStack.pop();
+                if (!callStack.isEmpty())
+                    low[callStack.last()] = Math.min(low[callStack.last()], low[lit]);
+                if (low[lit] != index[lit]) continue;
+                // lit is the root of a component: pop it off and pick the
+                // representative; the dual component, of the negations,
+                // gets the negated representative
+                int start = component.size();
+                while (component.get(--start) != lit) {
+                }
+                int best = lit;
+                for (int i = start; i < component.size(); i++) {
+                    int q = component.get(i);
+                    onStack[q] = false;
+                    if (frozen[q >> 1] != frozen[best >> 1] ? frozen[q >> 1] : q >> 1 < best >> 1)
+                        best = q;
+                }
+                for (int i = start; i < component.size(); i++)
+                    representative[component.get(i)] = best;
+                component.shrinkTo(start);
+            }
+        }
+        return representative;
+    }
+
+    /**
+     * Remove duplicate and subsumed clauses, and strengthen clauses by
+     * self-subsuming resolution: when clause C is (l | A) and clause D is
+     * (~l | B) with A a subset of B, the resolvent of C and D on l is D
+     * without ~l, which replaces D. Each clause C, shortest first, is checked
+     * against the clauses in the occurrence lists of its least frequent
+     * variable, skipping any clause whose signature rules out containment.
+     * Passes repeat while clauses keep being strengthened.
+     *
+     * @return number of clauses removed or strengthened
+     */
+    public int removeSubsumed() {
+        int before = duplicateCount + subsumedCount + strengthenedCount;
+        boolean strengthened = true;
+        while (strengthened && !unsat) {
+            strengthened = false;
+            int start = strengthenedCount;
+            for (int ci : bySize()) {
+                if (unsat) break;
+                if (clauses.get(ci) != null) subsumeWith(ci);
+            }
+            propagateUnits();
+            strengthened = strengthenedCount > start;
+        }
+        return duplicateCount + subsumedCount + strengthenedCount - before;
+    }
+
+    /**
+     * @return the indices of the live clauses, shortest first
+     */
+    private Integer[] bySize() {
+        ArrayList<Integer> live = new ArrayList<Integer>();
+        for (int i = 0; i < clauses.size(); i++)
+            if (clauses.get(i) != null) live.add(i);
+        Collections.sort(live, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return clauses.get(a).length - clauses.get(b).length;
+            }
+        });
+        return live.toArray(new Integer[live.size()]);
+    }
+
+    /**
+     * Remove the clauses that clause ci subsumes, and strengthen those it
+     * self-subsumes.
+     */
+    private void subsumeWith(int ci) {
+        int[] c = clauses.get(ci);
+        int best = c[0];
+        for (int q : c)
+            if (occurs[q].size() + occurs[q ^ 1].size()
+                    < occurs[best].size() + occurs[best ^ 1].size())
+                best = q;
+        for (int polarity = 0; polarity < 2; polarity++) {
+            IntVec occ = occurrences(best ^ polarity);
+            for (int i = 0; i < occ.size(); i++) {
+                int di = occ.get(i);
+                int[] d = clauses.get(di);
+                if (di == ci || d == null || d.length < c.length) continue;
+                if ((signature[ci] & ~signature[di]) != 0) continue;
+                int flip = subsumes(c, d);
+                if (flip == -1) continue;
+                if (flip == -2) {
+                    if (d.length == c.length) duplicateCount++;
+                    else subsumedCount++;
+                    clauses.set(di, null);
+                } else {
+                    strengthenedCount++;
+                    int[] r = new int[d.length - 1];
+                    int k = 0;
+                    for (int q : d)
+                        if (q != (flip ^ 1)) r[k++] = q;
+                    replaceClause(di, r);
+                    if (unsat) return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return -2 if every literal of c is in d; the literal l of c if every
+     *         literal of c but l is in d, and d contains ~l; otherwise -1
+     */
+    private int subsumes(int[] c, int[] d) {
+        stamp++;
+        for (int q : d)
+            mark[q] = stamp;
+        int flip = -2;
+        for (int q : c) {
+            if (mark[q] == stamp) continue;
+            if (flip == -2 && mark[q ^ 1] == stamp) flip = q;
+            else return -1;
+        }
+        return flip;
+    }
+
+    /**
+     * @return the signature of the clause lits
+     */
+    private static long signature(int[] lits) {
+        long sig = 0;
+        for (int q : lits)
+            sig |= 1L << ((q >> 1) & 63);
+        return sig;
+    }
+
+    /**
+     * Eliminate variables by resolution. A variable v is eliminated by
+     * replacing the clauses that contain v or ~v with all non-trivial
+     * resolvents on v; this is done only if there are at most as many
+     * resolvents, plus the clause growth, as clauses replaced. Variables
+     * with the fewest resolutions are tried first.
+     *
+     * @return number of variables eliminated
+     */
+    public int eliminateVariables() {
+        int before = eliminatedCount;
+        for (int round = 0; round < MAX_ELIMINATION_ROUNDS && !unsat; round++) {
+            int start = eliminatedCount;
+            for (int v : candidates()) {
+                if (unsat) break;
+                if (value[v] == UNDEF && !eliminated[v] && !frozen[v]) tryEliminate(v);
+            }
+            if (eliminatedCount == start) break;
+        }
+        return eliminatedCount - before;
+    }
+
+    /**
+     * @return the variables that could be eliminated, cheapest first
+     */
+    private Integer[] candidates() {
+        final long[] cost = new long[value.length];
+        ArrayList<Integer> vars = new ArrayList<Integer>();
+        for (int v = 0; v < value.length; v++) {
+            if (value[v] != UNDEF || eliminated[v] || frozen[v]) continue;
+            cost[v] = (long) occurrences(2 * v).size() * occurrences(2 * v + 1).size();
+            vars.add(v);
+        }
+        Collections.sort(vars, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return cost[a] < cost[b] ? -1 : cost[a] > cost[b] ? 1 : 0;
+            }
+        });
+        return vars.toArray(new Integer[vars.size()]);
+    }
+
+    private void tryEliminate(int v) {
+        IntVec pos = occurrences(2 * v);
+        IntVec neg = occurrences(2 * v + 1);
+        if ((long) pos.size() * neg.size() > MAX_RESOLUTIONS) return;
+        int limit = pos.size() + neg.size() + clauseGrowth;
+        ArrayList<int[]> resolvents = new ArrayList<int[]>();
+        for (int i = 0; i < pos.size(); i++) {
+            for (int j = 0; j < neg.size(); j++) {
+                int[] r = resolve(clauses.get(pos.get(i)), clauses.get(neg.get(j)), v);
+                if (r == null) continue;
+                if (r.length > MAX_RESOLVENT_LENGTH || resolvents.size() == limit) return;
+                resolvents.add(r);
+            }
+        }
+
+        // save the clauses of the smaller side, each with v's literal first,
+        // then the opposite literal as the default value of v
+        IntVec saved = pos.size() <= neg.size() ? pos : neg;
+        int lit = saved == pos ? 2 * v : 2 * v + 1;
+        for (int i = 0; i < saved.size(); i++) {
+            int[] c = clauses.get(saved.get(i));
+            elimStack.push(lit);
+            for (int q : c)
+                if (q != lit) elimStack.push(q);
+            elimStack.push(c.length);
+        }
+        elimStack.push(lit ^ 1);
+        elimStack.push(1);
+
+        for (int i = 0; i < pos.size(); i++)
+            clauses.set(pos.get(i), null);
+        for (int i = 0; i < neg.size(); i++)
+            clauses.set(neg.get(i), null);
+        occurs[2 * v].clear();
+        occurs[2 * v + 1].clear();
+        eliminated[v] = true;
+        eliminatedCount++;
+        for (int[] r : resolvents)
+            addClause(r);
+        propagateUnits();
+    }
+
+    /**
+     * @return the resolvent of a (containing v) and b (containing ~v) on v,
+     *         or null if it is a tautology
+     */
+    private int[] resolve(int[] a, int[] b, int v) {
+        stamp++;
+        IntVec r = new IntVec(a.length + b.length);
+        for (int q : a) {
+            if (q >> 1 == v) continue;
+            mark[q] = stamp;
+            r.push(q);
+        }
+        for (int q : b) {
+            if (q >> 1 == v || mark[q] == stamp) continue;
+            if (mark[q ^ 1] == stamp) return null;
+            r.push(q);
+        }
+        return r.toArray();
+    }
+
+    /**
+     * @return the indices of the live clauses containing lit; stale entries
+     *         are dropped from occurs[lit] on the way
+     */
+    IntVec occurrences(int lit) {
+        IntVec occ = occurs[lit];
+        int j = 0;
+        for (int i = 0; i < occ.size(); i++) {
+            int ci = occ.get(i);
+            int[] c = clauses.get(ci);
+            if (c != null && contains(c, lit)) occ.set(j++, ci);
+        }
+        occ.shrinkTo(j);
+        return occ;
+    }
+
+    private static boolean contains(int[] c, int lit) {
+        for (int q : c)
+            if (q == lit) return true;
+        return false;
+    }
+
+    /**
+     * Add a clause to the simplified formula, after removing duplicate and
+     * false literals; a clause that is satisfied or a tautology is dropped,
+     * and a unit clause fixes its literal.
+     */
+    void addClause(int[] lits) {
+        if (unsat) return;
+        stamp++;
+        IntVec c = new IntVec(lits.length);
+        for (int q : lits) {
+            byte val = value(q);
+            if (val == TRUE || mark[q ^ 1] == stamp) return;
+            if (val == FALSE || mark[q] == stamp) continue;
+            mark[q] = stamp;
+            c.push(q);
+        }
+        if (c.size() == 0) {
+            unsat = true;
+        } else if (c.size() == 1) {
+            fix(c.get(0));
+        } else {
+            int i = clauses.size();
+            int[] clause = c.toArray();
+            clauses.add(clause);
+            if (i == signature.length) signature = Arrays.copyOf(signature, 2 * i);
+            signature[i] = signature(clause);
+            for (int k = 0; k < c.size(); k++)
+                occurs[c.get(k)].push(i);
+        }
+    }
+
+    /**
+     * Replace clause i with lits, which must be a subset of it.
+     */
+    void replaceClause(int i, int[] lits) {
+        if (lits.length == 0) {
+            unsat = true;
+        } else if (lits.length == 1) {
+            clauses.set(i, null);
+            if (value(lits[0]) == FALSE) unsat = true;
+            else if (value(lits[0]) == UNDEF) fix(lits[0]);
+        } else {
+            clauses.set(i, lits);
+            signature[i] = signature(lits);
+        }
+    }
+
+    /**
+     * Requires: lit is unassigned
+     * Fix lit to true at the top level.
+     */
+    void fix(int lit) {
+        value[lit >> 1] = (byte) ((lit & 1) ^ 1);
+        units.push(lit);
+        fixedCount++;
+    }
+
+    /**
+     * Propagate all fixed literals: remove the clauses they satisfy and
+     * delete their negations from the others.
+     */
+    void propagateUnits() {
+        while (!units.isEmpty() && !unsat) {
+            int p = units.pop();
+            IntVec sat = occurrences(p);
+            for (int i = 0; i < sat.size(); i++)
+                clauses.set(sat.get(i), null);
+            IntVec shrink = occurrences(p ^ 1);
+            for (int i = 0; i < shrink.size() && !unsat; i++) {
+                int ci = shrink.get(i);
+                int[] c = clauses.get(ci);
+                if (c == null) continue;
+                int[] r = new int[c.length - 1];
+                int k = 0;
+                for (int q : c)
+                    if (q != (p ^ 1)) r[k++] = q;
+                replaceClause(ci, r);
+            }
+            occurs[p].clear();
+            occurs[p ^ 1].clear();
+        }
+    }
+
+    /**
+     * @return value of lit at the top level
+     */
+    byte value(int lit) {
+        byte a = value[lit >> 1];
+        if (a == UNDEF) return UNDEF;
+        return (byte) (a ^ (lit & 1));
+    }
+
+    /**
+     * @return the simplified formula, over the same numbered variables as
+     *         the original
+     */
+    public CompiledFormula getCompiledFormula() {
+        ArrayList<int[]> live = new ArrayList<int[]>();
+        if (unsat) {
+            live.add(new int[0]);
+        } else {
+            for (int[] c : clauses)
+                if (c != null) live.add(c);
+            for (int v = 0; v < value.length; v++)
+                if (frozen[v] && value[v] != UNDEF)
+                    live.add(new int[] { CompiledFormula.literal(v, value[v] == FALSE) });
+        }
+        return original.withClauses(live);
+    }
+
+    /**
+     * @return the simplified formula
+     */
+    public Formula getFormula() {
+        return getCompiledFormula().toFormula();
+    }
+
+    /**
+     * @return true if preprocessing has found the formula unsatisfiable
+     */
+    public boolean isUnsatisfiable() {
+        return unsat;
+    }
+
+    /**
+     * @return number of variables fixed at the top level
+     */
+    public int getFixedVariables() {
+        return fixedCount;
+    }
+
+    /**
+     * @return number of variables eliminated by resolution
+     */
+    public int getEliminatedVariables() {
+        return eliminatedCount;
+    }
+
+    /**
+     * @return number of failed literals found by probing
+     */
+    public int getFailedLiterals() {
+        return failedCount;
+    }
+
+    /**
+     * @return number of variables replaced by an equivalent literal
+     */
+    public int getSubstitutedVariables() {
+        return substitutedCount;
+    }
+
+    /**
+     * @return number of clauses removed because they repeated another
+     */
+    public int getDuplicateClauses() {
+        return duplicateCount;
+    }
+
+    /**
+     * @return number of clauses removed because a shorter clause subsumed
+     *         them
+     */
+    public int getSubsumedClauses() {
+        return subsumedCount;
+    }
+
+    /**
+     * @return number of literals removed from clauses by self-subsuming
+     *         resolution
+     */
+    public int getStrengthenedClauses() {
+        return strengthenedCount;
+    }
+
+    /**
+     * @return number of clauses of the simplified formula
+     */
+    public int getNumClauses() {
+        int n = 0;
+        for (int[] c : clauses)
+            if (c != null) n++;
+        return unsat ? 1 : n;
+    }
+
+    /**
+     * Extend a solution of the simplified formula to one of the original.
+     *
+     * @param env
+     *            an environment for which the simplified formula evaluates to
+     *            Bool.TRUE; variables it does not bind are taken as false
+     * @return an environment binding every variable of the original formula,
+     *         for which the original formula evaluates to Bool.TRUE
+     */
+    public Environment extendModel(Environment env) {
+        boolean[] model = new boolean[value.length];
+        for (int v = 0; v < value.length; v++)
+            model[v] = original.getVariable(v).eval(env) == Bool.TRUE;
+        extendModel(model);
+        return original.toEnvironment(model);
+    }
+
+    /**
+     * Extend a solution of the simplified formula, by variable number, to
+     * one of the original, in place.
+     */
+    void extendModel(boolean[] model) {
+        for (int v = 0; v < value.length; v++)
+            if (value[v] != UNDEF) model[v] = value[v] == TRUE;
+        // undo eliminations latest first: a saved clause that is false gets
+        // its first literal made true
+        int i = elimStack.size() - 1;
+        while (i >= 0) {
+            int length = elimStack.get(i);
+            int first = i - length;
+            boolean satisfied = false;
+            for (int k = first; k < i && !satisfied; k++) {
+                int q = elimStack.get(k);
+                satisfied = model[q >> 1] == ((q & 1) == 0);
+            }
+            if (!satisfied) {
+                int q = elimStack.get(first);
+                model[q >> 1] = (q & 1) == 0;
+            }
+            i = first - 1;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package sat;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sat.env.Bool;
+import sat.env.Environment;
+import sat.formula.Clause;
+import sat.formula.Formula;
+import sat.formula.Literal;
+import sat.formula.PosLiteral;
+import sudoku.Sudoku;
+import sudoku.Sudoku.ParseException;
+
+public class PreprocessorTest {
+    Literal a = PosLiteral.make("a");
+    Literal b = PosLiteral.make("b");
+    Literal c = PosLiteral.make("c");
+    Literal d = PosLiteral.make("d");
+    Literal na = a.getNegation();
+    Literal nb = b.getNegation();
+    Literal nc = c.getNegation();
+
+    // make sure assertions are turned on!  
+    // we don't want to run test cases without assertions too.
+    // see the handout to find out how to turn them on.
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false;
+    }
+
+    @Test
+    public void testUnitsArePropagated() {
+    	// a & (~a | b) & (~b | c | d)
+    	Formula f = new Formula(make(a)).addClause(make(na, b)).addClause(make(nb, c, d));
+    	Preprocessor p = new Preprocessor(f);
+    	assertEquals(2, p.getFixedVariables());
+    	assertEquals(1, p.getNumClauses());
+    	Environment e = p.extendModel(SATSolver.solve(p.getFormula()));
+    	assertTrue(SATSolverTest.satisfies(f, e));
+    	assertEquals(Bool.TRUE, b.getVariable().eval(e));
+    }
+
+    @Test
+    public void testEliminateVariable() {
+    	// (a | b) & (~a | c) & (~b | ~c | d): eliminating a leaves (b | c)
+    	Formula f = new Formula(make(a, b)).addClause(make(na, c)).addClause(make(nb, nc, d));
+    	Preprocessor p = new Preprocessor(f);
+    	p.freeze(f.compile().getId(d.getVariable()));
+    	assertTrue(p.eliminateVariables() >= 1);
+    	assertTrue(p.getNumClauses() < 3);
+    	Environment e = p.extendModel(SATSolver.solve(p.getFormula()));
+    	assertTrue(SATSolverTest.satisfies(f, e));
+    }
+
+    @Test
+    public void testSubsumedClausesRemoved() {
+    	// (a | b) & (a | b) & (a | b | c) & (~a | c | d)
+    	Formula f = new Formula(make(a, b)).addClause(make(a, b)).addClause(make(a, b, c))
+    			.addClause(make(na, c, d));
+    	Preprocessor p = new Preprocessor(f);
+    	assertEquals(2, p.removeSubsumed());
+    	assertEquals(1, p.getDuplicateClauses());
+    	assertEquals(1, p.getSubsumedClauses());
+    	assertEquals(2, p.getNumClauses());
+    }
+
+    @Test
+    public void testSelfSubsumingResolution() {
+    	// (a | b) & (~a | b | c): the second strengthens to (b | c)
+    	Formula f = new Formula(make(a, b)).addClause(make(na, b, c));
+    	Preprocessor p = new Preprocessor(f);
+    	assertEquals(1, p.removeSubsumed());
+    	assertEquals(1, p.getStrengthenedClauses());
+    	assertEquals(2, p.getNumClauses());
+    	Environment e = p.extendModel(SATSolver.solve(p.getFormula()));
+    	assertTrue(SATSolverTest.satisfies(f, e));
+    }
+
+    @Test
+    public void testSelfSubsumptionFindsUnits() {
+    	// (a | b) & (a | ~b): strengthening leaves the unit a
+    	Formula f = new Formula(make(a, b)).addClause(make(a, nb));
+    	Preprocessor p = new Preprocessor(f);
+    	p.removeSubsumed();
+    	assertEquals(0, p.getNumClauses());
+    	assertTrue(p.getFixedVariables() >= 1);
+    	Environment e = p.extendModel(SATSolver.solve(p.getFormula()));
+    	assertEquals(Bool.TRUE, a.getVariable().eval(e));
+    }
+
+    @Test
+    public void testFailedLiteralFixed() {
+    	// (~a | b) & (~a | c) & (~b | ~c | d) & (~a | ~d) & (a | b | c): a fails
+    	Formula f = new Formula(make(na, b)).addClause(make(na, c)).addClause(make(nb, nc, d))
+    			.addClause(make(na, d.getNegation())).addClause(make(a, b, c));
+    	Preprocessor p = new Preprocessor(f);
+    	assertTrue(p.probeFailedLiterals() >= 1);
+    	assertTrue(p.getFailedLiterals() >= 1);
+    	Environment e = p.extendModel(SATSolver.solve(p.getFormula()));
+    	assertTrue(SATSolverTest.satisfies(f, e));
+    	assertEquals(Bool.FALSE, a.getVariable().eval(e));
+    }
+
+    @Test
+    public void testEquivalentLiteralsSubstituted() {
+    	// a <-> ~b, b <-> c, and (a | c | d) & (~a | ~c | ~d)
+    	Formula f = new Formula(make(a, b)).addClause(make(na, nb)).addClause(make(nb, c))
+    			.addClause(make(b, nc)).addClause(make(a, c, d)).addClause(make(na, nc, d.getNegation()));
+    	Preprocessor p = new Preprocessor(f);
+    	assertEquals(2, p.substituteEquivalentLiterals());
+    	assertEquals(2, p.getSubstitutedVariables());
+    	Environment e = p.extendModel(SATSolver.solve(p.getFormula()));
+    	assertTrue(SATSolverTest.satisfies(f, e));
+    }
+
+    @Test
+    public void testContradictoryEquivalence() {
+    	// a -> b -> ~a -> ~b -> a
+    	Formula f = new Formula(make(na, b)).addClause(make(nb, na)).addClause(make(a, nb))
+    			.addClause(make(b, a));
+    	Preprocessor p = new Preprocessor(f);
+    	p.substituteEquivalentLiterals();
+    	assertTrue(p.isUnsatisfiable());
+    }
+
+    @Test
+    public void testFrozenVariablesNotSubstituted() {
+    	// a <-> b with b frozen: b stays, a is substituted by it
+    	Formula f = new Formula(make(na, b)).addClause(make(nb, a)).addClause(make(a, c));
+    	Preprocessor p = new Preprocessor(f);
+    	p.freeze(f.compile().getId(b.getVariable()));
+    	assertEquals(1, p.substituteEquivalentLiterals());
+    	assertTrue(p.getFormula().toString().contains("b"));
+    }
+
+    @Test
+    public void testFrozenFixedVariablesKept() {
+    	// a & (~a | b) & (b | c) fixes b, which stays as a unit when frozen
+    	Formula f = new Formula(make(a)).addClause(make(na, b)).addClause(make(b, c));
+    	Preprocessor p = new Preprocessor(f);
+    	assertEquals(2, p.getFixedVariables());
+    	assertEquals(0, p.getCompiledFormula().getNumClauses());
+    	p.freeze(f.compile().getId(b.getVariable()));
+    	assertEquals(new Formula(make(b)).toString(), p.getFormula().toString());
+    }
+
+    @Test
+    public void testUnsatisfiableFound() {
+    	// a & (~a | b) & (~a | ~b)
+    	Formula f = new Formula(make(a)).addClause(make(na, b)).addClause(make(na, nb));
+    	Preprocessor p = new Preprocessor(f);
+    	assertTrue(p.isUnsatisfiable());
+    	assertNull(SATSolver.solve(p.getFormula()));
+    }
+
+    @Test
+    public void testRandomFormulasKeepSatisfiability() {
+    	Random random = new Random(6005);
+    	for (int round = 0; round < 200; round++) {
+    		Formula f = randomFormula(random, 12, 40);
+    		Preprocessor p = new Preprocessor(f);
+    		p.setClauseGrowth(round % 3);
+    		p.preprocess();
+    		Environment simplified = SATSolver.solve(p.getFormula());
+    		Environment direct = SATSolver.solve(f);
+    		assertEquals(direct == null, simplified == null);
+    		if (simplified != null)
+    			assertTrue(SATSolverTest.satisfies(f, p.extendModel(simplified)));
+    	}
+    }
+
+    @Test
+    public void testSudokuWithPreprocessing() throws IOException, ParseException {
+    	Sudoku s = Sudoku.fromFile(3, "samples/sudoku_evil.txt");
+    	Formula f = s.getProblem();
+    	Preprocessor p = new Preprocessor(f);
+    	p.preprocess();
+    	assertTrue(p.getNumClauses() < f.getSize());
+    	SolveResult r = SATSolver.solve(f, new SolverConfig().withPreprocessing(true));
+    	assertTrue(SATSolverTest.satisfies(f, r.getEnvironment()));
+    }
+
+    /**
+     * @return a formula of m clauses of 3 literals over n variables
+     */
+    static Formula randomFormula(Random random, int n, int m) {
+    	Formula f = new Formula();
+    	for (int i = 0; i < m; i++) {
+    		Clause clause = new Clause();
+    		while (clause.size() < 3) {
+    			Literal l = PosLiteral.make("r" + random.nextInt(n));
+    			Clause next = clause.add(random.nextBoolean() ? l : l.getNegation());
+    			if (next != null) clause = next;
+    		}
+    		f = f.addClause(clause);
+    	}
+    	return f;
+    }
+
+    private static Clause make(Literal... e) {
+    	Clause c = new Clause();
+    	for (int i = 0; i < e.length; ++i)
+    		c = c.add(e[i]);
+    	return c;
+    }
+}
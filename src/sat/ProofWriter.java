@@ -0,0 +1,318 @@
+package sat;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A writer of DRAT proofs: the clauses a solver learns and deletes, in the
+ * order it does, ending with the empty clause when it finds the problem
+ * unsatisfiable. A DRAT checker such as drat-trim can then confirm, from
+ * the problem as Dimacs.write writes it and the proof alone, that the
+ * problem indeed has no solution.
+ *
+ * Proofs come in two formats. In TEXT, each added clause is a line of
+ * DIMACS literals ending in 0, and a deleted clause is such a line after
+ * "d ". In BINARY, which is about a third the size, an added clause is the
+ * byte 'a' and a deleted one the byte 'd', followed by each literal as an
+ * unsigned varint, 2(v+1) for variable number v and 2(v+1)+1 for its
+ * negation, and a 0.
+ *
+ * The solver only formats the proof into blocks of memory; a thread of the
+ * writer's own writes the full blocks out, so that the search seldom waits
+ * for the disk. If writing fails, the rest of the proof is dropped and
+ * close() throws the exception.
+ *
+ * Typical use:
+ *     ProofWriter proof = new ProofWriter("puzzle.drat", ProofWriter.Format.BINARY);
+ *     SolveResult result = SATSolver.solve(formula, new SolverConfig().withProof(proof));
+ *     proof.close();
+ *
+ * A ProofWriter is mutable, and is written to by one solve at a time.
+ */
+public final class ProofWriter implements Closeable {
+    /**
+     * Formats of a proof.
+     */
+    public enum Format {
+        TEXT, BINARY
+    }
+
+    // bytes per block, and number of blocks
+    private static final int CHUNK = 1 << 16;
+    private static final int BLOCKS = 4;
+    // the most bytes one literal takes in either format, with its separator
+    private static final int MAX_LITERAL = 12;
+
+    private final Format format;
+    private final OutputStream out;
+    // blocks free to be filled, and full blocks waiting to be written; a
+    // block of length -1 tells the writing thread to finish
+    private final BlockingQueue<Block> free = new ArrayBlockingQueue<Block>(BLOCKS);
+    private final BlockingQueue<Block> full = new ArrayBlockingQueue<Block>(BLOCKS + 1);
+    private final Thread writer;
+    // the block being filled
+    private Block block;
+    private long lemmas;
+    private long deletions;
+    // the first exception of the writing thread
+    private volatile IOException error;
+    private boolean closed;
+    /*
+     * Rep invariant:
+     *     block == null iff closed
+     *     block is in neither free nor full, and is not being written
+     */
+
+    /**
+     * A block of proof bytes, bytes[0..length-1].
+     */
+    private static final class Block {
+        final byte[] bytes = new byte[CHUNK];
+        int length;
+    }
+
+    /**
+     * Create a writer of a proof in format to the file filename.
+     *
+     * @throws IOException
+     *             if the file cannot be created
+     */
+    public ProofWriter(String filename, Format format) throws IOException {
+        this(new FileOutputStream(filename), format);
+    }
+
+    /**
+     * Create a writer of a proof in format to out, which close() closes.
+     */
+    public ProofWriter(OutputStream out, Format format) {
+        this.out = out;
+        this.format = format;
+        block = new Block();
+        for (int i = 1; i < BLOCKS; i++)
+            free.add(new Block());
+        writer = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "proof-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Write out full blocks until told to finish; after an error, keep
+     * taking blocks without writing them, so that the solver never waits.
+     */
+    private void drain() {
+        while (true) {
+            Block b = take(full);
+            if (b.length < 0) return;
+            if (error == null) {
+                try {
+                    out.write(b.bytes, 0, b.length);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+            b.length = 0;
+            put(free, b);
+        }
+    }
+
+    /**
+     * @return the format of the proof
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the number of clauses added to the proof so far
+     */
+    public long getLemmas() {
+        return lemmas;
+    }
+
+    /**
+     * @return the number of clauses deleted in the proof so far
+     */
+    public long getDeletions() {
+        return deletions;
+    }
+
+    /**
+     * Add the clause of lits, which the clauses of the proof so far imply,
+     * to the proof; lits empty ends a proof of unsatisfiability.
+     */
+    void add(int[] lits) {
+        begin(false);
+        for (int lit : lits)
+            literal(lit);
+        end();
+    }
+
+    /**
+     * Delete the clause of lits from the proof.
+     */
+    void delete(int[] lits) {
+        begin(true);
+        for (int lit : lits)
+            literal(lit);
+        end();
+    }
+
+    /**
+     * Start a clause to add or, if deletion, to delete, whose literals are
+     * then given by literal() and which is finished by end(). This spares
+     * the caller from copying a clause out of a ClauseStore.
+     */
+    void begin(boolean deletion) {
+        if (closed) throw new IllegalStateException("proof already closed");
+        room();
+        if (deletion) {
+            deletions++;
+            block.bytes[block.length++] = 'd';
+            if (format == Format.TEXT) block.bytes[block.length++] = ' ';
+        } else {
+            lemmas++;
+            if (format == Format.BINARY) block.bytes[block.length++] = 'a';
+        }
+    }
+
+    /**
+     * Write literal lit of the clause begun.
+     */
+    void literal(int lit) {
+        room();
+        if (format == Format.BINARY) {
+            int n = lit + 2;
+            while ((n & ~0x7f) != 0) {
+                block.bytes[block.length++] = (byte) (n | 0x80);
+                n >>>= 7;
+            }
+            block.bytes[block.length++] = (byte) n;
+        } else {
+            if ((lit & 1) != 0) block.bytes[block.length++] = '-';
+            number((lit >> 1) + 1);
+            block.bytes[block.length++] = ' ';
+        }
+    }
+
+    /**
+     * Finish the clause begun.
+     */
+    void end() {
+        room();
+        if (format == Format.BINARY) {
+            block.bytes[block.length++] = 0;
+        } else {
+            block.bytes[block.length++] = '0';
+            block.bytes[block.length++] = '\n';
+        }
+    }
+
+    /**
+     * Write n > 0 in decimal.
+     */
+    private void number(int n) {
+        byte[] bytes = block.bytes;
+        int start = block.length;
+        int end = start;
+        do {
+            bytes[end++] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while (n > 0);
+        for (int i = start, j = end - 1; i < j; i++, j--) {
+            byte b = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = b;
+        }
+        block.length = end;
+    }
+
+    /**
+     * Make sure the block being filled has room for a literal, handing it
+     * to the writing thread if not.
+     */
+    private void room() {
+        if (block.length + MAX_LITERAL <= CHUNK) return;
+        put(full, block);
+        block = take(free);
+    }
+
+    /**
+     * Write out the rest of the proof and close the stream it is written
+     * to. Closing a closed writer has no effect.
+     *
+     * @throws IOException
+     *             if writing any part of the proof failed
+     */
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        put(full, block);
+        block = null;
+        Block finish = new Block();
+        finish.length = -1;
+        put(full, finish);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        try {
+            out.close();
+        } catch (IOException e) {
+            if (error == null) error = e;
+        }
+        if (error != null) throw error;
+    }
+
+    /**
+     * Put b on queue, waiting for room even if interrupted.
+     */
+    private static void put(BlockingQueue<Block> queue, Block b) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(b);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * @return the head of queue, waiting for one even if interrupted
+     */
+    private static Block take(BlockingQueue<Block> queue) {
+        boolean interrupted = false;
+        Block b;
+        while (true) {
+            try {
+                b = queue.take();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        return b;
+    }
+
+    @Override
+    public String toString() {
+        return "ProofWriter[" + format + ", lemmas=" + lemmas + ", deletions=" + deletions
+                + (closed ? ", closed" : "") + "]";
+    }
+}
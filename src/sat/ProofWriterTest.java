@@ -0,0 +1,193 @@
+package sat;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sat.formula.Clause;
+import sat.formula.CompiledFormula;
+import sat.formula.Formula;
+import sat.formula.Literal;
+import sat.formula.PosLiteral;
+
+public class ProofWriterTest {
+
+    // make sure assertions are turned on!
+    // we don't want to run test cases without assertions too.
+    // see the handout to find out how to turn them on.
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false;
+    }
+
+    @Test
+    public void testFormats() throws IOException {
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	ProofWriter proof = new ProofWriter(out, ProofWriter.Format.TEXT);
+    	proof.add(new int[] { 0, 3 });
+    	proof.delete(new int[] { 0, 3 });
+    	proof.add(new int[] { 2 * 1000 + 1 });
+    	proof.add(new int[0]);
+    	proof.close();
+    	assertEquals("1 -2 0\nd 1 -2 0\n-1001 0\n0\n", out.toString("US-ASCII"));
+    	assertEquals(3, proof.getLemmas());
+    	assertEquals(1, proof.getDeletions());
+
+    	out = new ByteArrayOutputStream();
+    	proof = new ProofWriter(out, ProofWriter.Format.BINARY);
+    	proof.add(new int[] { 0, 3 });
+    	proof.delete(new int[] { 0, 3 });
+    	proof.add(new int[] { 2 * 1000 + 1 });
+    	proof.add(new int[0]);
+    	proof.close();
+    	// 2003 is the varint 0xd3 0x0f
+    	assertArrayEquals(new byte[] { 'a', 2, 5, 0, 'd', 2, 5, 0, 'a', (byte) 0xd3, 0x0f, 0, 'a', 0 },
+    			out.toByteArray());
+    	proof.close();
+
+    	// many blocks come out whole and in order
+    	out = new ByteArrayOutputStream();
+    	proof = new ProofWriter(out, ProofWriter.Format.TEXT);
+    	StringBuilder expected = new StringBuilder();
+    	for (int i = 0; i < 100000; i++) {
+    		proof.add(new int[] { 2 * i, 2 * i + 3 });
+    		expected.append(i + 1).append(" -").append(i + 2).append(" 0\n");
+    	}
+    	proof.close();
+    	assertEquals(expected.toString(), out.toString("US-ASCII"));
+    }
+
+    @Test
+    public void testWriteError() {
+    	ProofWriter proof = new ProofWriter(new OutputStream() {
+    		@Override
+    		public void write(int b) throws IOException {
+    			throw new IOException("disk full");
+    		}
+    	}, ProofWriter.Format.BINARY);
+    	// the solver is never held up by the failure
+    	for (int i = 0; i < 100000; i++)
+    		proof.add(new int[] { 2 * i, 2 * i + 3 });
+    	try {
+    		proof.close();
+    		fail("lost the error");
+    	} catch (IOException e) {
+    		assertEquals("disk full", e.getMessage());
+    	}
+    }
+
+    @Test
+    public void testPigeonholeProofs() throws IOException {
+    	for (ProofWriter.Format format : ProofWriter.Format.values()) {
+    		for (int n = 2; n <= 7; n++) {
+    			CompiledFormula f = SATSolverTest.pigeonhole(n, n - 1).compile();
+    			// a tiny budget makes the solver evict, and delete, clauses
+    			byte[] proof = prove(f, new SolverConfig().withLearnedClauseBudget(0), format);
+    			assertTrue(format + " " + n, new DratChecker(f).check(proof, format));
+    		}
+    	}
+    }
+
+    @Test
+    public void testRandomProofs() throws IOException {
+    	Random random = new Random(6005);
+    	int refuted = 0;
+    	for (int round = 0; round < 30; round++) {
+    		Literal[] vars = new Literal[40];
+    		for (int v = 0; v < vars.length; v++)
+    			vars[v] = PosLiteral.make("v" + v);
+    		Formula f = new Formula();
+    		for (int i = 0; i < 200; i++) {
+    			Clause c = new Clause();
+    			for (int k = 0; k < 3 && c != null; k++) {
+    				Literal l = vars[random.nextInt(vars.length)];
+    				c = c.add(random.nextBoolean() ? l : l.getNegation());
+    			}
+    			if (c != null) f = f.addClause(c);
+    		}
+    		CompiledFormula compiled = f.compile();
+    		ProofWriter.Format format = ProofWriter.Format.values()[round % 2];
+    		ByteArrayOutputStream out = new ByteArrayOutputStream();
+    		ProofWriter proof = new ProofWriter(out, format);
+    		SolveResult result = SATSolver.solve(compiled, new SolverConfig().withProof(proof)
+    				.withPreprocessing(true).withLearnedClauseBudget(round % 3 == 0 ? 0 : 64L << 20));
+    		proof.close();
+    		assertEquals(result.getOutcome() == SolveResult.Outcome.UNSATISFIABLE,
+    				new DratChecker(compiled).check(out.toByteArray(), format));
+    		if (!result.isSatisfiable()) refuted++;
+    	}
+    	assertTrue(refuted > 5);
+    }
+
+    @Test
+    public void testConstraintProofs() throws IOException {
+    	// 5 items in 4 values, as an AllDifferent, and 3 literals of which
+    	// at least two hold, but at most one may
+    	Literal[][] items = new Literal[5][4];
+    	for (int i = 0; i < 5; i++)
+    		for (int k = 0; k < 4; k++)
+    			items[i][k] = PosLiteral.make("p" + i + "_" + k);
+    	CompiledFormula f = new Formula().addAllDifferent(items).compile();
+    	assertTrue(new DratChecker(f).check(prove(f, new SolverConfig(), ProofWriter.Format.BINARY),
+    			ProofWriter.Format.BINARY));
+    	Literal a = PosLiteral.make("a");
+    	Literal b = PosLiteral.make("b");
+    	Literal c = PosLiteral.make("c");
+    	f = new Formula(new Clause(a).add(b)).and(new Formula(new Clause(b).add(c)))
+    			.and(new Formula(new Clause(a).add(c))).addAtMostOne(a, b, c).compile();
+    	assertTrue(new DratChecker(f).check(prove(f, new SolverConfig(), ProofWriter.Format.TEXT),
+    			ProofWriter.Format.TEXT));
+    }
+
+    @Test
+    public void testCheckerRejects() throws IOException {
+    	CompiledFormula f = SATSolverTest.pigeonhole(5, 4).compile();
+    	byte[] proof = prove(f, new SolverConfig(), ProofWriter.Format.TEXT);
+    	DratChecker checker = new DratChecker(f);
+    	String text = new String(proof, "US-ASCII");
+    	assertTrue(text.endsWith("\n0\n"));
+    	// without its empty clause, the proof proves nothing
+    	assertFalse(new DratChecker(f).check(Arrays.copyOf(proof, proof.length - 2), ProofWriter.Format.TEXT));
+    	// the empty clause is not implied by the problem alone
+    	assertFalse(checker.check("0\n".getBytes("US-ASCII"), ProofWriter.Format.TEXT));
+    	// nor is making a pigeon stay out of a hole
+    	int[] pigeon = f.clause(0);
+    	for (int i = 1; pigeon.length < 4; i++)
+    		pigeon = f.clause(i);
+    	String unit = "-" + ((pigeon[0] >> 1) + 1) + " 0\n";
+    	assertFalse(new DratChecker(f).check((unit + text).getBytes("US-ASCII"), ProofWriter.Format.TEXT));
+    	// a clause not in the problem cannot be deleted
+    	assertFalse(new DratChecker(f).check(("d" + unit.substring(1) + text).getBytes("US-ASCII"),
+    			ProofWriter.Format.TEXT));
+    	// nor can variables it does not have be used
+    	assertFalse(new DratChecker(f).check(("21 0\n" + text).getBytes("US-ASCII"),
+    			ProofWriter.Format.TEXT));
+    	// but a clause that is implied may come and go
+    	StringBuilder weaker = new StringBuilder();
+    	for (int lit : pigeon)
+    		weaker.append((lit >> 1) + 1).append(' ');
+    	weaker.append("-20 0\n");
+    	assertTrue(new DratChecker(f).check((weaker + "d " + weaker + text).getBytes("US-ASCII"),
+    			ProofWriter.Format.TEXT));
+    }
+
+    /**
+     * @return the proof, in format, of the solve of f configured by config,
+     *         which must find f unsatisfiable
+     */
+    private static byte[] prove(CompiledFormula f, SolverConfig config, ProofWriter.Format format)
+    		throws IOException {
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	ProofWriter proof = new ProofWriter(out, format);
+    	SolveResult result = SATSolver.solve(f, config.withProof(proof));
+    	proof.close();
+    	assertEquals(SolveResult.Outcome.UNSATISFIABLE, result.getOutcome());
+    	return out.toByteArray();
+    }
+}
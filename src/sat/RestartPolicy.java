@@ -0,0 +1,216 @@
+package sat;
+
+/**
+ * A restart policy decides when a CDCLSolver abandons its current decisions
+ * and starts again from decision level 0, keeping everything it has learned.
+ * Restarting lets the solver recover from bad early decisions, and with
+ * phase saving a restart is cheap because the solver steers back towards
+ * the assignment it just left.
+ *
+ * A policy object carries the state of its schedule, so the solver works on
+ * a fresh copy() for every solve; the object held by a SolverConfig is never
+ * advanced. Clients may plug in their own schedule by subclassing.
+ */
+public abstract class RestartPolicy {
+
+    /**
+     * @return a policy of the same kind and parameters, at the start of its
+     *         schedule
+     */
+    public abstract RestartPolicy copy();
+
+    /**
+     * Called by the solver after every conflict.
+     *
+     * @param lbd
+     *            literal block distance of the clause learned from the
+     *            conflict: the number of distinct decision levels among its
+     *            literals
+     * @return true if the solver should restart now
+     */
+    public abstract boolean conflict(int lbd);
+
+    /**
+     * Called by the solver when it has restarted.
+     */
+    public abstract void restarted();
+
+    /**
+     * @return a policy that never restarts
+     */
+    public static RestartPolicy never() {
+        return new Never();
+    }
+
+    /**
+     * @return a policy that restarts after unit * luby(i) conflicts for the
+     *         ith restart, where luby is the sequence 1,1,2,1,1,2,4,1,...
+     *         Requires unit > 0
+     */
+    public static RestartPolicy luby(int unit) {
+        return new Luby(unit);
+    }
+
+    /**
+     * @return a policy that restarts after first conflicts, and then after
+     *         a number of conflicts that grows by factor after every restart.
+     *         Requires first > 0 and factor >= 1
+     */
+    public static RestartPolicy geometric(int first, double factor) {
+        return new Geometric(first, factor);
+    }
+
+    /**
+     * @return a glucose-style dynamic policy, which restarts as soon as the
+     *         average literal block distance of the last window learned
+     *         clauses, scaled by margin, exceeds the average over the whole
+     *         search; that is, when the clauses being learned have become
+     *         markedly worse than usual. Requires window > 0 and 0 < margin <= 1
+     */
+    public static RestartPolicy glucose(int window, double margin) {
+        return new Glucose(window, margin);
+    }
+
+    /**
+     * @return the ith element (from 0) of the Luby sequence 1,1,2,1,1,2,4,...
+     */
+    static long lubySequence(int i) {
+        // find the finite subsequence that contains index i, and its size
+        int size = 1;
+        int seq = 0;
+        while (size < i + 1) {
+            seq++;
+            size = 2 * size + 1;
+        }
+        while (size - 1 != i) {
+            size = (size - 1) >> 1;
+            seq--;
+            i = i % size;
+        }
+        return 1L << seq;
+    }
+
+    private static class Never extends RestartPolicy {
+        public RestartPolicy copy() {
+            return new Never();
+        }
+
+        public boolean conflict(int lbd) {
+            return false;
+        }
+
+        public void restarted() {
+        }
+
+        public String toString() {
+            return "never";
+        }
+    }
+
+    private static class Luby extends RestartPolicy {
+        private final int unit;
+        private int restarts;
+        private long conflicts;
+
+        Luby(int unit) {
+            assert unit > 0 : "RestartPolicy.luby: unit must be positive";
+            this.unit = unit;
+        }
+
+        public RestartPolicy copy() {
+            return new Luby(unit);
+        }
+
+        public boolean conflict(int lbd) {
+            return ++conflicts >= unit * lubySequence(restarts);
+        }
+
+        public void restarted() {
+            restarts++;
+            conflicts = 0;
+        }
+
+        public String toString() {
+            return "luby(" + unit + ")";
+        }
+    }
+
+    private static class Geometric extends RestartPolicy {
+        private final int first;
+        private final double factor;
+        private double limit;
+        private long conflicts;
+
+        Geometric(int first, double factor) {
+            assert first > 0 && factor >= 1 : "RestartPolicy.geometric: bad parameters";
+            this.first = first;
+            this.factor = factor;
+            limit = first;
+        }
+
+        public RestartPolicy copy() {
+            return new Geometric(first, factor);
+        }
+
+        public boolean conflict(int lbd) {
+            return ++conflicts >= limit;
+        }
+
+        public void restarted() {
+            limit *= factor;
+            conflicts = 0;
+        }
+
+        public String toString() {
+            return "geometric(" + first + "," + factor + ")";
+        }
+    }
+
+    private static class Glucose extends RestartPolicy {
+        private final int window;
+        private final double margin;
+        // the LBDs of the last window conflicts, as a ring buffer
+        private final int[] recent;
+        private int recentCount;
+        private int recentNext;
+        private long recentSum;
+        // sum of the LBDs of all conflicts
+        private long totalSum;
+        private long conflicts;
+
+        Glucose(int window, double margin) {
+            assert window > 0 && margin > 0 && margin <= 1 : "RestartPolicy.glucose: bad parameters";
+            this.window = window;
+            this.margin = margin;
+            recent = new int[window];
+        }
+
+        public RestartPolicy copy() {
+            return new Glucose(window, margin);
+        }
+
+        public boolean conflict(int lbd) {
+            conflicts++;
+            totalSum += lbd;
+            if (recentCount == window) recentSum -= recent[recentNext];
+            else recentCount++;
+            recent[recentNext] = lbd;
+            recentSum += lbd;
+            recentNext = (recentNext + 1) % window;
+            if (recentCount < window) return false;
+            return (double) recentSum / window * margin > (double) totalSum / conflicts;
+        }
+
+        public void restarted() {
+            // start a fresh window so that the next restart waits for
+            // window new conflicts
+            recentCount = 0;
+            recentNext = 0;
+            recentSum = 0;
+        }
+
+        public String toString() {
+            return "glucose(" + window + "," + margin + ")";
+        }
+    }
+}
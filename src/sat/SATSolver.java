@@ -1,36 +1,427 @@
 package sat;
 
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+
 import immutable.EmptyImList;
 import immutable.ImList;
 import sat.env.Bool;
 import sat.env.Environment;
 import sat.env.Variable;
 import sat.formula.Clause;
+import sat.formula.CompiledFormula;
 import sat.formula.Formula;
 import sat.formula.Literal;
 import sat.formula.NegLiteral;
 import sat.formula.PosLiteral;
 
 /**
- * A simple DPLL SAT solver. See http://en.wikipedia.org/wiki/DPLL_algorithm
+ * A SAT solver. By default the problem is solved by conflict-driven clause
+ * learning over two watched literals per clause; the simple DPLL search
+ * (see http://en.wikipedia.org/wiki/DPLL_algorithm) can be selected instead,
+ * see Algorithm.
  */
 public class SATSolver {
     /**
-     * Solve the problem using a simple version of DPLL with backtracking and
-     * unit propagation. The returned environment binds literals of class
-     * bool.Variable rather than the special literals used in clausification of
-     * class clausal.Literal, so that clients can more readily use it.
+     * Search algorithms that solve(Formula, Algorithm) can run.
+     */
+    public enum Algorithm {
+        /** DPLL with unit propagation and chronological backtracking */
+        DPLL,
+        /** conflict-driven clause learning with non-chronological backjumping */
+        CDCL,
+        /** DPLL with the FALSE branch of each large split forked as a task */
+        PARALLEL_DPLL
+    }
+
+    // splits of problems with more clauses than this fork their FALSE branch,
+    // in the PARALLEL_DPLL search
+    static final int FORK_THRESHOLD = 500;
+
+    /**
+     * Solve the problem using conflict-driven clause learning. The returned
+     * environment binds literals of class bool.Variable rather than the
+     * special literals used in clausification of class clausal.Literal, so
+     * that clients can more readily use it.
      * 
      * @return an environment for which the problem evaluates to Bool.TRUE, or
      *         null if no such environment exists.
      */
     public static Environment solve(Formula formula) {
-    	return solve(formula.getClauses(), new Environment());
+    	return solve(formula, Algorithm.CDCL);
+    }
+
+    /**
+     * Solve the problem with the given search algorithm. Every algorithm
+     * returns environments that bind variables of class sat.env.Variable.
+     * DPLL and PARALLEL_DPLL search AtMostOne and AllDifferent constraints
+     * as their clauses.
+     * 
+     * @return an environment for which the problem evaluates to Bool.TRUE, or
+     *         null if no such environment exists.
+     */
+    public static Environment solve(Formula formula, Algorithm algorithm) {
+    	switch (algorithm) {
+    	case DPLL:
+    		return solve(formula.expandConstraints().getClauses(), new Environment());
+    	case PARALLEL_DPLL:
+    		return solveParallelDPLL(formula, FORK_THRESHOLD);
+    	default:
+    		return solve(formula.compile());
+    	}
+    }
+
+    /**
+     * Solve a compiled problem using conflict-driven clause learning. The
+     * solver reads the flat clause arrays of the compiled problem directly.
+     * 
+     * @return an environment binding the variables of the problem for which
+     *         it evaluates to Bool.TRUE, or null if no such environment
+     *         exists.
+     */
+    public static Environment solve(CompiledFormula formula) {
+    	return new CDCLSolver(formula, new SolverConfig()).solve();
+    }
+
+    /**
+     * Solve the problem using conflict-driven clause learning configured by
+     * config, for instance to choose its restart policy or to limit the
+     * search. A search that reaches a limit of config, or whose cancellation
+     * token is cancelled, gives up with the outcome UNKNOWN.
+     * 
+     * @return the outcome, the satisfying environment, if any, and the
+     *         statistics of the search, with the time taken by each phase
+     *         of the solve
+     */
+    public static SolveResult solve(Formula formula, SolverConfig config) {
+    	long started = System.nanoTime();
+    	CompiledFormula compiled = formula.compile();
+    	long encoded = System.nanoTime();
+    	SolveResult result = solve(compiled, config);
+    	result.getStats().encodeNanos = encoded - started;
+    	return result;
+    }
+
+    /**
+     * Solve a compiled problem using conflict-driven clause learning
+     * configured by config. If the configuration asks for preprocessing, the
+     * problem is simplified first and the solution extended back. If it
+     * holds a ProofWriter, the search writes a DRAT proof to it, which for
+     * the outcome UNSATISFIABLE ends in the empty clause; the proof is of
+     * the problem as Dimacs.write writes it, and the problem is then not
+     * preprocessed.
+     * 
+     * @return the satisfying environment, if any, and the statistics of the
+     *         search
+     */
+    public static SolveResult solve(CompiledFormula formula, SolverConfig config) {
+    	return solve(formula, config, null);
     }
 
     /**
-     * Takes a partial assignment of variables to values, and recursively
-     * searches for a complete satisfying assignment.
+     * Solve a compiled problem using conflict-driven clause learning
+     * configured by config, with propagator, if not null, connected to the
+     * search to add reasoning of its own; see ExternalPropagator. If the
+     * configuration asks for preprocessing, the variables the propagator
+     * observes are kept out of its reach.
+     * 
+     * @return an environment for which the problem evaluates to Bool.TRUE
+     *         and whose complete assignment propagator accepted, if any, and
+     *         the statistics of the search
+     */
+    public static SolveResult solve(CompiledFormula formula, SolverConfig config,
+    		ExternalPropagator propagator) {
+    	long started = System.nanoTime();
+    	Preprocessor preprocessor = null;
+    	if (config.isPreprocessing() && config.getProof() == null) {
+    		preprocessor = new Preprocessor(formula);
+    		if (propagator != null)
+    			for (int v = 0; v < formula.getNumVariables(); v++)
+    				if (propagator.observes(v)) preprocessor.freeze(v);
+    		preprocessor.preprocess();
+    	}
+    	long preprocessed = System.nanoTime();
+    	CDCLSolver solver = new CDCLSolver(preprocessor == null ? formula
+    			: preprocessor.getCompiledFormula(), config);
+    	SolverStats stats = solver.getStats();
+    	if (preprocessor != null) stats.preprocessNanos = preprocessed - started;
+    	if (propagator != null) solver.connect(propagator);
+    	boolean[] model = solver.solveModel();
+    	if (model == null) return new SolveResult(solver.isStopped() ? SolveResult.Outcome.UNKNOWN
+    			: SolveResult.Outcome.UNSATISFIABLE, null, stats);
+    	long decoding = System.nanoTime();
+    	if (preprocessor != null) preprocessor.extendModel(model);
+    	Environment env = formula.toEnvironment(model);
+    	stats.decodeNanos = System.nanoTime() - decoding;
+    	return new SolveResult(env, stats);
+    }
+
+    /**
+     * Solve the problem by DPLL on all available processors. The search is
+     * that of solve(Formula, Algorithm.DPLL), except that a split of a
+     * problem that still has more than threshold clauses forks its FALSE
+     * branch as a task of a work-stealing ForkJoinPool, for an idle thread to
+     * take, while the TRUE branch goes on in the current thread; smaller
+     * splits are searched sequentially. The first solution found cancels
+     * the outstanding tasks. Which of several solutions is returned may
+     * vary from run to run.
+     * 
+     * Requires threshold >= 0
+     * @return an environment for which the problem evaluates to Bool.TRUE, or
+     *         null if no such environment exists.
+     */
+    public static Environment solveParallelDPLL(Formula formula, int threshold) {
+    	AtomicReference<Environment> solution = new AtomicReference<Environment>();
+    	ForkJoinPool pool = new ForkJoinPool();
+    	try {
+    		pool.invoke(new DPLLTask(formula.expandConstraints().getClauses(), new Environment(),
+    				threshold, solution));
+    	} finally {
+    		pool.shutdown();
+    	}
+    	return solution.get();
+    }
+
+    /**
+     * Solve the problem with a portfolio of conflict-driven clause learning
+     * solvers, one per available processor, that race each other and share
+     * short learned clauses. Like solve(Formula), but usually faster on a
+     * machine with many cores.
+     * 
+     * @return an environment for which the problem evaluates to Bool.TRUE, or
+     *         null if no such environment exists.
+     */
+    public static Environment solveParallel(Formula formula) {
+    	return solveParallel(formula, new SolverConfig(),
+    			Runtime.getRuntime().availableProcessors()).getEnvironment();
+    }
+
+    /**
+     * Solve the problem with a portfolio of threads solvers: the first runs
+     * with config, and the others with variations of it in restart policy,
+     * phase saving and random seed. The first solver to finish wins and the
+     * others are stopped; a solver that gives up on a limit of its
+     * configuration does not win, and the outcome is UNKNOWN only if all of
+     * them give up. If config asks for preprocessing, the problem is
+     * simplified once, before the race. No proof is written.
+     * 
+     * Requires threads > 0
+     * @return the satisfying environment, if any, and the statistics of the
+     *         winning solver
+     */
+    public static SolveResult solveParallel(Formula formula, SolverConfig config, int threads) {
+    	long started = System.nanoTime();
+    	CompiledFormula compiled = formula.compile();
+    	long encoded = System.nanoTime();
+    	Preprocessor preprocessor = preprocessor(compiled, config);
+    	long preprocessed = System.nanoTime();
+    	SolveResult result = Portfolio.solve(preprocessor == null ? compiled
+    			: preprocessor.getCompiledFormula(), Portfolio.configs(config.withProof(null), threads));
+    	result.getStats().encodeNanos = encoded - started;
+    	if (preprocessor != null) result.getStats().preprocessNanos = preprocessed - encoded;
+    	return extend(preprocessor, result);
+    }
+
+    /**
+     * Solve the problem by cube-and-conquer on all available processors,
+     * splitting it into up to about a thousand cubes. Like solve(Formula),
+     * but meant for large problems such as 16x16 or 25x25 Sudoku.
+     * 
+     * @return an environment for which the problem evaluates to Bool.TRUE, or
+     *         null if no such environment exists.
+     */
+    public static Environment solveCubes(Formula formula) {
+    	return solveCubes(formula, new SolverConfig(), CubeAndConquer.DEFAULT_DEPTH).getEnvironment();
+    }
+
+    /**
+     * Solve the problem by cube-and-conquer: a lookahead splits it into
+     * cubes of at most depth decisions each, so up to 2^depth of them, and
+     * solvers configured by config solve the cubes in parallel on a
+     * work-stealing ForkJoinPool, stopping as soon as one cube has a
+     * solution. The limits of config bound the solve of each cube, except
+     * that the time limit and the cancellation token bound them all
+     * together: cubes not yet started when either runs out are skipped, and
+     * the outcome is UNKNOWN unless some cube has a solution. If config asks
+     * for preprocessing, the problem is simplified once, before it is split.
+     * No proof is written.
+     * 
+     * Requires depth >= 0
+     * @return the satisfying environment, if any, and the statistics of all
+     *         the solvers together, including the time taken by each cube
+     */
+    public static SolveResult solveCubes(Formula formula, SolverConfig config, int depth) {
+    	long started = System.nanoTime();
+    	CompiledFormula compiled = formula.compile();
+    	long encoded = System.nanoTime();
+    	Preprocessor preprocessor = preprocessor(compiled, config);
+    	long preprocessed = System.nanoTime();
+    	ForkJoinPool pool = new ForkJoinPool();
+    	try {
+    		SolveResult result = CubeAndConquer.solve(preprocessor == null ? compiled
+    				: preprocessor.getCompiledFormula(), config.withProof(null), depth, pool);
+    		result.getStats().encodeNanos = encoded - started;
+    		if (preprocessor != null) result.getStats().preprocessNanos = preprocessed - encoded;
+    		return extend(preprocessor, result);
+    	} finally {
+    		pool.shutdown();
+    	}
+    }
+
+    /**
+     * Look for a solution of the problem by stochastic local search alone,
+     * which is often far faster than a complete search on problems with
+     * many solutions, but can never show that there is none; see
+     * LocalSearch. The search draws its choices from the seed of config,
+     * so that the same seed gives the same answer, and is bounded by
+     * maxFlips, the time limit of config and its cancellation token; the
+     * other settings of config do not apply.
+     * 
+     * Requires maxFlips >= 0
+     * @return the satisfying environment and the outcome SATISFIABLE if
+     *         the search found one, otherwise the outcome UNKNOWN, and the
+     *         statistics of the search
+     */
+    public static SolveResult solveLocal(Formula formula, SolverConfig config, long maxFlips) {
+    	long started = System.nanoTime();
+    	CompiledFormula compiled = formula.compile();
+    	long encoded = System.nanoTime();
+    	SolverStats stats = new SolverStats();
+    	stats.encodeNanos = encoded - started;
+    	long deadline = config.getTimeLimit() == Long.MAX_VALUE ? Long.MAX_VALUE
+    			: encoded + Math.min(config.getTimeLimit(), Long.MAX_VALUE / 4000000) * 1000000;
+    	LocalSearch walk = new LocalSearch(compiled, config.getSeed());
+    	boolean[] model = walk.search(maxFlips, deadline, config.getCancellation());
+    	long searched = System.nanoTime();
+    	stats.flips = walk.getFlips();
+    	stats.searchNanos = searched - encoded;
+    	if (model == null) return new SolveResult(SolveResult.Outcome.UNKNOWN, null, stats);
+    	Environment env = compiled.toEnvironment(model);
+    	stats.decodeNanos = System.nanoTime() - searched;
+    	return new SolveResult(env, stats);
+    }
+
+    /**
+     * Count the solutions of the problem, up to limit.
+     *
+     * Requires limit >= 0
+     * @return the number of environments binding exactly the variables of
+     *         the problem for which it evaluates to Bool.TRUE, or limit if
+     *         there are at least that many
+     */
+    public static long countSolutions(Formula formula, long limit) {
+    	CompiledFormula compiled = formula.compile();
+    	Variable[] all = new Variable[compiled.getNumVariables()];
+    	for (int v = 0; v < all.length; v++)
+    		all[v] = compiled.getVariable(v);
+    	return countSolutions(compiled, all, limit);
+    }
+
+    /**
+     * Count the solutions of the problem projected onto the variables of
+     * projection, up to limit: two solutions that differ only in other
+     * variables count once. A variable of projection that the problem does
+     * not mention may take either value, and so doubles the count.
+     *
+     * A single solver finds the solutions one after another. Each one found
+     * is blocked by a clause over the variables of projection only, which
+     * any solution with other values for them satisfies, and the solver
+     * goes on from there, keeping its learned clauses, activities and
+     * saved phases, rather than solving again from scratch. Counting stops
+     * as soon as limit is reached, so that limit 2 tells whether a solution
+     * is unique at the cost of at most two solves; see isUnique.
+     *
+     * Requires limit >= 0
+     * @return the number of assignments to the variables of projection
+     *         that extend to a solution of the problem, or limit if there
+     *         are at least that many
+     */
+    public static long countSolutions(Formula formula, Variable[] projection, long limit) {
+    	return countSolutions(formula.compile(), projection, limit);
+    }
+
+    /**
+     * Requires limit >= 0
+     * @return countSolutions(formula, projection, limit) of the problem
+     *         compiled
+     */
+    private static long countSolutions(CompiledFormula compiled, Variable[] projection, long limit) {
+    	CDCLSolver solver = new CDCLSolver(compiled, new SolverConfig());
+    	// the numbers of the variables of projection in the problem, and
+    	// the solutions each projected solution stands for
+    	boolean[] projected = new boolean[compiled.getNumVariables()];
+    	IntVec vars = new IntVec();
+    	long multiplicity = 1;
+    	HashSet<Variable> free = new HashSet<Variable>();
+    	for (Variable var : projection) {
+    		int v = compiled.getId(var);
+    		if (v < 0) {
+    			if (free.add(var)) multiplicity = multiplicity > limit / 2 ? limit : 2 * multiplicity;
+    		} else if (!projected[v]) {
+    			projected[v] = true;
+    			vars.push(v);
+    		}
+    	}
+    	long count = 0;
+    	while (count < limit) {
+    		boolean[] model = solver.solveModel();
+    		if (model == null) break;
+    		count = count > limit - multiplicity ? limit : count + multiplicity;
+    		// a clause that the projection of model, and only it, falsifies
+    		int[] blocking = new int[vars.size()];
+    		for (int k = 0; k < blocking.length; k++) {
+    			int v = vars.get(k);
+    			blocking[k] = CompiledFormula.literal(v, model[v]);
+    		}
+    		solver.addClause(blocking);
+    	}
+    	return Math.min(count, limit);
+    }
+
+    /**
+     * @return true iff the problem has exactly one solution projected onto
+     *         the variables of projection, as countSolutions(formula,
+     *         projection, 2) == 1 tells, stopping at the second solution
+     */
+    public static boolean isUnique(Formula formula, Variable[] projection) {
+    	return countSolutions(formula, projection, 2) == 1;
+    }
+
+    /**
+     * @return a preprocessor that has simplified formula if config asks for
+     *         preprocessing, otherwise null
+     */
+    private static Preprocessor preprocessor(CompiledFormula formula, SolverConfig config) {
+    	if (!config.isPreprocessing()) return null;
+    	Preprocessor preprocessor = new Preprocessor(formula);
+    	preprocessor.preprocess();
+    	return preprocessor;
+    }
+
+    /**
+     * @return result, with its solution of the formula simplified by
+     *         preprocessor, if not null, extended to the original formula
+     */
+    private static SolveResult extend(Preprocessor preprocessor, SolveResult result) {
+    	if (preprocessor == null || !result.isSatisfiable()) return result;
+    	long decoding = System.nanoTime();
+    	Environment env = preprocessor.extendModel(result.getEnvironment());
+    	result.getStats().decodeNanos += System.nanoTime() - decoding;
+    	return new SolveResult(env, result.getStats());
+    }
+
+    /**
+     * Takes a partial assignment of variables to values, and searches for a
+     * complete satisfying assignment.
+     * 
+     * The search is the classic recursive DPLL, run as a loop so that its
+     * depth is not limited by the thread's stack: unit propagation just
+     * continues the loop, and each split pushes a Decision recording the
+     * clauses and environment it started from. On reaching an empty clause
+     * the most recent Decision is popped and its FALSE branch taken, which
+     * visits the branches in exactly the order of the recursive version.
      * 
      * @param clauses
      *            formula in conjunctive normal form
@@ -41,26 +432,146 @@ public class SATSolver {
      *         or null if no such environment exists.
      */
     private static Environment solve(ImList<Clause> clauses, Environment env) {
-    	if(clauses.isEmpty()) return env;
-    	Clause min = null;
-    	for(Clause c : clauses){
-    		if(c.isEmpty()) return null;
-    		if (min == null || c.size() < min.size()) min = c;
+    	// decisions whose FALSE branch is still to be tried, latest first
+    	ImList<Decision> trail = new EmptyImList<Decision>();
+    	while (true) {
+	    	if(clauses.isEmpty()) return env;
+	    	Clause min = null;
+	    	for(Clause c : clauses){
+	    		if(c.isEmpty()) {
+	    			min = c;
+	    			break;
+	    		}
+	    		if (min == null || c.size() < min.size()) min = c;
+	    	}
+	    	if (min.isEmpty()) { // conflict, so backtrack to the latest split
+	    		if (trail.isEmpty()) return null;
+	    		Decision d = trail.first();
+	    		trail = trail.rest();
+	    		clauses = reduceClauses(d.clauses, d.literal.getNegation());
+	    		env = d.env.put(d.literal.getVariable(), Bool.FALSE);
+	    		continue;
+	    	}
+	    	Literal l = min.chooseLiteral();
+	    	Variable v = l.getVariable();
+	    	if (min.isUnit()) { // a unit clause was found, so propagate
+	    		env = env.put(v, l instanceof PosLiteral ? Bool.TRUE : Bool.FALSE);
+	    		clauses = reduceClauses(clauses, l);
+	    		continue;
+			} // else split
+			if (l instanceof NegLiteral) 
+				l = l.getNegation(); 
+			trail = trail.add(new Decision(clauses, env, l));
+			clauses = reduceClauses(clauses, l);
+			env = env.put(v, Bool.TRUE);
+    	}
+    }
+
+    /**
+     * A subtree of the parallel DPLL search: the loop of solve(ImList,
+     * Environment), except that while the clauses are more than threshold,
+     * a split forks its FALSE branch as a new task instead of recording a
+     * Decision. Since clauses only ever shrink along a branch, all the forks
+     * of a task come before its first Decision, and the forks are joined,
+     * latest first, once the Decisions are exhausted.
+     * 
+     * A task that finds a solution stores it in solution, which every task
+     * checks at each step so as to give up once it is set, and cancels the
+     * forks it has not yet joined.
+     */
+    private static class DPLLTask extends RecursiveTask<Environment> {
+    	private static final long serialVersionUID = 1L;
+    	private final ImList<Clause> clauses;
+    	private final Environment env;
+    	private final int threshold;
+    	private final AtomicReference<Environment> solution;
+
+    	DPLLTask(ImList<Clause> clauses, Environment env, int threshold,
+    			AtomicReference<Environment> solution) {
+    		this.clauses = clauses;
+    		this.env = env;
+    		this.threshold = threshold;
+    		this.solution = solution;
+    	}
+
+    	@Override
+    	protected Environment compute() {
+    		ImList<Clause> clauses = this.clauses;
+    		Environment env = this.env;
+	    	ImList<Decision> trail = new EmptyImList<Decision>();
+	    	// FALSE branches forked off and not yet joined, latest first
+	    	ImList<DPLLTask> forks = new EmptyImList<DPLLTask>();
+	    	while (solution.get() == null) {
+		    	if (clauses.isEmpty()) {
+		    		solution.compareAndSet(null, env);
+		    		break;
+		    	}
+		    	Clause min = null;
+		    	int count = 0;
+		    	for (Clause c : clauses) {
+		    		count++;
+		    		if (c.isEmpty()) {
+		    			min = c;
+		    			break;
+		    		}
+		    		if (min == null || c.size() < min.size()) min = c;
+		    	}
+		    	if (min.isEmpty()) { // conflict, so backtrack to the latest split
+		    		if (trail.isEmpty()) {
+		    			// this subtree is done: the forks are all that is left
+		    			while (!forks.isEmpty() && solution.get() == null) {
+		    				forks.first().join();
+		    				forks = forks.rest();
+		    			}
+		    			break;
+		    		}
+		    		Decision d = trail.first();
+		    		trail = trail.rest();
+		    		clauses = reduceClauses(d.clauses, d.literal.getNegation());
+		    		env = d.env.put(d.literal.getVariable(), Bool.FALSE);
+		    		continue;
+		    	}
+		    	Literal l = min.chooseLiteral();
+		    	Variable v = l.getVariable();
+		    	if (min.isUnit()) { // a unit clause was found, so propagate
+		    		env = env.put(v, l instanceof PosLiteral ? Bool.TRUE : Bool.FALSE);
+		    		clauses = reduceClauses(clauses, l);
+		    		continue;
+		    	} // else split
+		    	if (l instanceof NegLiteral)
+		    		l = l.getNegation();
+		    	if (count > threshold) {
+		    		DPLLTask fork = new DPLLTask(reduceClauses(clauses, l.getNegation()),
+		    				env.put(v, Bool.FALSE), threshold, solution);
+		    		fork.fork();
+		    		forks = forks.add(fork);
+		    	} else {
+		    		trail = trail.add(new Decision(clauses, env, l));
+		    	}
+		    	clauses = reduceClauses(clauses, l);
+		    	env = env.put(v, Bool.TRUE);
+	    	}
+	    	for (DPLLTask fork : forks)
+	    		fork.cancel(false);
+	    	return solution.get();
+    	}
+    }
+
+    /**
+     * A split of the DPLL search whose TRUE branch is being explored: the
+     * clauses and environment before the split, and the positive literal
+     * that was set.
+     */
+    private static class Decision {
+    	final ImList<Clause> clauses;
+    	final Environment env;
+    	final Literal literal;
+
+    	Decision(ImList<Clause> clauses, Environment env, Literal literal) {
+    		this.clauses = clauses;
+    		this.env = env;
+    		this.literal = literal;
     	}
-    	Literal l = min.chooseLiteral();
-    	Variable v = l.getVariable();
-    	if (min.isUnit()) { // a unit clause was found, so propagate
-    		env = env.put(v, l instanceof PosLiteral ? Bool.TRUE : Bool.FALSE);
-    		return solve(reduceClauses (clauses,l), env); 
-		} // else split
-    		
-    		
-		if (l instanceof NegLiteral) 
-			l = l.getNegation(); 
-		Environment solvePos = solve (reduceClauses (clauses,l), env.put(v, Bool.TRUE));
-		if (solvePos == null)
-			return solve (reduceClauses (clauses,l.getNegation()), env.put(v, Bool.FALSE));
-		else return solvePos;
     }
     
     /**
@@ -3,10 +3,19 @@ package sat;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
+import sat.SATSolver.Algorithm;
+import sat.env.Bool;
 import sat.env.Environment;
+import sat.env.Variable;
+import sat.formula.Clause;
+import sat.formula.CompiledFormula;
+import sat.formula.Formula;
 import sat.formula.Literal;
 import sat.formula.PosLiteral;
 import sudoku.Sudoku;
@@ -99,4 +108,681 @@ public class SATSolverTest {
     }
 
     
-}
\ No newline at end of file
+    @Test
+    public void testCDCLSatisfiable() {
+    	// (a | b) & (~a | c) & (~b | ~c) & (~c | a)
+    	Formula f = new Formula(make(a, b)).addClause(make(na, c))
+    			.addClause(make(nb, nc)).addClause(make(nc, a));
+    	Environment e = SATSolver.solve(f, Algorithm.CDCL);
+    	assertNotNull(e);
+    	assertTrue(satisfies(f, e));
+    }
+
+    @Test
+    public void testCDCLUnsatisfiable() {
+    	// (a | b) & (a | ~b) & (~a | c) & (~a | ~c)
+    	Formula f = new Formula(make(a, b)).addClause(make(a, nb))
+    			.addClause(make(na, c)).addClause(make(na, nc));
+    	assertNull(SATSolver.solve(f, Algorithm.CDCL));
+    	assertNull(SATSolver.solve(new Formula(new Clause()), Algorithm.CDCL));
+    }
+
+    @Test
+    public void testSolveCompiled() {
+    	Formula f = pigeonhole(4, 4);
+    	CompiledFormula compiled = f.compile();
+    	assertTrue(satisfies(f, SATSolver.solve(compiled)));
+    	assertFalse(SATSolver.solve(pigeonhole(5, 4).compile(), new SolverConfig()).isSatisfiable());
+    }
+
+    @Test
+    public void testCDCLPigeonhole() {
+    	// 4 pigeons in 3 holes needs learning and backjumping to refute
+    	assertNull(SATSolver.solve(pigeonhole(4, 3), Algorithm.CDCL));
+    	assertNull(SATSolver.solve(pigeonhole(6, 5)));
+    	Formula f = pigeonhole(3, 3);
+    	Environment e = SATSolver.solve(f, Algorithm.CDCL);
+    	assertNotNull(e);
+    	assertTrue(satisfies(f, e));
+    }
+
+    @Test
+    public void testDefaultSolverMatchesDPLL() {
+    	Sudoku s = new Sudoku(2, new int[][] {{-1, 1, 2, 3}, {2, 3, 0, -1}, {1, 0, 3, -1}, {-1, 2, 1, 0}});
+    	Formula f = s.getProblem();
+    	Environment e = SATSolver.solve(f);
+    	assertTrue(satisfies(f, e));
+    	assertEquals(s.interpretSolution(SATSolver.solve(f, Algorithm.DPLL)).toString(),
+    			s.interpretSolution(e).toString());
+    }
+
+    @Test
+    public void testCDCLSudoku() throws IOException, ParseException {
+    	Sudoku s = Sudoku.fromFile(3, "samples/sudoku_evil.txt");
+    	Formula f = s.getProblem();
+    	Environment e = SATSolver.solve(f, Algorithm.CDCL);
+    	assertNotNull(e);
+    	assertTrue(satisfies(f, e));
+    	assertFalse(s.interpretSolution(e).toString().contains("."));
+    }
+
+    @Test
+    public void testLubySequence() {
+    	long[] expected = {1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, 1};
+    	for (int i = 0; i < expected.length; i++)
+    		assertEquals(expected[i], RestartPolicy.lubySequence(i));
+    }
+
+    @Test
+    public void testRestartPolicies() {
+    	RestartPolicy[] policies = {RestartPolicy.never(), RestartPolicy.luby(1),
+    			RestartPolicy.geometric(2, 1.5), RestartPolicy.glucose(3, 1.0)};
+    	Formula unsat = pigeonhole(6, 5);
+    	Formula sat = pigeonhole(5, 5);
+    	for (RestartPolicy p : policies) {
+    		SolverConfig config = new SolverConfig().withRestartPolicy(p);
+    		SolveResult r = SATSolver.solve(unsat, config);
+    		assertFalse(r.isSatisfiable());
+    		assertEquals(p.toString(), r.getStats().getRestartPolicy());
+    		assertTrue(r.getStats().getConflicts() > 0);
+    		if (p.toString().equals("never"))
+    			assertEquals(0, r.getStats().getRestarts());
+    		else
+    			assertTrue(r.getStats().getRestarts() > 0);
+    		r = SATSolver.solve(sat, config.withPhaseSaving(false));
+    		assertTrue(satisfies(sat, r.getEnvironment()));
+    	}
+    }
+
+    @Test
+    public void testLearnedClauseReduction() {
+    	SolverConfig config = new SolverConfig().withLearnedClauseBudget(2048);
+    	SolveResult r = SATSolver.solve(pigeonhole(7, 6), config);
+    	assertFalse(r.isSatisfiable());
+    	assertFalse(r.getStats().getReductions().isEmpty());
+    	assertTrue(r.getStats().getEvicted() > 0);
+    	for (SolverStats.Reduction red : r.getStats().getReductions())
+    		assertTrue(red.getKept() + red.getEvicted() > 0);
+
+    	Formula f = pigeonhole(7, 7);
+    	r = SATSolver.solve(f, config.withRestartPolicy(RestartPolicy.luby(2)));
+    	assertTrue(satisfies(f, r.getEnvironment()));
+    }
+
+    @Test
+    public void testDPLLDeepPropagationOnSmallStack() throws InterruptedException {
+    	// x0 & (x0 => x1) & ... & (x999 => x1000) forces 1001 propagations
+    	int n = 1000;
+    	Formula chain = new Formula(PosLiteral.make("x0").getVariable());
+    	for (int i = 0; i < n; i++)
+    		chain = chain.addClause(make(PosLiteral.make("x" + i).getNegation(),
+    				PosLiteral.make("x" + (i + 1))));
+    	final Formula f = chain;
+    	final Environment[] result = new Environment[1];
+    	final Throwable[] failure = new Throwable[1];
+    	Thread t = new Thread(null, new Runnable() {
+    		public void run() {
+    			try {
+    				result[0] = SATSolver.solve(f, Algorithm.DPLL);
+    			} catch (Throwable e) {
+    				failure[0] = e;
+    			}
+    		}
+    	}, "small-stack", 128 * 1024);
+    	t.start();
+    	t.join();
+    	assertNull(failure[0]);
+    	assertTrue(satisfies(f, result[0]));
+    	assertEquals(Bool.TRUE, PosLiteral.make("x" + n).getVariable().eval(result[0]));
+    }
+
+    @Test
+    public void testOffHeapClauses() throws IOException, ParseException {
+    	SolverConfig config = new SolverConfig().withOffHeapClauses(true);
+    	Sudoku s = Sudoku.fromFile(3, "samples/sudoku_hard.txt");
+    	Formula f = s.getProblem();
+    	assertTrue(satisfies(f, SATSolver.solve(f, config).getEnvironment()));
+    	// a tiny budget makes the arena remove and reuse clauses
+    	SolveResult r = SATSolver.solve(pigeonhole(7, 6), config.withLearnedClauseBudget(2048));
+    	assertFalse(r.isSatisfiable());
+    	assertTrue(r.getStats().getEvicted() > 0);
+    }
+
+    @Test
+    public void testSolveParallel() throws IOException, ParseException {
+    	Sudoku s = Sudoku.fromFile(3, "samples/sudoku_evil.txt");
+    	Formula f = s.getProblem();
+    	assertTrue(satisfies(f, SATSolver.solveParallel(f)));
+    	SolveResult r = SATSolver.solveParallel(pigeonhole(7, 6), new SolverConfig(), 4);
+    	assertFalse(r.isSatisfiable());
+    	assertTrue(r.getStats().getExportedClauses() > 0);
+    	SolveResult p = SATSolver.solveParallel(f, new SolverConfig().withPreprocessing(true), 3);
+    	assertTrue(satisfies(f, p.getEnvironment()));
+    }
+
+    @Test
+    public void testSolveCubes() throws IOException, ParseException {
+    	Formula f = Sudoku.fromFile(3, "samples/sudoku_evil.txt").getProblem();
+    	assertTrue(satisfies(f, SATSolver.solveCubes(f)));
+    	SolveResult r = SATSolver.solveCubes(pigeonhole(7, 6), new SolverConfig(), 4);
+    	assertFalse(r.isSatisfiable());
+    	assertTrue(r.getStats().getCubes().size() > 1);
+    	for (SolverStats.Cube cube : r.getStats().getCubes()) {
+    		assertFalse(cube.isSatisfiable());
+    		assertFalse(cube.isStopped());
+    		assertTrue(cube.getLiterals() >= 1);
+    	}
+    	// depth 0 leaves the whole problem to a single cube
+    	assertEquals(1, SATSolver.solveCubes(pigeonhole(6, 5), new SolverConfig(), 0)
+    			.getStats().getCubes().size());
+    }
+
+    @Test
+    public void testParallelDPLL() {
+    	assertNull(SATSolver.solve(pigeonhole(5, 4), SATSolver.Algorithm.PARALLEL_DPLL));
+    	Formula f = new Sudoku(2).getProblem();
+    	assertTrue(satisfies(f, SATSolver.solve(f, SATSolver.Algorithm.PARALLEL_DPLL)));
+    	// with threshold 0 every split forks
+    	Random random = new Random(6005);
+    	for (int round = 0; round < 50; round++) {
+    		Formula g = PreprocessorTest.randomFormula(random, 12, 45);
+    		Environment e = SATSolver.solveParallelDPLL(g, 0);
+    		assertEquals(SATSolver.solve(g, SATSolver.Algorithm.DPLL) == null, e == null);
+    		if (e != null) assertTrue(satisfies(g, e));
+    	}
+    }
+
+    @Test
+    public void testSeededSolvers() {
+    	Formula f = pigeonhole(6, 6);
+    	for (long seed = 1; seed <= 5; seed++)
+    		assertTrue(satisfies(f, SATSolver.solve(f, new SolverConfig().withSeed(seed)).getEnvironment()));
+    	assertFalse(SATSolver.solve(pigeonhole(6, 5), new SolverConfig().withSeed(7)).isSatisfiable());
+    }
+
+    @Test
+    public void testAtMostOneConstraints() throws IOException, ParseException {
+    	Sudoku s = Sudoku.fromFile(3, "samples/sudoku_evil.txt");
+    	Formula compact = s.getCompactProblem();
+    	assertTrue(compact.getSize() < s.getProblem().getSize() / 10);
+    	for (boolean preprocessing : new boolean[] { false, true }) {
+    		Environment e = SATSolver.solve(compact, new SolverConfig().withPreprocessing(preprocessing))
+    				.getEnvironment();
+    		assertTrue(satisfies(s.getProblem(), e));
+    		assertFalse(s.interpretSolution(e).toString().contains("."));
+    	}
+    	assertTrue(satisfies(compact, SATSolver.solveCubes(compact)));
+    	assertTrue(satisfies(compact, SATSolver.solve(compact, Algorithm.DPLL)));
+
+    	// pigeonhole with the holes as constraints
+    	for (int p = 3; p <= 7; p++) {
+    		Formula f = new Formula();
+    		for (int i = 0; i < p; i++) {
+    			Clause some = new Clause();
+    			for (int j = 0; j < p - 1; j++)
+    				some = some.add(PosLiteral.make("p" + i + "h" + j));
+    			f = f.addClause(some);
+    		}
+    		for (int j = 0; j < p - 1; j++) {
+    			Literal[] hole = new Literal[p];
+    			for (int i = 0; i < p; i++)
+    				hole[i] = PosLiteral.make("p" + i + "h" + j);
+    			f = f.addAtMostOne(hole);
+    		}
+    		assertFalse(SATSolver.solve(f, new SolverConfig().withPreprocessing(false)).isSatisfiable());
+    	}
+
+    	// random constraints, some with a literal twice or with its negation
+    	Random random = new Random(6005);
+    	for (int round = 0; round < 200; round++) {
+    		Formula f = PreprocessorTest.randomFormula(random, 10, 20);
+    		for (int k = 0; k < 4; k++) {
+    			Literal[] lits = new Literal[2 + random.nextInt(4)];
+    			for (int i = 0; i < lits.length; i++) {
+    				Literal l = PosLiteral.make("r" + random.nextInt(10));
+    				lits[i] = random.nextBoolean() ? l : l.getNegation();
+    			}
+    			f = f.addAtMostOne(lits);
+    		}
+    		boolean sat = SATSolver.solve(f, Algorithm.DPLL) != null;
+    		SolveResult result = SATSolver.solve(f, new SolverConfig().withPreprocessing(false));
+    		assertEquals(sat, result.isSatisfiable());
+    		if (sat) assertTrue(satisfies(f, result.getEnvironment()));
+    	}
+    }
+
+    @Test
+    public void testAllDifferentConstraints() throws IOException, ParseException {
+    	// filtering finds the hidden and naked subsets that clauses miss
+    	long clauseDecisions = 0;
+    	long globalDecisions = 0;
+    	for (String name : new String[] { "hard", "evil" }) {
+    		Sudoku s = Sudoku.fromFile(3, "samples/sudoku_" + name + ".txt");
+    		clauseDecisions += SATSolver.solve(s.getProblem(), new SolverConfig()).getStats().getDecisions();
+    		Formula global = s.getGlobalProblem();
+    		SolveResult result = SATSolver.solve(global, new SolverConfig());
+    		globalDecisions += result.getStats().getDecisions();
+    		assertTrue(satisfies(s.getProblem(), result.getEnvironment()));
+    		assertTrue(satisfies(global, result.getEnvironment()));
+    	}
+    	assertTrue(globalDecisions < clauseDecisions);
+
+    	// pigeonhole as a single constraint: refuted at level 0
+    	Literal[][] holes = new Literal[6][5];
+    	for (int i = 0; i < 6; i++)
+    		for (int j = 0; j < 5; j++)
+    			holes[i][j] = PosLiteral.make("p" + i + "h" + j);
+    	SolveResult php = SATSolver.solve(new Formula().addAllDifferent(holes), new SolverConfig());
+    	assertFalse(php.isSatisfiable());
+    	assertEquals(0, php.getStats().getDecisions());
+
+    	// random constraints over shared, sometimes negated, literals
+    	Random random = new Random(6005);
+    	for (int round = 0; round < 300; round++) {
+    		Formula f = PreprocessorTest.randomFormula(random, 12, random.nextInt(30));
+    		for (int c = 0; c < 2; c++) {
+    			int items = 1 + random.nextInt(4);
+    			Literal[][] table = new Literal[items][items + random.nextInt(2)];
+    			for (int i = 0; i < table.length; i++)
+    				for (int k = 0; k < table[i].length; k++) {
+    					Literal l = PosLiteral.make("r" + random.nextInt(12));
+    					table[i][k] = random.nextInt(5) == 0 ? l.getNegation() : l;
+    				}
+    			f = f.addAllDifferent(table);
+    		}
+    		boolean sat = SATSolver.solve(f, Algorithm.DPLL) != null;
+    		SolveResult result = SATSolver.solve(f, new SolverConfig().withRestartPolicy(RestartPolicy.luby(2)));
+    		assertEquals(sat, result.isSatisfiable());
+    		if (sat) assertTrue(satisfies(f, result.getEnvironment()));
+    	}
+    }
+
+    @Test
+    public void testExternalPropagator() throws IOException, ParseException {
+    	// at most two of r0..r4, told to the solver eagerly or only by
+    	// rejecting models, must agree with the same constraint as clauses
+    	Random random = new Random(6006);
+    	for (int round = 0; round < 300; round++) {
+    		// so that r0..r4 all occur, some of them are true
+    		Formula f = PreprocessorTest.randomFormula(random, 10, random.nextInt(40)).addClause(
+    				make(PosLiteral.make("r0"), PosLiteral.make("r1"), PosLiteral.make("r2"),
+    						PosLiteral.make("r3"), PosLiteral.make("r4")));
+    		Formula clauses = f;
+    		for (int i = 0; i < 5; i++)
+    			for (int j = i + 1; j < 5; j++)
+    				for (int k = j + 1; k < 5; k++)
+    					clauses = clauses.addClause(make(PosLiteral.make("r" + i).getNegation(),
+    							PosLiteral.make("r" + j).getNegation(), PosLiteral.make("r" + k).getNegation()));
+    		boolean sat = SATSolver.solve(clauses, Algorithm.DPLL) != null;
+    		CompiledFormula compiled = CompiledFormula.compile(f);
+    		SolverConfig config = new SolverConfig().withRestartPolicy(RestartPolicy.luby(2))
+    				.withPreprocessing(round % 3 == 0);
+    		for (boolean eager : new boolean[] { true, false }) {
+    			SolveResult result = SATSolver.solve(compiled, config, new AtMostTwo(compiled, eager));
+    			assertEquals(sat, result.isSatisfiable());
+    			if (sat) assertTrue(satisfies(clauses, result.getEnvironment()));
+    		}
+    	}
+
+    	// the Sudoku propagator on the clause encoding
+    	for (String name : new String[] { "hard", "evil" }) {
+    		Sudoku s = Sudoku.fromFile(3, "samples/sudoku_" + name + ".txt");
+    		CompiledFormula compiled = CompiledFormula.compile(s.getProblem());
+    		for (boolean preprocessing : new boolean[] { false, true }) {
+    			SolveResult result = SATSolver.solve(compiled, new SolverConfig().withPreprocessing(preprocessing),
+    					s.propagator(compiled));
+    			assertTrue(satisfies(s.getProblem(), result.getEnvironment()));
+    		}
+    	}
+    	// with the first symbol kept out of the lower two rows of the first
+    	// block, it points along the top row: the propagator rules it out of
+    	// the other 6 entries of that row, which unit propagation through
+    	// the clauses cannot
+    	Sudoku empty = new Sudoku(3);
+    	Formula pointing = empty.getProblem();
+    	for (int i = 1; i < 3; i++)
+    		for (int j = 0; j < 3; j++)
+    			pointing = pointing.addClause(make(PosLiteral.make("occupies(" + i + "," + j + ",0)").getNegation()));
+    	CompiledFormula compiled = CompiledFormula.compile(pointing);
+    	Counting propagator = new Counting(empty.propagator(compiled));
+    	SolveResult result = SATSolver.solve(compiled, new SolverConfig(), propagator);
+    	assertTrue(satisfies(pointing, result.getEnvironment()));
+    	assertTrue(propagator.implied >= 6);
+    	assertTrue(propagator.rootImplied >= 6);
+    }
+
+    /**
+     * Passes everything on to another propagator, counting the literals it
+     * implies.
+     */
+    private static class Counting implements ExternalPropagator {
+    	private final ExternalPropagator inner;
+    	// the literals implied in all, and before the first decision
+    	int implied;
+    	int rootImplied;
+    	private boolean decided;
+
+    	Counting(ExternalPropagator inner) {
+    		this.inner = inner;
+    	}
+
+    	public boolean observes(int v) {
+    		return inner.observes(v);
+    	}
+
+    	public void notifyAssignment(int lit) {
+    		inner.notifyAssignment(lit);
+    	}
+
+    	public void notifyNewDecisionLevel() {
+    		decided = true;
+    		inner.notifyNewDecisionLevel();
+    	}
+
+    	public void notifyBacktrack(int level) {
+    		inner.notifyBacktrack(level);
+    	}
+
+    	public int propagate() {
+    		int lit = inner.propagate();
+    		if (lit >= 0) {
+    			implied++;
+    			if (!decided) rootImplied++;
+    		}
+    		return lit;
+    	}
+
+    	public int[] reason(int lit) {
+    		return inner.reason(lit);
+    	}
+
+    	public int[] checkModel(boolean[] model) {
+    		return inner.checkModel(model);
+    	}
+    }
+
+    /**
+     * At most two of the variables r0..r4 are true: if two are, the others
+     * are implied false, and, if not eager, only models are checked.
+     */
+    private static class AtMostTwo implements ExternalPropagator {
+    	private final boolean eager;
+    	// watched[v] if variable number v is one of r0..r4
+    	private final boolean[] watched;
+    	// value[v] is 1 if v is true, -1 if false, 0 if unassigned
+    	private final int[] value;
+    	private final List<Integer> trail = new ArrayList<Integer>();
+    	private final List<Integer> levels = new ArrayList<Integer>();
+    	// where propagate() goes on looking, until the next notification
+    	private int next;
+    	private final int[][] reasons;
+
+    	AtMostTwo(CompiledFormula formula, boolean eager) {
+    		this.eager = eager;
+    		watched = new boolean[formula.getNumVariables()];
+    		for (int i = 0; i < 5; i++) {
+    			int v = formula.getId(new Variable("r" + i));
+    			if (v >= 0) watched[v] = true;
+    		}
+    		value = new int[watched.length];
+    		reasons = new int[watched.length][];
+    	}
+
+    	public boolean observes(int v) {
+    		return watched[v];
+    	}
+
+    	public void notifyAssignment(int lit) {
+    		assert watched[lit >> 1] && value[lit >> 1] == 0;
+    		value[lit >> 1] = CompiledFormula.isNegated(lit) ? -1 : 1;
+    		trail.add(lit >> 1);
+    		next = 0;
+    	}
+
+    	public void notifyNewDecisionLevel() {
+    		levels.add(trail.size());
+    	}
+
+    	public void notifyBacktrack(int level) {
+    		while (trail.size() > levels.get(level))
+    			value[trail.remove(trail.size() - 1)] = 0;
+    		levels.subList(level, levels.size()).clear();
+    		next = 0;
+    	}
+
+    	public int propagate() {
+    		if (!eager) return -1;
+    		int[] trues = trues(value, 1);
+    		if (trues.length < 2) return -1;
+    		for (; next < watched.length; next++) {
+    			int v = next;
+    			if (!watched[v] || v == trues[0] || v == trues[1]) continue;
+    			if (value[v] == -1) continue;
+    			next++;
+    			int lit = CompiledFormula.literal(v, true);
+    			reasons[v] = new int[] { lit, CompiledFormula.literal(trues[0], true),
+    					CompiledFormula.literal(trues[1], true) };
+    			return lit;
+    		}
+    		return -1;
+    	}
+
+    	public int[] reason(int lit) {
+    		return reasons[lit >> 1];
+    	}
+
+    	public int[] checkModel(boolean[] model) {
+    		int[] values = new int[model.length];
+    		for (int v = 0; v < model.length; v++)
+    			values[v] = model[v] ? 1 : -1;
+    		int[] trues = trues(values, 3);
+    		if (trues.length < 3) return null;
+    		int[] clause = new int[3];
+    		for (int n = 0; n < 3; n++)
+    			clause[n] = CompiledFormula.literal(trues[n], true);
+    		return clause;
+    	}
+
+    	/**
+    	 * @return up to limit watched variables true in values
+    	 */
+    	private int[] trues(int[] values, int limit) {
+    		List<Integer> found = new ArrayList<Integer>();
+    		for (int v = 0; v < watched.length && found.size() < limit; v++)
+    			if (watched[v] && values[v] == 1) found.add(v);
+    		int[] result = new int[found.size()];
+    		for (int n = 0; n < result.length; n++)
+    			result[n] = found.get(n);
+    		return result;
+    	}
+    }
+
+    @Test
+    public void testLimits() throws InterruptedException {
+    	// pigeonhole(11, 10) takes resolution far longer than any limit here
+    	Formula hard = pigeonhole(11, 10);
+    	SolveResult result = SATSolver.solve(hard, new SolverConfig().withConflictLimit(100));
+    	assertEquals(SolveResult.Outcome.UNKNOWN, result.getOutcome());
+    	assertNull(result.getEnvironment());
+    	assertEquals(101, result.getStats().getConflicts());
+    	result = SATSolver.solve(hard, new SolverConfig().withDecisionLimit(50));
+    	assertEquals(SolveResult.Outcome.UNKNOWN, result.getOutcome());
+    	assertEquals(51, result.getStats().getDecisions());
+    	result = SATSolver.solve(hard, new SolverConfig().withPropagationLimit(1000));
+    	assertEquals(SolveResult.Outcome.UNKNOWN, result.getOutcome());
+    	assertTrue(result.getStats().getPropagations() > 1000);
+
+    	long started = System.nanoTime();
+    	result = SATSolver.solve(hard, new SolverConfig().withTimeLimit(100));
+    	assertEquals(SolveResult.Outcome.UNKNOWN, result.getOutcome());
+    	assertTrue(System.nanoTime() - started < 5000000000L);
+
+    	// cancelled from another thread while searching
+    	final CancellationToken token = new CancellationToken();
+    	Thread canceller = new Thread() {
+    		@Override
+    		public void run() {
+    			try {
+    				Thread.sleep(100);
+    			} catch (InterruptedException e) {
+    				return;
+    			}
+    			token.cancel();
+    		}
+    	};
+    	canceller.start();
+    	started = System.nanoTime();
+    	result = SATSolver.solve(hard, new SolverConfig().withCancellation(token));
+    	canceller.join();
+    	assertEquals(SolveResult.Outcome.UNKNOWN, result.getOutcome());
+    	assertTrue(System.nanoTime() - started < 5000000000L);
+    	assertEquals(SolveResult.Outcome.UNKNOWN, SATSolver.solveParallel(hard,
+    			new SolverConfig().withCancellation(token), 2).getOutcome());
+    	assertEquals(SolveResult.Outcome.UNKNOWN, SATSolver.solveCubes(hard,
+    			new SolverConfig().withConflictLimit(10), 4).getOutcome());
+
+    	// limits that are not reached leave the answer alone
+    	SolverConfig roomy = new SolverConfig().withConflictLimit(100000).withTimeLimit(60000)
+    			.withCancellation(new CancellationToken());
+    	result = SATSolver.solve(pigeonhole(5, 4), roomy);
+    	assertEquals(SolveResult.Outcome.UNSATISFIABLE, result.getOutcome());
+    	result = SATSolver.solve(pigeonhole(5, 5), roomy);
+    	assertEquals(SolveResult.Outcome.SATISFIABLE, result.getOutcome());
+    	assertTrue(satisfies(pigeonhole(5, 5), result.getEnvironment()));
+    	assertEquals(SolveResult.Outcome.UNSATISFIABLE,
+    			SATSolver.solveParallel(pigeonhole(5, 4), roomy, 2).getOutcome());
+    	assertEquals(SolveResult.Outcome.SATISFIABLE,
+    			SATSolver.solveCubes(pigeonhole(5, 5), roomy, 4).getOutcome());
+    }
+
+    @Test
+    public void testStats() {
+    	SolveResult result = SATSolver.solve(pigeonhole(6, 5), new SolverConfig());
+    	SolverStats stats = result.getStats();
+    	// every conflict above level 0 undoes at least one level and at most
+    	// all of them, the last one is at level 0; some jumps skip levels
+    	assertTrue(stats.getBacktracks() >= stats.getConflicts() - 1);
+    	assertTrue(stats.getBacktracks() <= (stats.getConflicts() - 1) * stats.getMaxDepth());
+    	assertTrue(stats.getBacktracks() > stats.getConflicts() - 1);
+    	assertTrue(stats.getMaxDepth() > 1 && stats.getMaxDepth() <= 30);
+    	assertTrue(stats.getDecisions() >= stats.getMaxDepth());
+    	assertTrue(stats.getClausesVisited() > stats.getConflicts());
+    	assertTrue(stats.getPropagations() > stats.getDecisions());
+    	assertTrue(stats.getEncodeNanos() > 0);
+    	assertEquals(0, stats.getPreprocessNanos());
+    	assertEquals(0, stats.getDecodeNanos());
+
+    	// each phase of a solve that has them all is timed
+    	result = SATSolver.solve(pigeonhole(6, 6), new SolverConfig().withPreprocessing(true));
+    	stats = result.getStats();
+    	assertTrue(result.isSatisfiable());
+    	assertTrue(stats.getEncodeNanos() > 0);
+    	assertTrue(stats.getPreprocessNanos() > 0);
+    	assertTrue(stats.getSearchNanos() > 0);
+    	assertTrue(stats.getDecodeNanos() > 0);
+    	assertEquals(0, SATSolver.solve(pigeonhole(6, 6).compile(), new SolverConfig())
+    			.getStats().getEncodeNanos());
+    	stats = SATSolver.solveCubes(pigeonhole(6, 6), new SolverConfig(), 3).getStats();
+    	assertTrue(stats.getEncodeNanos() > 0 && stats.getDecodeNanos() > 0);
+    }
+
+    @Test
+    public void testCountSolutions() {
+    	// (a | b) has 3 solutions, 2 of them over a alone, and c, which it
+    	// does not mention, doubles them
+    	Formula f = new Formula(make(a, b));
+    	assertEquals(3, SATSolver.countSolutions(f, 10));
+    	assertEquals(2, SATSolver.countSolutions(f, 2));
+    	assertEquals(0, SATSolver.countSolutions(f, 0));
+    	Variable[] onA = { a.getVariable(), a.getVariable() };
+    	assertEquals(2, SATSolver.countSolutions(f, onA, 10));
+    	assertFalse(SATSolver.isUnique(f, onA));
+    	assertTrue(SATSolver.isUnique(f.addClause(make(na)), onA));
+    	assertEquals(6, SATSolver.countSolutions(f, new Variable[] { a.getVariable(),
+    			b.getVariable(), c.getVariable() }, 10));
+    	assertEquals(1, SATSolver.countSolutions(f, new Variable[0], 10));
+    	assertEquals(0, SATSolver.countSolutions(pigeonhole(5, 4), 10));
+    	// 4 pigeons in 4 holes, with the hole of the first pigeon free
+    	assertEquals(24, SATSolver.countSolutions(pigeonhole(4, 4), 100));
+    	assertEquals(4, SATSolver.countSolutions(pigeonhole(4, 4), new Variable[] {
+    			new Variable("p0h0"), new Variable("p0h1"), new Variable("p0h2"), new Variable("p0h3") }, 100));
+    	// as AtMostOne and AllDifferent constraints, the same
+    	Literal[][] pigeons = new Literal[4][4];
+    	for (int i = 0; i < 4; i++)
+    		for (int j = 0; j < 4; j++)
+    			pigeons[i][j] = PosLiteral.make("p" + i + "h" + j);
+    	assertEquals(24, SATSolver.countSolutions(new Formula().addAllDifferent(pigeons), 100));
+
+    	// against all assignments of random problems, in full and projected
+    	Random random = new Random(6005);
+    	for (int round = 0; round < 30; round++) {
+    		Formula g = PreprocessorTest.randomFormula(random, 8, 5 + random.nextInt(25));
+    		CompiledFormula compiled = g.compile();
+    		int n = compiled.getNumVariables();
+    		Variable[] projection = new Variable[3];
+    		for (int k = 0; k < projection.length; k++)
+    			projection[k] = compiled.getVariable(k);
+    		int solutions = 0;
+    		boolean[] projected = new boolean[1 << projection.length];
+    		for (int bits = 0; bits < 1 << n; bits++) {
+    			boolean[] model = new boolean[n];
+    			for (int v = 0; v < n; v++)
+    				model[v] = (bits >> v & 1) != 0;
+    			if (satisfies(g, compiled.toEnvironment(model))) {
+    				solutions++;
+    				projected[bits & (1 << projection.length) - 1] = true;
+    			}
+    		}
+    		int distinct = 0;
+    		for (boolean p : projected)
+    			if (p) distinct++;
+    		assertEquals(solutions, SATSolver.countSolutions(g, 1000));
+    		assertEquals(Math.min(solutions, 5), SATSolver.countSolutions(g, 5));
+    		assertEquals(distinct, SATSolver.countSolutions(g, projection, 1000));
+    	}
+    }
+
+    /**
+     * @return true iff every clause of f has a literal made true by e, and
+     *         so at most one literal of each of its AtMostOne constraints
+     */
+    static boolean satisfies(Formula f, Environment e) {
+    	for (Clause clause : f.expandConstraints().getClauses()) {
+    		boolean sat = false;
+    		for (Literal l : clause) {
+    			Bool v = l.getVariable().eval(e);
+    			if (l instanceof PosLiteral ? v == Bool.TRUE : v == Bool.FALSE)
+    				sat = true;
+    		}
+    		if (!sat) return false;
+    	}
+    	return true;
+    }
+
+    /**
+     * @return the formula stating that p pigeons sit in h holes, at most
+     *         one per hole
+     */
+    static Formula pigeonhole(int p, int h) {
+    	Formula f = new Formula();
+    	for (int i = 0; i < p; i++) {
+    		Clause some = new Clause();
+    		for (int j = 0; j < h; j++)
+    			some = some.add(PosLiteral.make("p" + i + "h" + j));
+    		f = f.addClause(some);
+    	}
+    	for (int j = 0; j < h; j++)
+    		for (int i = 0; i < p; i++)
+    			for (int k = i + 1; k < p; k++)
+    				f = f.addClause(make(PosLiteral.make("p" + i + "h" + j).getNegation(),
+    						PosLiteral.make("p" + k + "h" + j).getNegation()));
+    	return f;
+    }
+
+    private static Clause make(Literal... e) {
+    	Clause c = new Clause();
+    	for (int i = 0; i < e.length; ++i)
+    		c = c.add(e[i]);
+    	return c;
+    }
+}
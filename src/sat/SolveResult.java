@@ -0,0 +1,88 @@
+package sat;
+
+import sat.env.Environment;
+
+/**
+ * The outcome of one solve: the satisfying environment, if any, together
+ * with the statistics of the search that found it.
+ * This datatype is immutable once returned by the solver.
+ */
+public class SolveResult {
+    /**
+     * What a solve found out about the problem.
+     */
+    public enum Outcome {
+        /** the problem has a solution, which the result holds */
+        SATISFIABLE,
+        /** the problem has no solution */
+        UNSATISFIABLE,
+        /**
+         * the solve gave up, because of a limit of its SolverConfig or a
+         * cancellation, before it found either
+         */
+        UNKNOWN
+    }
+
+    private final Outcome outcome;
+    private final Environment environment;
+    private final SolverStats stats;
+    /*
+     * Rep invariant:
+     *     outcome != null, stats != null
+     *     environment != null iff outcome == SATISFIABLE
+     */
+
+    /**
+     * Make the result of a solve that ran to the end: SATISFIABLE with
+     * environment if it is not null, otherwise UNSATISFIABLE.
+     */
+    SolveResult(Environment environment, SolverStats stats) {
+        this(environment == null ? Outcome.UNSATISFIABLE : Outcome.SATISFIABLE, environment, stats);
+    }
+
+    /**
+     * Requires: environment != null iff outcome == SATISFIABLE
+     */
+    SolveResult(Outcome outcome, Environment environment, SolverStats stats) {
+        this.outcome = outcome;
+        this.environment = environment;
+        this.stats = stats;
+    }
+
+    /**
+     * @return what the solve found out: SATISFIABLE, UNSATISFIABLE, or
+     *         UNKNOWN if it gave up
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * @return true if the problem has a satisfying environment
+     */
+    public boolean isSatisfiable() {
+        return environment != null;
+    }
+
+    /**
+     * @return an environment for which the problem evaluates to Bool.TRUE, or
+     *         null if no such environment exists or the solve gave up; see
+     *         getOutcome()
+     */
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * @return the statistics of the search
+     */
+    public SolverStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return "SolveResult[" + (outcome == Outcome.SATISFIABLE ? "SAT"
+                : outcome == Outcome.UNSATISFIABLE ? "UNSAT" : "UNKNOWN") + ", " + stats + "]";
+    }
+}
@@ -0,0 +1,319 @@
+package sat;
+
+/**
+ * Settings of the conflict-driven clause learning solver.
+ *
+ * The limits bound a single solve: once it has met more conflicts, made
+ * more decisions or propagated more literals than allowed, has run past its
+ * time limit, or its CancellationToken is cancelled, the solve gives up with
+ * the outcome SolveResult.Outcome.UNKNOWN. By default there are no limits.
+ *
+ * A configuration may hold a ProofWriter, to which a solve writes a DRAT
+ * proof of its answer when the problem is unsatisfiable.
+ *
+ * This datatype is immutable: each with method returns a new configuration
+ * that differs from this one in a single setting. The CancellationToken and
+ * the ProofWriter it may hold are shared, not copied.
+ */
+public class SolverConfig {
+    private RestartPolicy restartPolicy;
+    private boolean phaseSaving;
+    private long learnedClauseBudget;
+    private boolean offHeapClauses;
+    private boolean preprocessing;
+    private long seed;
+    private long conflictLimit;
+    private long decisionLimit;
+    private long propagationLimit;
+    private long timeLimit;
+    private CancellationToken cancellation;
+    private ProofWriter proof;
+    private long localSearchFlips;
+    /*
+     * Rep invariant:
+     *     restartPolicy != null
+     *     learnedClauseBudget >= 0, localSearchFlips >= 0
+     *     conflictLimit, decisionLimit, propagationLimit, timeLimit >= 0,
+     *         where Long.MAX_VALUE stands for no limit
+     *     fields are only assigned by constructors and with methods on
+     *     a fresh copy, so a SolverConfig never changes once returned
+     */
+
+    /**
+     * Create the default configuration: Luby restarts with a unit of 100
+     * conflicts, phase saving, and learned clauses held to 64MB.
+     */
+    public SolverConfig() {
+        restartPolicy = RestartPolicy.luby(100);
+        phaseSaving = true;
+        learnedClauseBudget = 64L << 20;
+        conflictLimit = Long.MAX_VALUE;
+        decisionLimit = Long.MAX_VALUE;
+        propagationLimit = Long.MAX_VALUE;
+        timeLimit = Long.MAX_VALUE;
+    }
+
+    private SolverConfig(SolverConfig that) {
+        restartPolicy = that.restartPolicy;
+        phaseSaving = that.phaseSaving;
+        learnedClauseBudget = that.learnedClauseBudget;
+        offHeapClauses = that.offHeapClauses;
+        preprocessing = that.preprocessing;
+        seed = that.seed;
+        conflictLimit = that.conflictLimit;
+        decisionLimit = that.decisionLimit;
+        propagationLimit = that.propagationLimit;
+        timeLimit = that.timeLimit;
+        cancellation = that.cancellation;
+        proof = that.proof;
+        localSearchFlips = that.localSearchFlips;
+    }
+
+    /**
+     * @return a configuration like this one, but restarting according to
+     *         policy. Requires policy != null
+     */
+    public SolverConfig withRestartPolicy(RestartPolicy policy) {
+        SolverConfig c = new SolverConfig(this);
+        c.restartPolicy = policy;
+        return c;
+    }
+
+    /**
+     * @return a configuration like this one, but with phase saving turned on
+     *         or off. With phase saving a decision gives a variable the value
+     *         it last had, so that the search resumes near where it was after
+     *         a restart or a backjump; without it a decision always tries
+     *         Bool.TRUE first.
+     */
+    public SolverConfig withPhaseSaving(boolean on) {
+        SolverConfig c = new SolverConfig(this);
+        c.phaseSaving = on;
+        return c;
+    }
+
+    /**
+     * @return a configuration like this one, but holding the estimated size
+     *         of the learned clauses to about bytes; whenever they outgrow
+     *         it, the least useful ones are evicted. Requires bytes >= 0
+     */
+    public SolverConfig withLearnedClauseBudget(long bytes) {
+        SolverConfig c = new SolverConfig(this);
+        c.learnedClauseBudget = bytes;
+        return c;
+    }
+
+    /**
+     * @return a configuration like this one, but keeping the literals of all
+     *         clauses in one contiguous arena outside the Java heap when on
+     *         is true, rather than in an int[] per clause. For problems with
+     *         millions of clauses this keeps them out of the garbage
+     *         collector's way.
+     */
+    public SolverConfig withOffHeapClauses(boolean on) {
+        SolverConfig c = new SolverConfig(this);
+        c.offHeapClauses = on;
+        return c;
+    }
+
+    /**
+     * @return a configuration like this one, but simplifying the formula
+     *         with a Preprocessor before the search when on is true
+     */
+    public SolverConfig withPreprocessing(boolean on) {
+        SolverConfig c = new SolverConfig(this);
+        c.preprocessing = on;
+        return c;
+    }
+
+    /**
+     * @return a configuration like this one, but with a random initial
+     *         branching order and initial phases drawn from seed; seed 0,
+     *         the default, keeps the deterministic order of variable numbers
+     *         with every phase starting at Bool.TRUE. Solvers with different
+     *         seeds explore different parts of the search space, which is
+     *         what a portfolio of them relies on.
+     */
+    public SolverConfig withSeed(long seed) {
+        SolverConfig c = new SolverConfig(this);
+        c.seed = seed;
+        return c;
+    }
+
+    /**
+     * @return a configuration like this one, but giving up a solve after
+     *         more than conflicts conflicts. Requires conflicts >= 0
+     */
+    public SolverConfig withConflictLimit(long conflicts) {
+        SolverConfig c = new SolverConfig(this);
+        c.conflictLimit = conflicts;
+        return c;
+    }
+
+    /**
+     * @return a configuration like this one, but giving up a solve after
+     *         more than decisions branching decisions. Requires
+     *         decisions >= 0
+     */
+    public SolverConfig withDecisionLimit(long decisions) {
+        SolverConfig c = new SolverConfig(this);
+        c.decisionLimit = decisions;
+        return c;
+    }
+
+    /**
+     * @return a configuration like this one, but giving up a solve after
+     *         more than propagations literals were propagated, which is the
+     *         measure of work closest to running time. Requires
+     *         propagations >= 0
+     */
+    public SolverConfig withPropagationLimit(long propagations) {
+        SolverConfig c = new SolverConfig(this);
+        c.propagationLimit = propagations;
+        return c;
+    }
+
+    /**
+     * @return a configuration like this one, but giving up a solve once
+     *         millis milliseconds of wall-clock time have passed since its
+     *         search started. The clock is read only every few hundred
+     *         steps of the search, so a solve may overrun by a little.
+     *         Requires millis >= 0
+     */
+    public SolverConfig withTimeLimit(long millis) {
+        SolverConfig c = new SolverConfig(this);
+        c.timeLimit = millis;
+        return c;
+    }
+
+    /**
+     * @return a configuration like this one, but giving up a solve once
+     *         token is cancelled; null for no token
+     */
+    public SolverConfig withCancellation(CancellationToken token) {
+        SolverConfig c = new SolverConfig(this);
+        c.cancellation = token;
+        return c;
+    }
+
+    /**
+     * @return a configuration like this one, but writing to proof, unless
+     *         it is null, the clauses each solve learns and deletes, and
+     *         the empty clause when it finds the problem unsatisfiable. The
+     *         proof is of the problem with its constraints expanded into
+     *         clauses, as Dimacs.write writes it, so the solver works on
+     *         those clauses instead of propagating the constraints natively,
+     *         and the problem is not preprocessed. Only SATSolver.solve and
+     *         IncrementalSolver write proofs; as a proof is the record of a
+     *         single search, a writer should be used by one solve.
+     */
+    public SolverConfig withProof(ProofWriter proof) {
+        SolverConfig c = new SolverConfig(this);
+        c.proof = proof;
+        return c;
+    }
+
+    /**
+     * @return a configuration like this one, but starting the first solve
+     *         of each solver with a stochastic local search of up to flips
+     *         flips, drawn from the seed: a solution it finds is the answer
+     *         at once, and otherwise the best assignment it met becomes the
+     *         phases of the first decisions, which often puts the complete
+     *         search close to a solution. 0, the default, skips it.
+     *         Requires flips >= 0
+     */
+    public SolverConfig withLocalSearch(long flips) {
+        SolverConfig c = new SolverConfig(this);
+        c.localSearchFlips = flips;
+        return c;
+    }
+
+    public RestartPolicy getRestartPolicy() {
+        return restartPolicy;
+    }
+
+    public boolean isPhaseSaving() {
+        return phaseSaving;
+    }
+
+    public long getLearnedClauseBudget() {
+        return learnedClauseBudget;
+    }
+
+    public boolean isOffHeapClauses() {
+        return offHeapClauses;
+    }
+
+    public boolean isPreprocessing() {
+        return preprocessing;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the most conflicts a solve may meet, or Long.MAX_VALUE
+     */
+    public long getConflictLimit() {
+        return conflictLimit;
+    }
+
+    /**
+     * @return the most decisions a solve may make, or Long.MAX_VALUE
+     */
+    public long getDecisionLimit() {
+        return decisionLimit;
+    }
+
+    /**
+     * @return the most literals a solve may propagate, or Long.MAX_VALUE
+     */
+    public long getPropagationLimit() {
+        return propagationLimit;
+    }
+
+    /**
+     * @return the most milliseconds a solve may search, or Long.MAX_VALUE
+     */
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * @return the token that cancels a solve, or null
+     */
+    public CancellationToken getCancellation() {
+        return cancellation;
+    }
+
+    /**
+     * @return the most flips of the local search that starts a solve, or 0
+     */
+    public long getLocalSearchFlips() {
+        return localSearchFlips;
+    }
+
+    /**
+     * @return the writer of the proof of a solve, or null
+     */
+    public ProofWriter getProof() {
+        return proof;
+    }
+
+    @Override
+    public String toString() {
+        return "SolverConfig[restarts=" + restartPolicy + ", phaseSaving=" + phaseSaving
+                + ", learnedClauseBudget=" + learnedClauseBudget
+                + ", offHeapClauses=" + offHeapClauses
+                + ", preprocessing=" + preprocessing
+                + ", seed=" + seed
+                + (localSearchFlips == 0 ? "" : ", localSearchFlips=" + localSearchFlips)
+                + (conflictLimit == Long.MAX_VALUE ? "" : ", conflictLimit=" + conflictLimit)
+                + (decisionLimit == Long.MAX_VALUE ? "" : ", decisionLimit=" + decisionLimit)
+                + (propagationLimit == Long.MAX_VALUE ? "" : ", propagationLimit=" + propagationLimit)
+                + (timeLimit == Long.MAX_VALUE ? "" : ", timeLimit=" + timeLimit + "ms")
+                + (cancellation == null ? "" : ", cancellation")
+                + (proof == null ? "" : ", proof=" + proof.getFormat()) + "]";
+    }
+}
@@ -0,0 +1,349 @@
+package sat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counters collected by the solver during one solve. The solver updates the
+ * fields directly, so keeping them costs an increment each; clients read
+ * them through the getters once the solve has returned.
+ *
+ * Besides the search, a solve through SATSolver goes through up to three
+ * more phases, each timed on its own: encoding, which compiles a Formula
+ * for the solver; preprocessing; and decoding, which turns the solution
+ * found back into an Environment over the variables of the problem.
+ */
+public class SolverStats {
+    String restartPolicy = "";
+    long decisions;
+    long conflicts;
+    long propagations;
+    long restarts;
+    long flips;
+    long backtracks;
+    int maxDepth;
+    long clausesVisited;
+    long encodeNanos;
+    long preprocessNanos;
+    long searchNanos;
+    long decodeNanos;
+    long exported;
+    long imported;
+    final List<Reduction> reductions = new ArrayList<Reduction>();
+    long cubingNanos;
+    final List<Cube> cubes = new ArrayList<Cube>();
+
+    /**
+     * The outcome of one reduction of the learned clause database.
+     * This datatype is immutable.
+     */
+    public static class Reduction {
+        private final long conflicts;
+        private final int core;
+        private final int mid;
+        private final int local;
+        private final int evicted;
+        private final long bytes;
+
+        Reduction(long conflicts, int core, int mid, int local, int evicted, long bytes) {
+            this.conflicts = conflicts;
+            this.core = core;
+            this.mid = mid;
+            this.local = local;
+            this.evicted = evicted;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return number of conflicts before this reduction
+         */
+        public long getConflicts() {
+            return conflicts;
+        }
+
+        /**
+         * @return number of learned clauses kept
+         */
+        public int getKept() {
+            return core + mid + local;
+        }
+
+        /**
+         * @return number of kept clauses in the core tier
+         */
+        public int getCore() {
+            return core;
+        }
+
+        /**
+         * @return number of kept clauses in the mid tier
+         */
+        public int getMid() {
+            return mid;
+        }
+
+        /**
+         * @return number of kept clauses in the local tier
+         */
+        public int getLocal() {
+            return local;
+        }
+
+        /**
+         * @return number of learned clauses evicted
+         */
+        public int getEvicted() {
+            return evicted;
+        }
+
+        /**
+         * @return estimated bytes taken by the kept clauses
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Reduction[conflicts=" + conflicts + ", kept=" + getKept() + " (core=" + core
+                    + ", mid=" + mid + ", local=" + local + "), evicted=" + evicted
+                    + ", bytes=" + bytes + "]";
+        }
+    }
+
+    /**
+     * The solve of one cube by cube-and-conquer.
+     * This datatype is immutable.
+     */
+    public static class Cube {
+        private final int index;
+        private final int literals;
+        private final long nanos;
+        private final long conflicts;
+        private final boolean satisfiable;
+        private final boolean stopped;
+
+        Cube(int index, int literals, long nanos, long conflicts, boolean satisfiable,
+                boolean stopped) {
+            this.index = index;
+            this.literals = literals;
+            this.nanos = nanos;
+            this.conflicts = conflicts;
+            this.satisfiable = satisfiable;
+            this.stopped = stopped;
+        }
+
+        /**
+         * @return position of the cube in the order the cubes were generated
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return number of literals of the cube
+         */
+        public int getLiterals() {
+            return literals;
+        }
+
+        /**
+         * @return time spent solving the cube, in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return number of conflicts met solving the cube
+         */
+        public long getConflicts() {
+            return conflicts;
+        }
+
+        /**
+         * @return true if the cube had a solution
+         */
+        public boolean isSatisfiable() {
+            return satisfiable;
+        }
+
+        /**
+         * @return true if the solve was cut short because another cube had
+         *         a solution, so that the cube may or may not have one
+         */
+        public boolean isStopped() {
+            return stopped;
+        }
+
+        @Override
+        public String toString() {
+            return "Cube[" + index + ", literals=" + literals + ", conflicts=" + conflicts
+                    + ", time=" + nanos / 1000 + "us"
+                    + (stopped ? ", stopped" : satisfiable ? ", SAT" : ", UNSAT") + "]";
+        }
+    }
+
+    /**
+     * @return description of the restart policy that was used
+     */
+    public String getRestartPolicy() {
+        return restartPolicy;
+    }
+
+    /**
+     * @return number of branching decisions
+     */
+    public long getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * @return number of conflicts, which is the number of clauses learned
+     */
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * @return number of literals propagated
+     */
+    public long getPropagations() {
+        return propagations;
+    }
+
+    /**
+     * @return number of restarts
+     */
+    public long getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * @return number of flips made by local search
+     */
+    public long getFlips() {
+        return flips;
+    }
+
+    /**
+     * @return number of decision levels the search undid in jumping back
+     *         after its conflicts, so that a jump over several levels counts
+     *         each of them, and getBacktracks() / getConflicts() is the
+     *         average length of a jump; restarts are not counted
+     */
+    public long getBacktracks() {
+        return backtracks;
+    }
+
+    /**
+     * @return the highest decision level the search reached
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return number of clauses read by propagation, not counting those it
+     *         could skip because their blocking literal was true
+     */
+    public long getClausesVisited() {
+        return clausesVisited;
+    }
+
+    /**
+     * @return time spent compiling the formula for the solver, in
+     *         nanoseconds, or 0 if the solve was given it compiled
+     */
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    /**
+     * @return time spent preprocessing, in nanoseconds
+     */
+    public long getPreprocessNanos() {
+        return preprocessNanos;
+    }
+
+    /**
+     * @return time spent searching, in nanoseconds
+     */
+    public long getSearchNanos() {
+        return searchNanos;
+    }
+
+    /**
+     * @return time spent turning the solution into an environment of the
+     *         problem, in nanoseconds
+     */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * @return number of learned clauses handed to the other solvers of a
+     *         portfolio
+     */
+    public long getExportedClauses() {
+        return exported;
+    }
+
+    /**
+     * @return number of clauses received from the other solvers of a
+     *         portfolio
+     */
+    public long getImportedClauses() {
+        return imported;
+    }
+
+    /**
+     * @return time spent splitting the problem into cubes, in nanoseconds,
+     *         by cube-and-conquer
+     */
+    public long getCubingNanos() {
+        return cubingNanos;
+    }
+
+    /**
+     * @return the cubes solved by cube-and-conquer, in the order their
+     *         solves finished; empty for other solves
+     */
+    public List<Cube> getCubes() {
+        return Collections.unmodifiableList(cubes);
+    }
+
+    /**
+     * @return the reductions of the learned clause database, in order
+     */
+    public List<Reduction> getReductions() {
+        return Collections.unmodifiableList(reductions);
+    }
+
+    /**
+     * @return total number of learned clauses evicted by reductions
+     */
+    public long getEvicted() {
+        long n = 0;
+        for (Reduction r : reductions)
+            n += r.getEvicted();
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return "SolverStats[restartPolicy=" + restartPolicy + ", decisions=" + decisions
+                + ", conflicts=" + conflicts + ", propagations=" + propagations
+                + ", restarts=" + restarts + (flips == 0 ? "" : ", flips=" + flips)
+                + ", backtracks=" + backtracks
+                + ", maxDepth=" + maxDepth + ", clausesVisited=" + clausesVisited
+                + ", reductions=" + reductions.size() + ", evicted=" + getEvicted()
+                + ", exported=" + exported + ", imported=" + imported
+                + (cubes.isEmpty() ? "" : ", cubes=" + cubes.size())
+                + ", encode=" + encodeNanos / 1000000 + "ms"
+                + ", preprocess=" + preprocessNanos / 1000000 + "ms"
+                + ", search=" + searchNanos / 1000000 + "ms"
+                + ", decode=" + decodeNanos / 1000000 + "ms]";
+    }
+}
@@ -0,0 +1,158 @@
+package sat;
+
+import java.util.Random;
+
+/**
+ * The VSIDS branching order of a CDCLSolver: every variable carries an
+ * activity score that is bumped when the variable takes part in a conflict
+ * and decays exponentially over time, so that the solver branches on the
+ * variables involved in recent conflicts. Unassigned variables are kept in
+ * an indexed binary max-heap on activity, so that picking, reinserting and
+ * bumping a variable each cost O(log n).
+ * This datatype is mutable.
+ */
+final class VarOrder {
+    // activities above this are rescaled to keep doubles finite
+    private static final double RESCALE_LIMIT = 1e100;
+
+    // activity[v] is the score of variable v
+    private final double[] activity;
+    // heap[0..size-1] is a binary max-heap of variables on activity
+    private final int[] heap;
+    private int size;
+    // indices[v] is the position of v in heap, or -1 if v is not in it
+    private final int[] indices;
+    // amount added to the activity of a bumped variable
+    private double increment = 1;
+    // increment is divided by decay after every conflict
+    private final double decay;
+    /*
+     * Rep invariant:
+     *     0 <= size <= heap.length == indices.length == activity.length
+     *     for 0 <= i < size, indices[heap[i]] == i
+     *     for every v not in heap[0..size-1], indices[v] == -1
+     *     for 0 < i < size, activity[heap[(i-1)/2]] >= activity[heap[i]]
+     *     0 < decay <= 1
+     */
+
+    /**
+     * Create an order over variables 0..n-1, all with activity 0 and all in
+     * the heap.
+     */
+    VarOrder(int n, double decay) {
+        activity = new double[n];
+        heap = new int[n];
+        indices = new int[n];
+        this.decay = decay;
+        for (int v = 0; v < n; v++) {
+            heap[v] = v;
+            indices[v] = v;
+        }
+        size = n;
+    }
+
+    /**
+     * @return true if the heap holds no variable
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return true if v is in the heap
+     */
+    boolean contains(int v) {
+        return indices[v] >= 0;
+    }
+
+    /**
+     * @return the activity of v
+     */
+    double activity(int v) {
+        return activity[v];
+    }
+
+    /**
+     * Put v back in the heap, if it is not already there.
+     */
+    void insert(int v) {
+        if (contains(v)) return;
+        indices[v] = size;
+        heap[size++] = v;
+        percolateUp(indices[v]);
+    }
+
+    /**
+     * Requires: the heap is non-empty
+     * @return the variable of highest activity, which is removed from the heap
+     */
+    int removeMax() {
+        int v = heap[0];
+        heap[0] = heap[--size];
+        indices[heap[0]] = 0;
+        indices[v] = -1;
+        if (size > 1) percolateDown(0);
+        return v;
+    }
+
+    /**
+     * Increase the activity of v by the current increment.
+     */
+    void bump(int v) {
+        activity[v] += increment;
+        if (activity[v] > RESCALE_LIMIT) {
+            for (int u = 0; u < activity.length; u++)
+                activity[u] *= 1 / RESCALE_LIMIT;
+            increment *= 1 / RESCALE_LIMIT;
+        }
+        if (contains(v)) percolateUp(indices[v]);
+    }
+
+    /**
+     * Give every variable a random activity, too small to outweigh a single
+     * bump, so that ties between variables no conflict has touched are broken
+     * in a random order rather than by variable number.
+     */
+    void shuffle(Random random) {
+        for (int v = 0; v < activity.length; v++)
+            activity[v] += random.nextDouble() * increment * 1e-3;
+        for (int i = size / 2 - 1; i >= 0; i--)
+            percolateDown(i);
+    }
+
+    /**
+     * Age all activities, by making future bumps count for more.
+     */
+    void decayAll() {
+        increment /= decay;
+    }
+
+    private void percolateUp(int i) {
+        int v = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (activity[heap[parent]] >= activity[v]) break;
+            heap[i] = heap[parent];
+            indices[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        indices[v] = i;
+    }
+
+    private void percolateDown(int i) {
+        int v = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && activity[heap[child + 1]] > activity[heap[child]])
+                child++;
+            if (activity[heap[child]] <= activity[v]) break;
+            heap[i] = heap[child];
+            indices[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = v;
+        indices[v] = i;
+    }
+}
@@ -0,0 +1,63 @@
+package sat;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class VarOrderTest {
+
+    // make sure assertions are turned on!  
+    // we don't want to run test cases without assertions too.
+    // see the handout to find out how to turn them on.
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false;
+    }
+
+    @Test
+    public void testRemoveMaxFollowsActivity() {
+    	VarOrder order = new VarOrder(5, 0.5);
+    	order.bump(3);
+    	order.decayAll();
+    	order.bump(1);
+    	order.bump(1);
+    	order.decayAll();
+    	order.bump(4);
+    	// activities: 1 -> 4, 4 -> 4, 3 -> 1; ties keep heap order
+    	int first = order.removeMax();
+    	int second = order.removeMax();
+    	assertTrue((first == 1 && second == 4) || (first == 4 && second == 1));
+    	assertEquals(3, order.removeMax());
+    	assertFalse(order.contains(3));
+    	order.removeMax();
+    	order.removeMax();
+    	assertTrue(order.isEmpty());
+    }
+
+    @Test
+    public void testInsertAfterRemove() {
+    	VarOrder order = new VarOrder(3, 0.95);
+    	order.bump(2);
+    	assertEquals(2, order.removeMax());
+    	order.bump(0);
+    	order.bump(0);
+    	order.insert(2);
+    	order.insert(2);
+    	assertEquals(0, order.removeMax());
+    	assertEquals(2, order.removeMax());
+    	assertEquals(1, order.removeMax());
+    	assertTrue(order.isEmpty());
+    }
+
+    @Test
+    public void testRescaleKeepsOrder() {
+    	VarOrder order = new VarOrder(2, 0.01);
+    	for (int i = 0; i < 200; i++) {
+    		order.bump(i % 2 == 0 ? 0 : 1);
+    		order.decayAll();
+    	}
+    	// variable 1 was bumped last, with the largest increment
+    	assertEquals(1, order.removeMax());
+    	assertFalse(Double.isInfinite(order.activity(1)));
+    }
+}
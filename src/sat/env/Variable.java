@@ -72,4 +72,9 @@ public class Variable {
         Variable v = (Variable) o;
         return v.name.equals(name); 
     }
+
+    @Override
+    public int hashCode () {
+        return name.hashCode();
+    }
 }
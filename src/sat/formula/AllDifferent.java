@@ -0,0 +1,115 @@
+package sat.formula;
+
+import immutable.EmptyImList;
+import immutable.ImList;
+
+/**
+ * A global constraint that a number of items take different values. It is
+ * stated over a table of literals, one per item and value: literal (i, k)
+ * says that item i takes value k. Every item takes at least one of its
+ * values, and no value is taken by two items.
+ *
+ * In clauses it takes one clause per item and one AtMostOne per value, and
+ * a solver that sees only those misses deductions that need the items
+ * together, such as two items that can only take the same two values,
+ * which no other item may then take. Solvers that know the constraint
+ * natively make all of them.
+ * This datatype is immutable.
+ */
+public class AllDifferent {
+    private final Literal[][] literals;
+    /*
+     * Rep invariant:
+     *     literals is non-null, and so are its rows and their elements
+     *     all rows of literals have the same length
+     *
+     * Abstraction function:
+     *     literals[i][k] says that item i takes value k; represents the
+     *     constraint that for each item i some literals[i][k] is true, and
+     *     for each value k at most one literals[i][k] is true
+     */
+
+    void checkRep() {
+        assert literals != null : "AllDifferent, Rep invariant: literals non-null";
+        for (Literal[] row : literals) {
+            assert row != null && row.length == literals[0].length : "AllDifferent, Rep invariant: rows";
+            for (Literal l : row)
+                assert l != null : "AllDifferent, Rep invariant: no null literals";
+        }
+    }
+
+    /**
+     * Requires: literals and its rows non-null, the rows all of the same
+     * length and without null elements
+     *
+     * @return the constraint that the items, one per row of literals, take
+     *         different values, one per column, where literals[i][k] says
+     *         that item i takes value k
+     */
+    public AllDifferent(Literal[][] literals) {
+        this.literals = new Literal[literals.length][];
+        for (int i = 0; i < literals.length; i++)
+            this.literals[i] = literals[i].clone();
+        checkRep();
+    }
+
+    /**
+     * @return number of items
+     */
+    public int getNumItems() {
+        return literals.length;
+    }
+
+    /**
+     * @return number of values
+     */
+    public int getNumValues() {
+        return literals.length == 0 ? 0 : literals[0].length;
+    }
+
+    /**
+     * Requires: 0 <= i < getNumItems() and 0 <= k < getNumValues()
+     * @return the literal saying that item i takes value k
+     */
+    public Literal get(int i, int k) {
+        return literals[i][k];
+    }
+
+    /**
+     * @return the clauses that together say the same as this: for each item
+     *         the clause of its values, and for each value a clause
+     *         (~a | ~b) for every two of its literals a, b
+     */
+    public ImList<Clause> toClauses() {
+        ImList<Clause> clauses = new EmptyImList<Clause>();
+        for (Literal[] row : literals) {
+            Clause c = new Clause();
+            for (int k = 0; k < row.length && c != null; k++)
+                c = c.add(row[k]);
+            // a clause of a literal and its negation is always true
+            if (c != null) clauses = clauses.add(c);
+        }
+        for (int k = 0; k < getNumValues(); k++)
+            for (int i = 0; i < literals.length; i++)
+                for (int j = i + 1; j < literals.length; j++) {
+                    // the same literal for two items is a unit clause
+                    Clause c = new Clause(literals[i][k].getNegation()).add(literals[j][k].getNegation());
+                    if (c != null) clauses = clauses.add(c);
+                }
+        return clauses;
+    }
+
+    @Override
+    public String toString() {
+        String result = "AllDifferent(";
+        String sep = "";
+        for (Literal[] row : literals) {
+            result += sep + "[";
+            for (int k = 0; k < row.length; k++)
+                result += (k == 0 ? "" : ", ") + row[k];
+            result += "]";
+            sep = ", ";
+        }
+        return result + ")";
+    }
+}
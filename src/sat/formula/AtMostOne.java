@@ -0,0 +1,95 @@
+package sat.formula;
+
+import immutable.EmptyImList;
+import immutable.ImList;
+
+import java.util.Iterator;
+
+/**
+ * A cardinality constraint saying that at most one of a set of literals is
+ * true. In clauses it takes one binary clause (~a | ~b) for every pair a, b
+ * of its literals, which for n literals is n(n-1)/2 clauses; solvers that
+ * know the constraint natively keep just the n literals.
+ * Together with the clause of its literals, it says that exactly one of
+ * them is true.
+ * This datatype is immutable.
+ */
+public class AtMostOne implements Iterable<Literal> {
+    private final ImList<Literal> literals;
+    /*
+     * Rep invariant:
+     *     literals is non-null, contains no null elements and no duplicate
+     *     literals
+     *
+     * Abstraction function:
+     *     the list of literals l1,...,ln represents the constraint that at
+     *     most one of l1,...,ln is true
+     */
+
+    void checkRep() {
+        assert literals != null : "AtMostOne, Rep invariant: literals non-null";
+        for (ImList<Literal> ls = literals; !ls.isEmpty(); ls = ls.rest())
+            assert ls.first() != null && !ls.rest().contains(ls.first()) : "AtMostOne, Rep invariant: no duplicates";
+    }
+
+    /**
+     * @return the constraint that at most one of literals is true; literals
+     *         given twice count once
+     */
+    public AtMostOne(Literal... literals) {
+        ImList<Literal> ls = new EmptyImList<Literal>();
+        for (int i = literals.length - 1; i >= 0; i--)
+            if (!ls.contains(literals[i])) ls = ls.add(literals[i]);
+        this.literals = ls;
+        checkRep();
+    }
+
+    /**
+     * @return number of literals
+     */
+    public int size() {
+        return literals.size();
+    }
+
+    /**
+     * @return true if l is one of the literals of this
+     */
+    public boolean contains(Literal l) {
+        return literals.contains(l);
+    }
+
+    /**
+     * @return an iterator over the literals of this
+     */
+    public Iterator<Literal> iterator() {
+        return literals.iterator();
+    }
+
+    /**
+     * @return the binary clauses (~a | ~b) for every two literals a, b of
+     *         this, which together say the same as this
+     */
+    public ImList<Clause> toClauses() {
+        ImList<Clause> clauses = new EmptyImList<Clause>();
+        for (ImList<Literal> ls = literals; !ls.isEmpty(); ls = ls.rest()) {
+            Clause first = new Clause(ls.first().getNegation());
+            for (Literal b : ls.rest()) {
+                // a clause of a literal and its negation is always true
+                Clause c = first.add(b.getNegation());
+                if (c != null) clauses = clauses.add(c);
+            }
+        }
+        return clauses;
+    }
+
+    @Override
+    public String toString() {
+        String result = "AtMostOne(";
+        String sep = "";
+        for (Literal l : literals) {
+            result += sep + l;
+            sep = ", ";
+        }
+        return result + ")";
+    }
+}
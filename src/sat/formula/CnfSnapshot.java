@@ -0,0 +1,269 @@
+package sat.formula;
+
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import sat.env.Variable;
+
+/**
+ * A compact binary file format for a CompiledFormula, so that a problem that
+ * is costly to build, such as the rules of a 16x16 Sudoku, can be built
+ * once, saved, and loaded again far faster than it could be rebuilt or read
+ * from DIMACS. Unlike DIMACS it keeps the names of the variables, so that
+ * a solution of the loaded problem binds the same Variables, and its
+ * AtMostOne and AllDifferent constraints as they are.
+ *
+ * The file is a header followed by the parts of the formula, every number
+ * in it an unsigned varint: 7 bits per byte, least significant first, with
+ * the high bit set on every byte but the last, so that most literals of
+ * small problems take a byte or two:
+ *
+ *     "CNFS", version       4 bytes, then 1 byte
+ *     counts                variables, clauses and their literals,
+ *                           AtMostOnes and their literals, AllDifferents
+ *     names                 per variable: its UTF-8 length, then the bytes
+ *     clauses               per clause: its size, then its literals
+ *     AtMostOnes            per constraint: its size, then its literals
+ *     AllDifferents         per constraint: items, values, then the
+ *                           literals row by row
+ *
+ * where literals are those of CompiledFormula, 2v and 2v+1. Reading maps
+ * the file into memory, a window of up to WINDOW bytes at a time.
+ */
+public final class CnfSnapshot {
+    private static final byte[] MAGIC = { 'C', 'N', 'F', 'S' };
+    private static final int VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // bytes of the file mapped at a time, and of the buffer it is written
+    // through
+    private static final long WINDOW = 1L << 28;
+    private static final int CHUNK = 1 << 16;
+
+    private final FileChannel channel;
+    private final long size;
+    // the mapped window, and the offset in the file where the next begins
+    private MappedByteBuffer window;
+    private long offset;
+
+    private CnfSnapshot(FileChannel channel) throws IOException {
+        this.channel = channel;
+        size = channel.size();
+    }
+
+    /**
+     * Write formula to the file filename.
+     *
+     * @throws IOException
+     *             if file writing encounters an error
+     */
+    public static void write(CompiledFormula formula, String filename) throws IOException {
+        OutputStream out = new FileOutputStream(filename);
+        try {
+            write(formula, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write formula to out, which is flushed but not closed.
+     *
+     * @throws IOException
+     *             if writing to out encounters an error
+     */
+    public static void write(CompiledFormula formula, OutputStream out) throws IOException {
+        byte[] buffer = new byte[CHUNK];
+        int length = 0;
+        // room for the longest varint, of 5 bytes, is made before each
+        out.write(MAGIC);
+        out.write(VERSION);
+        int clauseLiterals = 0;
+        for (int i = 0; i < formula.getNumClauses(); i++)
+            clauseLiterals += formula.clauseSize(i);
+        int amoLiterals = 0;
+        for (int i = 0; i < formula.getNumAtMostOnes(); i++)
+            amoLiterals += formula.atMostOne(i).length;
+        int[] counts = { formula.getNumVariables(), formula.getNumClauses(), clauseLiterals,
+                formula.getNumAtMostOnes(), amoLiterals, formula.getNumAllDifferents() };
+        for (int n : counts)
+            length = varint(out, buffer, length, n);
+        for (int v = 0; v < formula.getNumVariables(); v++) {
+            byte[] name = formula.getVariable(v).getName().getBytes(UTF8);
+            length = varint(out, buffer, length, name.length);
+            for (byte b : name) {
+                if (length == buffer.length) {
+                    out.write(buffer, 0, length);
+                    length = 0;
+                }
+                buffer[length++] = b;
+            }
+        }
+        for (int i = 0; i < formula.getNumClauses(); i++) {
+            int n = formula.clauseSize(i);
+            length = varint(out, buffer, length, n);
+            for (int k = 0; k < n; k++)
+                length = varint(out, buffer, length, formula.literalAt(i, k));
+        }
+        for (int i = 0; i < formula.getNumAtMostOnes(); i++) {
+            int[] lits = formula.atMostOne(i);
+            length = varint(out, buffer, length, lits.length);
+            for (int lit : lits)
+                length = varint(out, buffer, length, lit);
+        }
+        for (int i = 0; i < formula.getNumAllDifferents(); i++) {
+            int[][] table = formula.allDifferent(i);
+            length = varint(out, buffer, length, table.length);
+            length = varint(out, buffer, length, table.length == 0 ? 0 : table[0].length);
+            for (int[] row : table)
+                for (int lit : row)
+                    length = varint(out, buffer, length, lit);
+        }
+        out.write(buffer, 0, length);
+        out.flush();
+    }
+
+    /**
+     * Append n >= 0 as a varint to the first length bytes of buffer,
+     * writing them out first if they might not leave room.
+     *
+     * @return the new length of buffer
+     */
+    private static int varint(OutputStream out, byte[] buffer, int length, int n) throws IOException {
+        if (length + 5 > buffer.length) {
+            out.write(buffer, 0, length);
+            length = 0;
+        }
+        while ((n & ~0x7f) != 0) {
+            buffer[length++] = (byte) (n | 0x80);
+            n >>>= 7;
+        }
+        buffer[length++] = (byte) n;
+        return length;
+    }
+
+    /**
+     * Read a formula written by write().
+     *
+     * @param filename
+     *            of the file holding the formula
+     * @return the formula, with variables of the same names, and clauses
+     *         and constraints of the same literals, as the one written
+     * @throws IOException
+     *             if file reading encounters an error, or the file is not a
+     *             snapshot written by write()
+     */
+    public static CompiledFormula read(String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            return new CnfSnapshot(file.getChannel()).parse();
+        } finally {
+            file.close();
+        }
+    }
+
+    private CompiledFormula parse() throws IOException {
+        for (byte b : MAGIC)
+            if (next() != b) throw new IOException("not a CNF snapshot");
+        if (next() != VERSION) throw new IOException("unknown CNF snapshot version");
+        // each thing counted takes at least a byte of the file, so no count
+        // larger than the file is believed
+        Variable[] variables = new Variable[count()];
+        int[] starts = new int[count() + 1];
+        int[] literals = new int[count()];
+        int[] amoStarts = new int[count() + 1];
+        int[] amoLiterals = new int[count()];
+        int[][][] allDifferents = new int[count()][][];
+        byte[] name = new byte[64];
+        for (int v = 0; v < variables.length; v++) {
+            int n = count();
+            if (n > name.length) name = new byte[Math.max(n, 2 * name.length)];
+            for (int i = 0; i < n; i++)
+                name[i] = (byte) next();
+            variables[v] = new Variable(new String(name, 0, n, UTF8));
+        }
+        read(starts, literals, variables.length);
+        read(amoStarts, amoLiterals, variables.length);
+        for (int i = 0; i < allDifferents.length; i++) {
+            int items = count();
+            int values = count();
+            if ((long) items * values > size) throw new IOException("CNF snapshot longer than its file");
+            allDifferents[i] = new int[items][values];
+            for (int[] row : allDifferents[i])
+                for (int j = 0; j < values; j++)
+                    row[j] = literal(variables.length);
+        }
+        return new CompiledFormula(variables, literals, starts, amoLiterals, amoStarts, allDifferents);
+    }
+
+    /**
+     * Read the lists of literals over variables variables into lits, back
+     * to back, list i from lits[starts[i]] on.
+     * Requires: starts[0] == 0
+     */
+    private void read(int[] starts, int[] lits, int variables) throws IOException {
+        int k = 0;
+        for (int i = 1; i < starts.length; i++) {
+            int n = count();
+            if (n > lits.length - k) throw new IOException("malformed CNF snapshot: too many literals");
+            for (int j = 0; j < n; j++)
+                lits[k++] = literal(variables);
+            starts[i] = k;
+        }
+        if (k != lits.length) throw new IOException("malformed CNF snapshot: too few literals");
+    }
+
+    /**
+     * @return the next byte of the file, from 0 to 255
+     * @throws EOFException
+     *             at the end of the file
+     */
+    private int next() throws IOException {
+        if (window == null || !window.hasRemaining()) {
+            if (offset >= size) throw new EOFException("CNF snapshot cut short");
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW, size - offset));
+            offset += window.capacity();
+        }
+        return window.get() & 0xff;
+    }
+
+    /**
+     * @return the next varint of the file, which must fit in an int
+     */
+    private int varint() throws IOException {
+        int n = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = next();
+            n |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                if (shift == 28 && b > 0x0f) break;
+                return n;
+            }
+        }
+        throw new IOException("malformed CNF snapshot: varint too long");
+    }
+
+    /**
+     * @return the next varint of the file, a count no larger than the file
+     */
+    private int count() throws IOException {
+        int n = varint();
+        if (n < 0 || n > size) throw new IOException("malformed CNF snapshot: count " + n);
+        return n;
+    }
+
+    /**
+     * @return the next varint of the file, a literal over variables
+     *         variables
+     */
+    private int literal(int variables) throws IOException {
+        int lit = varint();
+        if (lit < 0 || lit >= 2 * variables) throw new IOException("malformed CNF snapshot: literal " + lit);
+        return lit;
+    }
+}
@@ -0,0 +1,117 @@
+package sat.formula;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import sat.SATSolver;
+import sat.SolveResult;
+import sat.SolverConfig;
+import sudoku.Sudoku;
+
+public class CnfSnapshotTest {
+
+    // make sure assertions are turned on!
+    // we don't want to run test cases without assertions too.
+    // see the handout to find out how to turn them on.
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+    	Literal x = PosLiteral.make("x");
+    	Literal y = PosLiteral.make("\u00fcber y");
+    	Literal z = PosLiteral.make("z");
+    	CompiledFormula f = new Formula(new Clause(x).add(y.getNegation()))
+    			.and(new Formula(new Clause()))
+    			.addAtMostOne(x, y, z)
+    			.addAllDifferent(new Literal[][] { { x, y }, { z, x.getNegation() } })
+    			.compile();
+    	CompiledFormula g = read(bytes(f));
+    	assertSameFormula(f, g);
+    	assertEquals("\u00fcber y", g.getVariable(f.getId(y.getVariable())).getName());
+
+    	CompiledFormula empty = new Formula().compile();
+    	assertSameFormula(empty, read(bytes(empty)));
+    }
+
+    @Test
+    public void testSudoku() throws IOException {
+    	// the loaded problem solves to the same puzzle, through the same
+    	// variables
+    	int[][] square = new int[][] {{0, -1, -1, -1}, {-1, 1, -1, -1}, {-1, -1, 2, -1}, {-1, -1, -1, 3}};
+    	Sudoku s = new Sudoku(2, square);
+    	CompiledFormula f = s.getGlobalProblem().compile();
+    	CompiledFormula g = read(bytes(f));
+    	assertSameFormula(f, g);
+    	SolveResult result = SATSolver.solve(g, new SolverConfig());
+    	assertTrue(result.isSatisfiable());
+    	String solved = s.interpretSolution(result.getEnvironment()).toString();
+    	assertEquals(s.interpretSolution(SATSolver.solve(f)).toString(), solved);
+    	assertFalse(solved.contains("."));
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+    	byte[] good = bytes(new Formula(new Clause(PosLiteral.make("x"))).compile());
+    	byte[] magic = good.clone();
+    	magic[0] = 'D';
+    	byte[] literal = good.clone();
+    	// the literal of the one clause, 0, made 2: past the one variable
+    	literal[literal.length - 1] = 2;
+    	for (byte[] bad : new byte[][] { magic, literal, Arrays.copyOf(good, good.length - 1),
+    			Arrays.copyOf(good, 3), new byte[0] }) {
+    		try {
+    			read(bad);
+    			fail("accepted " + Arrays.toString(bad));
+    		} catch (IOException e) {
+    			// expected
+    		}
+    	}
+    }
+
+    private static void assertSameFormula(CompiledFormula expected, CompiledFormula actual) {
+    	assertEquals(expected.getNumVariables(), actual.getNumVariables());
+    	for (int v = 0; v < expected.getNumVariables(); v++)
+    		assertEquals(expected.getVariable(v), actual.getVariable(v));
+    	assertEquals(expected.getNumClauses(), actual.getNumClauses());
+    	for (int i = 0; i < expected.getNumClauses(); i++)
+    		assertArrayEquals(expected.clause(i), actual.clause(i));
+    	assertEquals(expected.getNumAtMostOnes(), actual.getNumAtMostOnes());
+    	for (int i = 0; i < expected.getNumAtMostOnes(); i++)
+    		assertArrayEquals(expected.atMostOne(i), actual.atMostOne(i));
+    	assertEquals(expected.getNumAllDifferents(), actual.getNumAllDifferents());
+    	for (int i = 0; i < expected.getNumAllDifferents(); i++)
+    		assertTrue(Arrays.deepEquals(expected.allDifferent(i), actual.allDifferent(i)));
+    }
+
+    private static byte[] bytes(CompiledFormula f) throws IOException {
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	CnfSnapshot.write(f, out);
+    	return out.toByteArray();
+    }
+
+    /**
+     * @return the formula read from a file holding bytes
+     */
+    private static CompiledFormula read(byte[] bytes) throws IOException {
+    	File file = File.createTempFile("snapshot", ".cnfs");
+    	try {
+    		OutputStream out = new FileOutputStream(file);
+    		out.write(bytes);
+    		out.close();
+    		return CnfSnapshot.read(file.getPath());
+    	} finally {
+    		file.delete();
+    	}
+    }
+}
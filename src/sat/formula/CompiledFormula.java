@@ -0,0 +1,419 @@
+package sat.formula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import sat.env.Bool;
+import sat.env.Environment;
+import sat.env.Variable;
+
+/**
+ * CompiledFormula is a formula in conjunctive normal form laid out for a
+ * solver rather than for construction: variables are numbered densely from 0,
+ * literals are ints, and the clauses are stored back to back in one flat int
+ * array, so that reading a clause never chases a pointer.
+ *
+ * The literal for variable number v is the int 2v, and its negation is
+ * 2v+1. So negating a literal is lit ^ 1, and the variable of a literal is
+ * lit >> 1.
+ *
+ * AtMostOne constraints are compiled the same way, into a flat array of
+ * their own, and each AllDifferent constraint into a table of literals, so
+ * that a solver can propagate them natively.
+ *
+ * A CompiledFormula remembers the Variable behind each number, so that a
+ * solution found over numbers can be turned back into an Environment.
+ * This datatype is immutable.
+ */
+public class CompiledFormula {
+    // variables[v] is the variable numbered v
+    private final Variable[] variables;
+    // literals of clause i are literals[starts[i] .. starts[i+1]-1]
+    private final int[] literals;
+    private final int[] starts;
+    // literals of AtMostOne constraint i are
+    // amoLiterals[amoStarts[i] .. amoStarts[i+1]-1]
+    private final int[] amoLiterals;
+    private final int[] amoStarts;
+    // allDifferents[i][j][k] is the literal saying that item j of
+    // AllDifferent constraint i takes value k
+    private final int[][][] allDifferents;
+    // inverse of variables, built on first use
+    private HashMap<Variable, Integer> ids;
+    /*
+     * Rep invariant:
+     *     variables contains no null elements and no two equal variables
+     *     starts.length >= 1, starts[0] == 0, starts is non-decreasing,
+     *         and starts[starts.length-1] <= literals.length
+     *     the same holds of amoStarts and amoLiterals
+     *     allDifferents contains no null elements, and the rows of each
+     *         of its tables have the same length
+     *     every literal l in the clauses and constraints satisfies
+     *         0 <= l < 2*variables.length
+     *
+     * Abstraction function:
+     *     represents the conjunction over 0 <= i < starts.length-1 of the
+     *     disjunction of literals[starts[i] .. starts[i+1]-1], and over
+     *     0 <= i < amoStarts.length-1 of the constraint that at most one of
+     *     amoLiterals[amoStarts[i] .. amoStarts[i+1]-1] is true, and over
+     *     the tables of allDifferents of the constraint that the items, one
+     *     per row, take different values, one per column, where literal
+     *     2v stands for variables[v] and 2v+1 for its negation. A literal
+     *     given twice in an AtMostOne counts twice, so it must be false;
+     *     an AtMostOne of a Formula counts repeats once, but drops them, so
+     *     compiling one never gives a repeat.
+     */
+
+    void checkRep() {
+        assert variables != null && literals != null && starts != null : "CompiledFormula, Rep invariant: non-null";
+        assert starts.length >= 1 && starts[0] == 0 : "CompiledFormula, Rep invariant: starts";
+        assert starts[starts.length - 1] <= literals.length : "CompiledFormula, Rep invariant: ends";
+        assert amoStarts.length >= 1 && amoStarts[0] == 0 : "CompiledFormula, Rep invariant: amoStarts";
+        assert amoStarts[amoStarts.length - 1] <= amoLiterals.length : "CompiledFormula, Rep invariant: amo ends";
+        assert allDifferents != null : "CompiledFormula, Rep invariant: allDifferents non-null";
+    }
+
+    /**
+     * Create a compiled formula without constraints from its parts, which
+     * are not copied.
+     * Requires the rep invariant to hold of variables, literals and starts.
+     */
+    CompiledFormula(Variable[] variables, int[] literals, int[] starts) {
+        this(variables, literals, starts, new int[0], new int[1], new int[0][][]);
+    }
+
+    /**
+     * Create a compiled formula from its parts, which are not copied.
+     * Requires the rep invariant to hold of the parts.
+     */
+    CompiledFormula(Variable[] variables, int[] literals, int[] starts, int[] amoLiterals,
+            int[] amoStarts, int[][][] allDifferents) {
+        this.variables = variables;
+        this.literals = literals;
+        this.starts = starts;
+        this.amoLiterals = amoLiterals;
+        this.amoStarts = amoStarts;
+        this.allDifferents = allDifferents;
+        checkRep();
+    }
+
+    /**
+     * Compile formula, numbering its variables in order of first appearance.
+     *
+     * @return the compiled equivalent of formula
+     */
+    public static CompiledFormula compile(Formula formula) {
+        HashMap<Variable, Integer> ids = new HashMap<Variable, Integer>();
+        List<Variable> vars = new ArrayList<Variable>();
+        int[] lits = new int[64];
+        int[] starts = new int[formula.getSize() + 1];
+        int k = 0;
+        int i = 0;
+        for (Clause c : formula.getClauses()) {
+            if (k + c.size() > lits.length)
+                lits = Arrays.copyOf(lits, Math.max(2 * lits.length, k + c.size()));
+            for (Literal l : c)
+                lits[k++] = literal(number(l.getVariable(), ids, vars), l instanceof NegLiteral);
+            starts[++i] = k;
+        }
+        int[] amoLits = new int[16];
+        int[] amoStarts = new int[formula.getAtMostOnes().size() + 1];
+        int a = 0;
+        i = 0;
+        for (AtMostOne c : formula.getAtMostOnes()) {
+            if (a + c.size() > amoLits.length)
+                amoLits = Arrays.copyOf(amoLits, Math.max(2 * amoLits.length, a + c.size()));
+            for (Literal l : c)
+                amoLits[a++] = literal(number(l.getVariable(), ids, vars), l instanceof NegLiteral);
+            amoStarts[++i] = a;
+        }
+        int[][][] tables = new int[formula.getAllDifferents().size()][][];
+        i = 0;
+        for (AllDifferent c : formula.getAllDifferents()) {
+            int[][] table = new int[c.getNumItems()][c.getNumValues()];
+            for (int item = 0; item < table.length; item++)
+                for (int value = 0; value < table[item].length; value++) {
+                    Literal l = c.get(item, value);
+                    table[item][value] = literal(number(l.getVariable(), ids, vars),
+                            l instanceof NegLiteral);
+                }
+            tables[i++] = table;
+        }
+        CompiledFormula compiled = new CompiledFormula(vars.toArray(new Variable[vars.size()]),
+                Arrays.copyOf(lits, k), starts, Arrays.copyOf(amoLits, a), amoStarts, tables);
+        compiled.ids = ids;
+        return compiled;
+    }
+
+    /**
+     * @return the number of v in ids, after giving v the next number, the
+     *         size of vars, and appending it to vars if it had none yet
+     */
+    private static int number(Variable v, HashMap<Variable, Integer> ids, List<Variable> vars) {
+        Integer id = ids.get(v);
+        if (id == null) {
+            id = vars.size();
+            ids.put(v, id);
+            vars.add(v);
+        }
+        return id;
+    }
+
+    /**
+     * Requires: every literal of clauses is a literal over the variables of
+     * this
+     * @return a formula over the same numbered variables as this, but with
+     *         the given clauses and no constraints
+     */
+    public CompiledFormula withClauses(List<int[]> clauses) {
+        int total = 0;
+        for (int[] c : clauses)
+            total += c.length;
+        int[] lits = new int[total];
+        int[] newStarts = new int[clauses.size() + 1];
+        int k = 0;
+        int i = 0;
+        for (int[] c : clauses) {
+            System.arraycopy(c, 0, lits, k, c.length);
+            k += c.length;
+            newStarts[++i] = k;
+        }
+        return new CompiledFormula(variables, lits, newStarts);
+    }
+
+    /**
+     * @return a formula over the same numbered variables as this, without
+     *         constraints: its clauses are those of this, followed by the
+     *         clauses that say the same as the constraints, in the order
+     *         Dimacs.write writes them. That is (~a | ~b) for every two
+     *         literals a, b of an AtMostOne, and for an AllDifferent the
+     *         clause of each item and those pairs for each value. A pair of
+     *         a literal with itself is the unit clause (~a), and a pair of a
+     *         literal with its negation, which always holds, is left out.
+     */
+    public CompiledFormula expandConstraints() {
+        if (getNumAtMostOnes() == 0 && allDifferents.length == 0) return this;
+        List<int[]> clauses = new ArrayList<int[]>();
+        for (int i = 0; i < getNumClauses(); i++)
+            clauses.add(clause(i));
+        for (int i = 0; i < getNumAtMostOnes(); i++)
+            pairs(atMostOne(i), clauses);
+        for (int[][] table : allDifferents) {
+            for (int[] row : table)
+                clauses.add(row.clone());
+            int[] column = new int[table.length];
+            for (int k = 0; table.length > 0 && k < table[0].length; k++) {
+                for (int j = 0; j < table.length; j++)
+                    column[j] = table[j][k];
+                pairs(column, clauses);
+            }
+        }
+        return withClauses(clauses);
+    }
+
+    /**
+     * Add to clauses the clause (~a | ~b) for every two literals a, b of
+     * lits, as expandConstraints() describes.
+     */
+    private static void pairs(int[] lits, List<int[]> clauses) {
+        for (int i = 0; i < lits.length; i++)
+            for (int j = i + 1; j < lits.length; j++) {
+                if (lits[i] == lits[j]) clauses.add(new int[] { lits[i] ^ 1 });
+                else if (lits[i] != (lits[j] ^ 1)) clauses.add(new int[] { lits[i] ^ 1, lits[j] ^ 1 });
+            }
+    }
+
+    /**
+     * @return the literal of variable number v, negated if negated is true
+     */
+    public static int literal(int v, boolean negated) {
+        return (v << 1) | (negated ? 1 : 0);
+    }
+
+    /**
+     * @return the number of the variable of literal lit
+     */
+    public static int variableOf(int lit) {
+        return lit >> 1;
+    }
+
+    /**
+     * @return true if lit is a negative literal
+     */
+    public static boolean isNegated(int lit) {
+        return (lit & 1) != 0;
+    }
+
+    /**
+     * @return number of variables
+     */
+    public int getNumVariables() {
+        return variables.length;
+    }
+
+    /**
+     * @return number of clauses
+     */
+    public int getNumClauses() {
+        return starts.length - 1;
+    }
+
+    /**
+     * Requires: 0 <= v < getNumVariables()
+     * @return the variable numbered v
+     */
+    public Variable getVariable(int v) {
+        return variables[v];
+    }
+
+    /**
+     * @return the number of variable, or -1 if it does not occur in this
+     */
+    public int getId(Variable variable) {
+        synchronized (this) {
+            if (ids == null) {
+                ids = new HashMap<Variable, Integer>();
+                for (int v = 0; v < variables.length; v++)
+                    ids.put(variables[v], v);
+            }
+        }
+        Integer id = ids.get(variable);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the int literal for l, or -1 if its variable does not occur
+     *         in this
+     */
+    public int getLiteral(Literal l) {
+        int v = getId(l.getVariable());
+        return v < 0 ? -1 : literal(v, l instanceof NegLiteral);
+    }
+
+    /**
+     * Requires: 0 <= i < getNumClauses()
+     * @return number of literals of clause i
+     */
+    public int clauseSize(int i) {
+        return starts[i + 1] - starts[i];
+    }
+
+    /**
+     * Requires: 0 <= i < getNumClauses() and 0 <= k < clauseSize(i)
+     * @return the kth literal of clause i
+     */
+    public int literalAt(int i, int k) {
+        return literals[starts[i] + k];
+    }
+
+    /**
+     * Requires: 0 <= i < getNumClauses()
+     * @return a new array holding the literals of clause i
+     */
+    public int[] clause(int i) {
+        return Arrays.copyOfRange(literals, starts[i], starts[i + 1]);
+    }
+
+    /**
+     * @return number of AtMostOne constraints
+     */
+    public int getNumAtMostOnes() {
+        return amoStarts.length - 1;
+    }
+
+    /**
+     * Requires: 0 <= i < getNumAtMostOnes()
+     * @return a new array holding the literals of AtMostOne constraint i
+     */
+    public int[] atMostOne(int i) {
+        return Arrays.copyOfRange(amoLiterals, amoStarts[i], amoStarts[i + 1]);
+    }
+
+    /**
+     * @return number of AllDifferent constraints
+     */
+    public int getNumAllDifferents() {
+        return allDifferents.length;
+    }
+
+    /**
+     * Requires: 0 <= i < getNumAllDifferents()
+     * @return a new table of the literals of AllDifferent constraint i:
+     *         element [j][k] says that item j takes value k
+     */
+    public int[][] allDifferent(int i) {
+        int[][] table = new int[allDifferents[i].length][];
+        for (int j = 0; j < table.length; j++)
+            table[j] = allDifferents[i][j].clone();
+        return table;
+    }
+
+    /**
+     * Turn a solution over variable numbers back into an environment.
+     *
+     * @param model
+     *            model[v] is the value of variable number v;
+     *            Requires model.length == getNumVariables()
+     * @return an environment binding each variable of this to its value in
+     *         model
+     */
+    public Environment toEnvironment(boolean[] model) {
+        Environment env = new Environment();
+        for (int v = 0; v < variables.length; v++)
+            env = env.put(variables[v], model[v] ? Bool.TRUE : Bool.FALSE);
+        return env;
+    }
+
+    /**
+     * @return the formula that this compiles, with clauses and constraints
+     *         of the same literals; a clause holding a literal and its
+     *         negation is always true, and is left out, and a literal given
+     *         twice in an AtMostOne becomes the unit clause of its negation,
+     *         since a Formula would count it once
+     */
+    public Formula toFormula() {
+        Formula f = new Formula();
+        for (int i = 0; i < getNumClauses(); i++) {
+            Clause c = new Clause();
+            for (int k = starts[i]; k < starts[i + 1] && c != null; k++) {
+                Variable v = variables[variableOf(literals[k])];
+                c = c.add(isNegated(literals[k]) ? NegLiteral.make(v) : PosLiteral.make(v));
+            }
+            if (c != null) f = f.addClause(c);
+        }
+        for (int i = 0; i < getNumAtMostOnes(); i++) {
+            Literal[] ls = new Literal[amoStarts[i + 1] - amoStarts[i]];
+            for (int k = amoStarts[i]; k < amoStarts[i + 1]; k++) {
+                Variable v = variables[variableOf(amoLiterals[k])];
+                ls[k - amoStarts[i]] = isNegated(amoLiterals[k]) ? NegLiteral.make(v) : PosLiteral.make(v);
+                for (int j = amoStarts[i]; j < k; j++)
+                    if (amoLiterals[j] == amoLiterals[k]) {
+                        f = f.addClause(new Clause(ls[k - amoStarts[i]].getNegation()));
+                        break;
+                    }
+            }
+            f = f.addAtMostOne(ls);
+        }
+        for (int[][] table : allDifferents) {
+            Literal[][] ls = new Literal[table.length][];
+            for (int j = 0; j < table.length; j++) {
+                ls[j] = new Literal[table[j].length];
+                for (int k = 0; k < table[j].length; k++) {
+                    Variable v = variables[variableOf(table[j][k])];
+                    ls[j][k] = isNegated(table[j][k]) ? NegLiteral.make(v) : PosLiteral.make(v);
+                }
+            }
+            f = f.addAllDifferent(ls);
+        }
+        return f;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledFormula[variables=" + variables.length + ", clauses=" + getNumClauses()
+                + (getNumAtMostOnes() == 0 ? "" : ", atMostOnes=" + getNumAtMostOnes())
+                + (getNumAllDifferents() == 0 ? "" : ", allDifferents=" + getNumAllDifferents()) + "]";
+    }
+}
@@ -0,0 +1,425 @@
+package sat.formula;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import sat.env.Variable;
+
+/**
+ * Reading and writing of problems in the DIMACS CNF format used by SAT
+ * competitions:
+ *
+ *     c a comment line
+ *     p cnf 3 2
+ *     1 -3 0
+ *     2 3 -1 0
+ *
+ * declares 3 variables and 2 clauses, each a list of non-zero literals
+ * ended by 0, where -n is the negation of variable n. Clauses may span
+ * lines or share them, and a comment runs from a c in place of a literal
+ * to the end of its line.
+ *
+ * The file is memory-mapped, a window of up to WINDOW bytes at a time, and
+ * its bytes are copied out a chunk at a time and turned into literals by a
+ * state machine whose state lives in local variables, straight into the
+ * flat arrays of a CompiledFormula: no String, Clause or Literal is made on
+ * the way, only one Variable per variable at the end, so that a file of
+ * hundreds of megabytes reads at close to the speed of the disk. Writing
+ * likewise formats the literals into a byte buffer of its own.
+ */
+public final class Dimacs {
+    // bytes of the file mapped at a time, and copied out at a time
+    private static final long WINDOW = 1L << 28;
+    private static final int CHUNK = 1 << 16;
+    // largest variable number, so that its literals fit in an int
+    private static final int MAX_VARIABLE = Integer.MAX_VALUE / 2;
+    // clauses up to this long are searched for a repeated literal; longer
+    // ones mark their literals instead
+    private static final int SCAN = 8;
+    // what the byte being read belongs to
+    private static final int BLANK = 0;
+    private static final int COMMENT = 1;
+    private static final int HEADER = 2;
+    private static final int LITERAL = 3;
+
+    private final String name;
+    private final FileChannel channel;
+    private final long size;
+    // the mapped window, and the offset in the file where the next begins
+    private MappedByteBuffer window;
+    private long offset;
+
+    private Dimacs(String name, FileChannel channel) throws IOException {
+        this.name = name;
+        this.channel = channel;
+        size = channel.size();
+    }
+
+    /**
+     * Read a problem in DIMACS CNF format. Variable n of the file becomes
+     * variable number n-1 of the result, named "n"; variables the header
+     * declares but no clause mentions are kept, so that a solution binds
+     * them all, but no more of them than the file has bytes. Literals
+     * repeated in a clause are dropped, and so are clauses that hold a
+     * literal and its negation. The counts of the header are taken as
+     * hints, so more variables or clauses than it declares are accepted,
+     * and so is a missing header; memory is never set aside for more
+     * clauses than the file could hold. A last clause without its 0 is
+     * accepted too, and a % at the start of a line ends the problem, as in
+     * the SATLIB benchmarks.
+     *
+     * @param filename
+     *            of the file holding the problem
+     * @return the problem, compiled
+     * @throws IOException
+     *             if file reading encounters an error
+     * @throws ParseException
+     *             if the file has an error in its format
+     */
+    public static CompiledFormula read(String filename) throws IOException, ParseException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            return new Dimacs(new File(filename).getName(), file.getChannel()).parse();
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Write formula in DIMACS CNF format to the file filename, as by
+     * write(CompiledFormula, OutputStream).
+     *
+     * @throws IOException
+     *             if file writing encounters an error
+     */
+    public static void write(CompiledFormula formula, String filename) throws IOException {
+        OutputStream out = new FileOutputStream(filename);
+        try {
+            write(formula, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write formula in DIMACS CNF format to out, which is flushed but not
+     * closed. Variable number v is written as v+1; the names of the
+     * variables are not kept. DIMACS has only clauses, so the constraints
+     * of formula are written as the clauses that say the same: an
+     * AtMostOne as a clause (~a | ~b) for every two of its literals, and an
+     * AllDifferent as the clause of each item and the pairs of each value.
+     *
+     * @throws IOException
+     *             if writing to out encounters an error
+     */
+    public static void write(CompiledFormula formula, OutputStream out) throws IOException {
+        long clauses = formula.getNumClauses();
+        for (int i = 0; i < formula.getNumAtMostOnes(); i++) {
+            long n = formula.atMostOne(i).length;
+            clauses += n * (n - 1) / 2;
+        }
+        for (int i = 0; i < formula.getNumAllDifferents(); i++) {
+            int[][] table = formula.allDifferent(i);
+            long n = table.length;
+            clauses += n + (n == 0 ? 0 : table[0].length * (n * (n - 1) / 2));
+        }
+        Printer printer = new Printer(out);
+        printer.text("p cnf ");
+        printer.number(formula.getNumVariables());
+        printer.text(" ");
+        printer.number(clauses);
+        printer.text("\n");
+        for (int i = 0; i < formula.getNumClauses(); i++) {
+            for (int k = 0; k < formula.clauseSize(i); k++)
+                printer.literal(formula.literalAt(i, k));
+            printer.text("0\n");
+        }
+        for (int i = 0; i < formula.getNumAtMostOnes(); i++)
+            printer.pairs(formula.atMostOne(i));
+        for (int i = 0; i < formula.getNumAllDifferents(); i++) {
+            int[][] table = formula.allDifferent(i);
+            for (int[] row : table) {
+                for (int lit : row)
+                    printer.literal(lit);
+                printer.text("0\n");
+            }
+            int[] column = new int[table.length];
+            for (int k = 0; table.length > 0 && k < table[0].length; k++) {
+                for (int j = 0; j < table.length; j++)
+                    column[j] = table[j][k];
+                printer.pairs(column);
+            }
+        }
+        printer.flush();
+    }
+
+    /**
+     * Text written through a buffer of CHUNK bytes, with numbers formatted
+     * into it directly.
+     */
+    private static final class Printer {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[CHUNK];
+        private int length;
+
+        Printer(OutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * Write ASCII text.
+         */
+        void text(String text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                if (length == buffer.length) drain();
+                buffer[length++] = (byte) text.charAt(i);
+            }
+        }
+
+        /**
+         * Write n >= 0 in decimal.
+         */
+        void number(long n) throws IOException {
+            // the longest long has 19 digits
+            if (length + 20 > buffer.length) drain();
+            int end = length;
+            do {
+                buffer[end++] = (byte) ('0' + n % 10);
+                n /= 10;
+            } while (n > 0);
+            for (int i = length, j = end - 1; i < j; i++, j--) {
+                byte b = buffer[i];
+                buffer[i] = buffer[j];
+                buffer[j] = b;
+            }
+            length = end;
+        }
+
+        /**
+         * Write lit as a DIMACS literal, followed by a space.
+         */
+        void literal(int lit) throws IOException {
+            if (length + 2 > buffer.length) drain();
+            if ((lit & 1) != 0) buffer[length++] = '-';
+            number((lit >> 1) + 1);
+            buffer[length++] = ' ';
+        }
+
+        /**
+         * Write the clause (~a | ~b) for every two literals a, b of lits.
+         */
+        void pairs(int[] lits) throws IOException {
+            for (int i = 0; i < lits.length; i++)
+                for (int j = i + 1; j < lits.length; j++) {
+                    literal(lits[i] ^ 1);
+                    literal(lits[j] ^ 1);
+                    text("0\n");
+                }
+        }
+
+        private void drain() throws IOException {
+            out.write(buffer, 0, length);
+            length = 0;
+        }
+
+        void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+    }
+
+    /**
+     * Copy the next bytes of the file into chunk.
+     *
+     * @return the number of bytes copied, or -1 at the end of the file
+     */
+    private int fill(byte[] chunk) throws IOException {
+        if (window == null || !window.hasRemaining()) {
+            if (offset >= size) return -1;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW, size - offset));
+            offset += window.capacity();
+        }
+        int n = Math.min(chunk.length, window.remaining());
+        window.get(chunk, 0, n);
+        return n;
+    }
+
+    private ParseException error(int line, String message) {
+        return new ParseException(name + ", line " + line + ": " + message);
+    }
+
+    private CompiledFormula parse() throws IOException, ParseException {
+        int[] lits = new int[(int) Math.min(1 << 20, size / 2 + 16)];
+        int[] starts = new int[1024];
+        int clauses = 0;
+        int k = 0;
+        // mark[lit] == serial if lit is in the long clause being read
+        int[] mark = new int[0];
+        int serial = 0;
+        boolean tautology = false;
+        int maxVariable = 0;
+        int declaredVariables = -1;
+        int line = 1;
+        int state = BLANK;
+        long number = 0;
+        boolean negated = false;
+        boolean digits = false;
+        StringBuilder header = null;
+        byte[] chunk = new byte[CHUNK];
+        boolean end = false;
+        chunks: while (!end) {
+            int n = fill(chunk);
+            if (n < 0) {
+                // the end of the file ends the line it is on
+                chunk[0] = '\n';
+                n = 1;
+                end = true;
+            }
+            for (int i = 0; i < n; i++) {
+                int c = chunk[i];
+                if (state == LITERAL) {
+                    if (c >= '0' && c <= '9') {
+                        number = 10 * number + (c - '0');
+                        if (number > MAX_VARIABLE) throw error(line, "variable number too large");
+                        digits = true;
+                        continue;
+                    }
+                    if (c != ' ' && c != '\n' && c != '\t' && c != '\r')
+                        throw error(line, "unexpected character '" + (char) c + "' in a literal");
+                    if (!digits) throw error(line, "'-' without a number");
+                    if (c == '\n') line++;
+                    state = BLANK;
+                    if (number == 0) {
+                        // end of clause
+                        if (tautology) {
+                            k = starts[clauses];
+                            tautology = false;
+                        } else {
+                            if (++clauses == starts.length)
+                                starts = Arrays.copyOf(starts, starts.length + (starts.length >> 1) + 16);
+                            starts[clauses] = k;
+                        }
+                        continue;
+                    }
+                    int v = (int) number - 1;
+                    int lit = (v << 1) | (negated ? 1 : 0);
+                    if (v >= maxVariable) maxVariable = v + 1;
+                    int start = starts[clauses];
+                    boolean repeated = false;
+                    if (k - start < SCAN) {
+                        for (int j = start; j < k; j++) {
+                            if (lits[j] == lit) repeated = true;
+                            else if (lits[j] == (lit ^ 1)) tautology = true;
+                        }
+                    } else {
+                        if (mark.length < 2 * maxVariable)
+                            mark = Arrays.copyOf(mark, Math.max(2 * maxVariable, 2 * mark.length));
+                        if (k - start == SCAN) {
+                            serial++;
+                            for (int j = start; j < k; j++)
+                                mark[lits[j]] = serial;
+                        }
+                        if (mark[lit] == serial) repeated = true;
+                        else if (mark[lit ^ 1] == serial) tautology = true;
+                        mark[lit] = serial;
+                    }
+                    if (repeated) continue;
+                    if (k == lits.length) lits = Arrays.copyOf(lits, lits.length + (lits.length >> 1) + 16);
+                    lits[k++] = lit;
+                } else if (state == BLANK) {
+                    if (c == ' ' || c == '\t' || c == '\r') continue;
+                    if (c == '\n') {
+                        line++;
+                    } else if (c >= '0' && c <= '9') {
+                        state = LITERAL;
+                        number = c - '0';
+                        negated = false;
+                        digits = true;
+                    } else if (c == '-') {
+                        state = LITERAL;
+                        number = 0;
+                        negated = true;
+                        digits = false;
+                    } else if (c == 'c') {
+                        state = COMMENT;
+                    } else if (c == 'p') {
+                        if (declaredVariables >= 0 || k > 0 || clauses > 0)
+                            throw error(line, "header after the first clause");
+                        state = HEADER;
+                        header = new StringBuilder("p");
+                    } else if (c == '%') {
+                        break chunks;
+                    } else {
+                        throw error(line, "unexpected character '" + (char) c + "'");
+                    }
+                } else if (state == COMMENT) {
+                    if (c == '\n') {
+                        line++;
+                        state = BLANK;
+                    }
+                } else if (c != '\n') {
+                    header.append((char) c);
+                } else {
+                    long[] counts = counts(line, header.toString());
+                    declaredVariables = (int) counts[0];
+                    // every clause takes at least 2 bytes, "0\n", so no
+                    // more than that many are made room for
+                    long expected = Math.min(counts[1], size / 2);
+                    if (expected + 1 > starts.length) starts = new int[(int) expected + 1];
+                    line++;
+                    state = BLANK;
+                }
+            }
+        }
+        // a last clause without its 0
+        if (k > starts[clauses] && !tautology) {
+            if (++clauses == starts.length) starts = Arrays.copyOf(starts, starts.length + 1);
+            starts[clauses] = k;
+        }
+
+        // declared variables no clause mentions are kept only as far as
+        // the file has bytes, so that a header cannot make one
+        int kept = (int) Math.min(declaredVariables, size);
+        Variable[] variables = new Variable[Math.max(kept, maxVariable)];
+        for (int v = 0; v < variables.length; v++)
+            variables[v] = new Variable(Integer.toString(v + 1));
+        // the literals may run past the last clause, but not the starts
+        return new CompiledFormula(variables, lits, Arrays.copyOf(starts, clauses + 1));
+    }
+
+    /**
+     * @return the numbers of variables and clauses that header, the line
+     *         "p cnf <variables> <clauses>", declares
+     */
+    private long[] counts(int line, String header) throws ParseException {
+        String[] words = header.trim().split("\\s+");
+        if (words.length != 4 || !words[0].equals("p") || !words[1].equals("cnf"))
+            throw error(line, "header is not 'p cnf <variables> <clauses>'");
+        long[] counts = new long[2];
+        for (int n = 0; n < 2; n++) {
+            try {
+                counts[n] = Long.parseLong(words[n + 2]);
+            } catch (NumberFormatException e) {
+                throw error(line, "header is not 'p cnf <variables> <clauses>'");
+            }
+            if (counts[n] < 0 || counts[n] > MAX_VARIABLE) throw error(line, "header count out of range");
+        }
+        return counts;
+    }
+
+    /**
+     * Exception used for signaling grammatical errors in DIMACS files
+     */
+    @SuppressWarnings("serial")
+    public static class ParseException extends Exception {
+        public ParseException(String msg) {
+            super(msg);
+        }
+    }
+}
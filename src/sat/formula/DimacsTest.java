@@ -0,0 +1,217 @@
+package sat.formula;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sat.SATSolver;
+import sat.SolveResult;
+import sat.SolverConfig;
+import sat.env.Bool;
+import sat.env.Environment;
+import sat.formula.Dimacs.ParseException;
+
+public class DimacsTest {
+
+    // make sure assertions are turned on!
+    // we don't want to run test cases without assertions too.
+    // see the handout to find out how to turn them on.
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false;
+    }
+
+    @Test
+    public void testRead() throws IOException, ParseException {
+    	CompiledFormula f = read("c a comment\n"
+    			+ "p cnf 5 4\n"
+    			+ "1 -3 0\n"
+    			+ "2 3\n -1 0 c clauses may span lines, and comments end them\n");
+    	assertEquals(5, f.getNumVariables());
+    	assertEquals("1", f.getVariable(0).getName());
+    	assertEquals(2, f.getNumClauses());
+    	assertArrayEquals(new int[] { 0, 5 }, f.clause(0));
+    	assertArrayEquals(new int[] { 2, 4, 1 }, f.clause(1));
+    }
+
+    @Test
+    public void testCleanUp() throws IOException, ParseException {
+    	// repeated literals are dropped, tautologies and all, in short and
+    	// long clauses; a missing header and a missing last 0 are fine
+    	CompiledFormula f = read("1 1 -2 1 0\n"
+    			+ "1 2 3 4 5 6 7 8 9 10 -10 0\n"
+    			+ "1 2 3 4 5 6 7 8 9 10 11 3 9 0\n"
+    			+ "-4 -4\n");
+    	assertEquals(11, f.getNumVariables());
+    	assertEquals(3, f.getNumClauses());
+    	assertArrayEquals(new int[] { 0, 3 }, f.clause(0));
+    	assertEquals(11, f.clauseSize(1));
+    	assertArrayEquals(new int[] { 7 }, f.clause(2));
+
+    	// SATLIB files end in %
+    	f = read("p cnf 2 1\n1 2 0\n%\n0\n");
+    	assertEquals(1, f.getNumClauses());
+    	assertEquals(0, read("").getNumClauses());
+    	assertEquals(0, read("0\n").clauseSize(0));
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+    	for (String bad : new String[] { "p cnf 3\n1 0\n", "p dnf 3 1\n", "1 0\np cnf 1 1\n",
+    			"1 - 2 0\n", "1 2x 0\n", "1 a 0\n", "99999999999 0\n" }) {
+    		try {
+    			read(bad);
+    			fail("accepted " + bad);
+    		} catch (ParseException e) {
+    			assertTrue(e.getMessage().contains("line"));
+    		}
+    	}
+    }
+
+    @Test
+    public void testOversizedHeader() throws IOException, ParseException {
+    	// the counts of a header are no reason to run out of memory
+    	CompiledFormula f = read("p cnf 3 900000000\n1 -2 0\n");
+    	assertEquals(3, f.getNumVariables());
+    	assertEquals(1, f.getNumClauses());
+    	assertArrayEquals(new int[] { 0, 3 }, f.clause(0));
+    	f = read("p cnf 1000000000 1\n1 -2 0\n");
+    	assertTrue(f.getNumVariables() >= 2 && f.getNumVariables() <= 26);
+    	assertEquals(1, f.getNumClauses());
+    	assertArrayEquals(new int[] { 0, 3 }, f.clause(0));
+    }
+
+    @Test
+    public void testLargeFile() throws IOException, ParseException {
+    	// literals cut by the chunks the file is copied out in
+    	Random random = new Random(6005);
+    	StringBuilder text = new StringBuilder("p cnf 1000 40000\n");
+    	List<int[]> expected = new ArrayList<int[]>();
+    	for (int i = 0; i < 40000; i++) {
+    		int[] clause = new int[3];
+    		for (int k = 0; k < 3; k++) {
+    			int v;
+    			do {
+    				v = random.nextInt(1000);
+    			} while (k > 0 && (v == clause[0] >> 1 || (k > 1 && v == clause[1] >> 1)));
+    			boolean negated = random.nextBoolean();
+    			clause[k] = CompiledFormula.literal(v, negated);
+    			text.append(negated ? "-" : "").append(v + 1).append(random.nextInt(3) == 0 ? "\n" : " ");
+    		}
+    		text.append("0\n");
+    		expected.add(clause);
+    	}
+    	CompiledFormula f = read(text.toString());
+    	assertEquals(expected.size(), f.getNumClauses());
+    	for (int i = 0; i < expected.size(); i++)
+    		assertTrue(Arrays.equals(expected.get(i), f.clause(i)));
+    }
+
+    @Test
+    public void testSolve() throws IOException, ParseException {
+    	// 3 pigeons in 2 holes
+    	CompiledFormula f = read("p cnf 6 9\n1 2 0\n3 4 0\n5 6 0\n"
+    			+ "-1 -3 0\n-1 -5 0\n-3 -5 0\n-2 -4 0\n-2 -6 0\n-4 -6 0\n");
+    	assertEquals(SolveResult.Outcome.UNSATISFIABLE, SATSolver.solve(f, new SolverConfig()).getOutcome());
+    	f = read("p cnf 6 8\n1 2 0\n3 4 0\n5 6 0\n"
+    			+ "-1 -3 0\n-1 -5 0\n-2 -4 0\n-2 -6 0\n-4 -6 0\n");
+    	assertEquals(SolveResult.Outcome.SATISFIABLE, SATSolver.solve(f, new SolverConfig()).getOutcome());
+    }
+
+    @Test
+    public void testWrite() throws IOException, ParseException {
+    	// constraints go out as clauses, with the same solutions
+    	Literal x = PosLiteral.make("x");
+    	Literal y = PosLiteral.make("y");
+    	Literal z = PosLiteral.make("z");
+    	Formula formula = new Formula(new Clause(x).add(y.getNegation()))
+    			.addAtMostOne(x, y, z)
+    			.addAllDifferent(new Literal[][] { { x, y }, { z, x.getNegation() } });
+    	CompiledFormula f = formula.compile();
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	Dimacs.write(f, out);
+    	CompiledFormula g = read(out.toString("US-ASCII"));
+    	assertTrue(out.toString("US-ASCII").startsWith("p cnf 3 " + g.getNumClauses() + "\n"));
+    	assertEquals(1 + 3 + 2 + 2, g.getNumClauses());
+    	assertArrayEquals(f.clause(0), g.clause(0));
+    	for (boolean[] model : allModels(3)) {
+    		Environment e = f.toEnvironment(model);
+    		boolean holds = true;
+    		for (Clause clause : formula.expandConstraints().getClauses()) {
+    			boolean sat = false;
+    			for (Literal l : clause)
+    				sat |= l.getVariable().eval(e) == (l instanceof PosLiteral ? Bool.TRUE : Bool.FALSE);
+    			holds &= sat;
+    		}
+    		assertEquals(holds, satisfies(g, model));
+    	}
+
+    	// and a large formula comes back clause for clause
+    	Random random = new Random(6005);
+    	StringBuilder text = new StringBuilder();
+    	for (int i = 0; i < 20000; i++)
+    		text.append(random.nextInt(100000) + 1).append(" -").append(random.nextInt(100000) + 1).append(" 0\n");
+    	f = read(text.toString());
+    	out = new ByteArrayOutputStream();
+    	Dimacs.write(f, out);
+    	g = read(out.toString("US-ASCII"));
+    	assertEquals(f.getNumVariables(), g.getNumVariables());
+    	assertEquals(f.getNumClauses(), g.getNumClauses());
+    	for (int i = 0; i < f.getNumClauses(); i++)
+    		assertTrue(Arrays.equals(f.clause(i), g.clause(i)));
+    }
+
+    /**
+     * @return every assignment of n variables
+     */
+    private static List<boolean[]> allModels(int n) {
+    	List<boolean[]> models = new ArrayList<boolean[]>();
+    	for (int bits = 0; bits < 1 << n; bits++) {
+    		boolean[] model = new boolean[n];
+    		for (int v = 0; v < n; v++)
+    			model[v] = (bits >> v & 1) != 0;
+    		models.add(model);
+    	}
+    	return models;
+    }
+
+    /**
+     * @return true if model makes every clause of f true
+     */
+    private static boolean satisfies(CompiledFormula f, boolean[] model) {
+    	for (int i = 0; i < f.getNumClauses(); i++) {
+    		boolean sat = false;
+    		for (int k = 0; k < f.clauseSize(i); k++) {
+    			int lit = f.literalAt(i, k);
+    			sat |= model[lit >> 1] != ((lit & 1) != 0);
+    		}
+    		if (!sat) return false;
+    	}
+    	return true;
+    }
+
+    /**
+     * @return the problem read from a file holding text
+     */
+    static CompiledFormula read(String text) throws IOException, ParseException {
+    	File file = File.createTempFile("dimacs", ".cnf");
+    	try {
+    		Writer out = new FileWriter(file);
+    		out.write(text);
+    		out.close();
+    		return Dimacs.read(file.getPath());
+    	} finally {
+    		file.delete();
+    	}
+    }
+}
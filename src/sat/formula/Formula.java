@@ -17,12 +17,16 @@ import sat.env.Variable;
 /**
  * Formula represents an immutable boolean formula in
  * conjunctive normal form, intended to be solved by a
- * SAT solver.
+ * SAT solver. Besides clauses, a formula may hold AtMostOne
+ * and AllDifferent constraints, which solvers that know them
+ * keep as they are rather than as clauses.
  */
 public class Formula {
     private final ImList<Clause> clauses;
+    private final ImList<AtMostOne> atMostOnes;
+    private final ImList<AllDifferent> allDifferents;
     // Rep invariant:
-    //      clauses != null
+    //      clauses != null, atMostOnes != null, allDifferents != null
     //      clauses contains no null elements (ensured by spec of ImList)
     //
     // Note: although a formula is intended to be a set,  
@@ -36,9 +40,13 @@ public class Formula {
     //        
     //        For example, if the list contains the two clauses (a,b) and (!c,d), then the
     //        corresponding formula is (a or b) and (!c or d).
+    //        Each constraint of atMostOnes and allDifferents is a further
+    //        conjunct.
 
     void checkRep() {
         assert this.clauses != null : "SATProblem, Rep invariant: clauses non-null";
+        assert this.atMostOnes != null : "SATProblem, Rep invariant: constraints non-null";
+        assert this.allDifferents != null : "SATProblem, Rep invariant: constraints non-null";
     }
 
     /**
@@ -49,6 +57,8 @@ public class Formula {
      */
     public Formula() {
     	clauses = new EmptyImList<Clause>();
+    	atMostOnes = new EmptyImList<AtMostOne>();
+    	allDifferents = new EmptyImList<AllDifferent>();
     	checkRep();
     }
 
@@ -60,6 +70,8 @@ public class Formula {
      */
     public Formula(Variable l) {
     	clauses = new NonEmptyImList<Clause>(new Clause(PosLiteral.make(l)));
+    	atMostOnes = new EmptyImList<AtMostOne>();
+    	allDifferents = new EmptyImList<AllDifferent>();
     	checkRep();
     }
 
@@ -70,15 +82,22 @@ public class Formula {
      */
     public Formula(Clause c) {
     	clauses = new NonEmptyImList<Clause>(c);
+    	atMostOnes = new EmptyImList<AtMostOne>();
+    	allDifferents = new EmptyImList<AllDifferent>();
     	checkRep();
     }
     
     /**
      * Create a new problem for solving that contains all the clauses in c
+     * and all the constraints in a and d
      * @param c; list of clauses to be added
+     * @param a; list of AtMostOne constraints to be added
+     * @param d; list of AllDifferent constraints to be added
      */
-    private Formula(ImList<Clause> c){
+    private Formula(ImList<Clause> c, ImList<AtMostOne> a, ImList<AllDifferent> d){
     	clauses = c;
+    	atMostOnes = a;
+    	allDifferents = d;
     	checkRep();
     }
 
@@ -90,7 +109,107 @@ public class Formula {
     public Formula addClause(Clause c) {
     	checkRep();
 //    	if(clauses.contains(c)) return new Formula(clauses);
-    	return new Formula(clauses.add(c));
+    	return new Formula(clauses.add(c), atMostOnes, allDifferents);
+    }
+
+    /**
+     * Add the constraint that at most one of literals is true
+     * 
+     * @return a new problem with the clauses and constraints of this, but an
+     *         AtMostOne constraint of literals added
+     */
+    public Formula addAtMostOne(Literal... literals) {
+    	return addAtMostOne(new AtMostOne(literals));
+    }
+
+    /**
+     * @return a new problem with the clauses and constraints of this, but
+     *         constraint c added
+     */
+    public Formula addAtMostOne(AtMostOne c) {
+    	checkRep();
+    	return new Formula(clauses, atMostOnes.add(c), allDifferents);
+    }
+
+    /**
+     * Add the constraint that the items, one per row of literals, take
+     * different values, where literals[i][k] says that item i takes value k
+     * 
+     * @return a new problem with the clauses and constraints of this, but an
+     *         AllDifferent constraint of literals added
+     */
+    public Formula addAllDifferent(Literal[][] literals) {
+    	return addAllDifferent(new AllDifferent(literals));
+    }
+
+    /**
+     * @return a new problem with the clauses and constraints of this, but
+     *         constraint c added
+     */
+    public Formula addAllDifferent(AllDifferent c) {
+    	checkRep();
+    	return new Formula(clauses, atMostOnes, allDifferents.add(c));
+    }
+
+    /**
+     * Add the constraint that exactly one of literals is true, as the clause
+     * of literals and an AtMostOne constraint of them
+     * 
+     * @return a new problem with the clauses and constraints of this, but
+     *         the constraint that exactly one of literals is true added
+     */
+    public Formula addExactlyOne(Literal... literals) {
+    	Clause c = new Clause();
+    	for (Literal l : literals) {
+    		c = c.add(l);
+    		// a literal and its negation: the clause is always true
+    		if (c == null) return addAtMostOne(literals);
+    	}
+    	return addClause(c).addAtMostOne(literals);
+    }
+
+    /**
+     * Get the AtMostOne constraints of the formula.
+     * 
+     * @return list of constraints
+     */
+    public ImList<AtMostOne> getAtMostOnes() {
+    	checkRep();
+    	return atMostOnes;
+    }
+
+    /**
+     * Get the AllDifferent constraints of the formula.
+     * 
+     * @return list of constraints
+     */
+    public ImList<AllDifferent> getAllDifferents() {
+    	checkRep();
+    	return allDifferents;
+    }
+
+    /**
+     * @return true if this has any AtMostOne or AllDifferent constraints
+     */
+    public boolean hasConstraints() {
+    	return !atMostOnes.isEmpty() || !allDifferents.isEmpty();
+    }
+
+    /**
+     * @return a formula equivalent to this with no constraints, but each
+     *         constraint replaced by its clauses; this itself if it has no
+     *         constraints
+     */
+    public Formula expandConstraints() {
+    	if (!hasConstraints()) return this;
+    	ImList<Clause> all = clauses;
+    	for (AtMostOne a : atMostOnes)
+    		for (Clause c : a.toClauses())
+    			all = all.add(c);
+    	for (AllDifferent d : allDifferents)
+    		for (Clause c : d.toClauses())
+    			all = all.add(c);
+    	return new Formula(all, new EmptyImList<AtMostOne>(), new EmptyImList<AllDifferent>());
     }
 
     /**
@@ -122,6 +241,10 @@ public class Formula {
     	Formula ret = this;
     	for(Clause c : p.clauses)
     		ret = ret.addClause(c);
+    	for(AtMostOne a : p.atMostOnes)
+    		ret = ret.addAtMostOne(a);
+    	for(AllDifferent d : p.allDifferents)
+    		ret = ret.addAllDifferent(d);
     	checkRep();
     	return ret;
     }
@@ -133,6 +256,10 @@ public class Formula {
         // Hint: you'll need to use the distributive law to preserve conjunctive normal form, i.e.:
         //   to do (a & b) .or (c & d),
         //   you'll need to make (a | b) & (a | c) & (b | c) & (b | d)    
+        // constraints have no disjunction of their own, so they are
+        // expanded to clauses first
+        if (hasConstraints() || p.hasConstraints())
+            return expandConstraints().or(p.expandConstraints());
     	Formula ret = new Formula();
     	for(Clause i : clauses){
     		for(Clause j: p.clauses){
@@ -155,6 +282,7 @@ public class Formula {
         //   you'll need to make !((a | b) & c) 
         //                       => (!a & !b) | !c            (moving negation down to the literals)
         //                       => (!a | !c) & (!b | !c)    (conjunctive normal form)
+    	if (hasConstraints()) return expandConstraints().not();
     	
     	Formula ret = new Formula();
     	for(Clause c : clauses){
@@ -172,13 +300,21 @@ public class Formula {
 
     /**
      * 
-     * @return number of clauses in this
+     * @return number of clauses in this, not counting constraints
      */
     public int getSize() {
     	checkRep();
     	return clauses.size();
     }
 
+    /**
+     * @return this formula compiled to numbered variables and int literals,
+     *         ready for a solver
+     */
+    public CompiledFormula compile() {
+    	return CompiledFormula.compile(this);
+    }
+
     /**
      * @return string representation of this formula
      */
@@ -186,6 +322,10 @@ public class Formula {
         String result = "Problem[";
         for (Clause c : clauses)
             result += "\n" + c;
+        for (AtMostOne a : atMostOnes)
+            result += "\n" + a;
+        for (AllDifferent d : allDifferents)
+            result += "\n" + d;
         return result + "]";
     }
 }
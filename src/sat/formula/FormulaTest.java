@@ -6,6 +6,8 @@ import java.util.Iterator;
 
 import org.junit.Test;
 
+import sat.env.Bool;
+import sat.env.Environment;
 import sat.env.Variable;
 
 public class FormulaTest {    
@@ -202,6 +204,110 @@ public class FormulaTest {
     	assertEquals(form3.getClauses().toString(),"[Clause[a, b, c]]");
     }
     
+    @Test
+    public void testCompile() {
+    	// (a | ~b) & (b | c) & ~a
+    	Formula form = new Formula(make(a, nb)).addClause(make(b, c)).addClause(make(na));
+    	CompiledFormula compiled = form.compile();
+    	assertEquals(3, compiled.getNumVariables());
+    	assertEquals(3, compiled.getNumClauses());
+    	int lits = 0;
+    	for (int i = 0; i < compiled.getNumClauses(); i++) {
+    		lits += compiled.clauseSize(i);
+    		for (int k = 0; k < compiled.clauseSize(i); k++) {
+    			int lit = compiled.literalAt(i, k);
+    			assertEquals(lit, compiled.clause(i)[k]);
+    			assertTrue(CompiledFormula.variableOf(lit) < compiled.getNumVariables());
+    		}
+    	}
+    	assertEquals(5, lits);
+    	int lnb = compiled.getLiteral(nb);
+    	assertTrue(CompiledFormula.isNegated(lnb));
+    	assertEquals(compiled.getLiteral(b), lnb ^ 1);
+    	assertEquals(b.getVariable(), compiled.getVariable(CompiledFormula.variableOf(lnb)));
+    	assertEquals(-1, compiled.getLiteral(d));
+
+    	boolean[] model = new boolean[3];
+    	model[compiled.getId(c.getVariable())] = true;
+    	Environment env = compiled.toEnvironment(model);
+    	assertEquals(Bool.FALSE, a.getVariable().eval(env));
+    	assertEquals(Bool.TRUE, c.getVariable().eval(env));
+
+    	Formula back = compiled.toFormula();
+    	assertEquals(3, back.getSize());
+    	for (Clause clause : back.getClauses())
+    		assertTrue(form.getClauses().contains(clause));
+    }
+
+    @Test
+    public void testAtMostOne() {
+    	AtMostOne amo = new AtMostOne(a, b, a, nc);
+    	assertEquals(3, amo.size());
+    	assertTrue(amo.contains(nc));
+    	assertFalse(amo.contains(c));
+    	assertEquals(3, amo.toClauses().size());
+    	assertTrue(amo.toClauses().contains(make(na, c)));
+    	// a clause of a literal and its negation is left out
+    	assertEquals(0, new AtMostOne(a, na).toClauses().size());
+
+    	// exactly one of a, b, c: (a | b | c) and AtMostOne(a, b, c)
+    	Formula form = new Formula(make(nd)).addExactlyOne(a, b, c);
+    	assertEquals(2, form.getSize());
+    	assertEquals(1, form.getAtMostOnes().size());
+    	Formula expanded = form.expandConstraints();
+    	assertEquals(5, expanded.getSize());
+    	assertTrue(expanded.getAtMostOnes().isEmpty());
+    	assertTrue(expanded.getClauses().contains(make(nb, nc)));
+    	assertEquals(1, form.and(new Formula(make(d))).getAtMostOnes().size());
+
+    	// a variable in a constraint only is still numbered
+    	CompiledFormula compiled = new Formula(make(a)).addAtMostOne(a, e).compile();
+    	assertEquals(2, compiled.getNumVariables());
+    	assertEquals(1, compiled.getNumAtMostOnes());
+    	int[] lits = compiled.atMostOne(0);
+    	assertEquals(2, lits.length);
+    	assertEquals(compiled.getLiteral(e), lits[1]);
+    	Formula back = compiled.toFormula();
+    	assertEquals(1, back.getAtMostOnes().size());
+    	assertTrue(back.getAtMostOnes().first().contains(e));
+
+    	// a literal given twice to a compiled AtMostOne must be false, as
+    	// it is once the formula is back
+    	compiled = new CompiledFormula(new Variable[] { a.getVariable(), b.getVariable() },
+    			new int[0], new int[1], new int[] { 0, 0, 2 }, new int[] { 0, 3 }, new int[0][][]);
+    	back = compiled.toFormula();
+    	assertEquals(1, back.getSize());
+    	assertTrue(back.getClauses().contains(make(na)));
+    	assertEquals(2, back.getAtMostOnes().first().size());
+    }
+
+    @Test
+    public void testAllDifferent() {
+    	// items a and b, values 0 and 1: a0 = c, a1 = d, b0 = e, b1 = f
+    	AllDifferent ad = new AllDifferent(new Literal[][] {{c, d}, {e, f}});
+    	assertEquals(2, ad.getNumItems());
+    	assertEquals(2, ad.getNumValues());
+    	assertEquals(f, ad.get(1, 1));
+    	// (c | d), (e | f), (~c | ~e), (~d | ~f)
+    	assertEquals(4, ad.toClauses().size());
+    	assertTrue(ad.toClauses().contains(make(nd, f.getNegation())));
+    	// the same literal for two items cannot be true
+    	assertTrue(new AllDifferent(new Literal[][] {{a}, {a}}).toClauses().contains(make(na)));
+
+    	Formula form = new Formula(make(g)).addAllDifferent(ad);
+    	assertTrue(form.hasConstraints());
+    	assertEquals(5, form.expandConstraints().getSize());
+    	assertFalse(form.expandConstraints().hasConstraints());
+    	CompiledFormula compiled = form.compile();
+    	assertEquals(5, compiled.getNumVariables());
+    	assertEquals(1, compiled.getNumAllDifferents());
+    	int[][] table = compiled.allDifferent(0);
+    	assertEquals(compiled.getLiteral(e), table[1][0]);
+    	Formula back = compiled.toFormula();
+    	assertEquals(1, back.getAllDifferents().size());
+    	assertEquals(d, back.getAllDifferents().first().get(0, 1));
+    }
+
     // Helper function for constructing a clause.  Takes
     // a variable number of arguments, e.g.
     //  clause(a, b, c) will make the clause (a or b or c)
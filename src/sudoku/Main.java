@@ -3,6 +3,8 @@ package sudoku;
 import java.io.IOException;
 
 import sat.SATSolver;
+import sat.SolveResult;
+import sat.SolverConfig;
 import sat.env.Environment;
 import sat.formula.Formula;
 import sudoku.Sudoku.ParseException;
@@ -30,7 +32,8 @@ public class Main {
     }
 
     /**
-     * Solve a puzzle and display the solution and the time it took.
+     * Solve a puzzle and display the solution, the time it took, and the
+     * statistics of the solver.
      * @param sudoku
      */
     private static void timedSolve (Sudoku sudoku) {
@@ -48,7 +51,8 @@ public class Main {
         
         
         System.out.println ("Solving...");
-        Environment e = SATSolver.solve(f);
+        SolveResult result = SATSolver.solve(f, new SolverConfig());
+        Environment e = result.getEnvironment();
         
         System.out.println ("Interpreting solution...");
         Sudoku solution = sudoku.interpretSolution(e);
@@ -58,6 +62,7 @@ public class Main {
         time = System.nanoTime();
         timeTaken = (time - started);
         System.out.println ("Time:" + timeTaken/1000000 + "ms");
+        System.out.println (result.getStats());
     }
 
     /**
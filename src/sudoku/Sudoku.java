@@ -9,13 +9,20 @@ package sudoku;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
+import sat.ExternalPropagator;
+import sat.SATSolver;
 import sat.env.Bool;
 import sat.env.Environment;
 import sat.env.Variable;
 import sat.formula.Clause;
+import sat.formula.CompiledFormula;
 import sat.formula.Formula;
+import sat.formula.Literal;
 import sat.formula.NegLiteral;
+import sat.formula.PosLiteral;
 
 /**
  * Sudoku is an immutable abstract datatype representing instances of Sudoku.
@@ -196,6 +203,30 @@ public class Sudoku {
      *         occupies the entry in row i, column j
      */
     public Formula getProblem() {
+    	Formula formula = getRules();
+    	
+    	//add in unit clauses for the numbers that are present in the sudoku board already
+    	for(int i = 0; i < size; i++)
+    		for(int j = 0; j < size; j++)
+    			if(square[i][j] != -1){
+    				Variable v = occupies[i][j][square[i][j]];
+    				formula = formula.and(new Formula(v));
+    			}
+    	
+    	checkRep();
+
+    	return formula;
+    	
+    }
+
+    /**
+     * @return the rules of Sudoku for the grid size of this puzzle, that is
+     *         getProblem() without the unit clauses of the givens. The rules
+     *         are the same for every puzzle of the same dimension, so they
+     *         can be loaded into an IncrementalSolver once and solved with
+     *         the getGivens() of each puzzle as assumptions.
+     */
+    public Formula getRules() {
 
     	Formula formula = new Formula();
     	
@@ -259,20 +290,149 @@ public class Sudoku {
         			formula = formula.and (atMost).and (atLeast);
     			}
     		}
-    	//add in unit clauses for the numbers that are present in the sudoku board already
-    	for(int i = 0; i < size; i++)
-    		for(int j = 0; j < size; j++)
-    			if(square[i][j] != -1){
-    				Variable v = occupies[i][j][square[i][j]];
-    				formula = formula.and(new Formula(v));
-    			}
-    	
     	checkRep();
 
     	return formula;
     	
     }
 
+    /**
+     * @return the same rules as getRules(), stated with cardinality
+     *         constraints: an AtMostOne constraint for the symbols of each
+     *         entry, and an exactly-one constraint for each symbol in each
+     *         row, column and block. Solvers that propagate these natively
+     *         need a fraction of the clauses of getRules().
+     */
+    public Formula getCompactRules() {
+    	Formula formula = new Formula();
+    	for (int i = 0; i < size; i++)
+    		for (int j = 0; j < size; j++) {
+    			Literal[] symbols = new Literal[size];
+    			for (int k = 0; k < size; k++)
+    				symbols[k] = PosLiteral.make(occupies[i][j][k]);
+    			formula = formula.addAtMostOne(symbols);
+    		}
+    	for (int k = 0; k < size; k++)
+    		for (int i = 0; i < size; i++) {
+    			Literal[] row = new Literal[size];
+    			Literal[] column = new Literal[size];
+    			Literal[] block = new Literal[size];
+    			for (int j = 0; j < size; j++) {
+    				row[j] = PosLiteral.make(occupies[i][j][k]);
+    				column[j] = PosLiteral.make(occupies[j][i][k]);
+    				// block i, in row-major order, and its jth entry
+    				block[j] = PosLiteral.make(occupies[(i / dim) * dim + j / dim][(i % dim) * dim + j % dim][k]);
+    			}
+    			formula = formula.addExactlyOne(row).addExactlyOne(column).addExactlyOne(block);
+    		}
+    	checkRep();
+    	return formula;
+    }
+
+    /**
+     * @return the same rules as getRules(), stated as AllDifferent
+     *         constraints: for each row, column and block, one whose items
+     *         are its entries and whose values are the symbols, and one the
+     *         other way round, whose items are the symbols and whose values
+     *         are the entries. A solver that filters them natively finds
+     *         naked and hidden subsets of candidates, and needs no clauses.
+     */
+    public Formula getGlobalRules() {
+    	Formula formula = new Formula();
+    	for (int i = 0; i < size; i++)
+    		for (int unit = 0; unit < 3; unit++) {
+    			// entries[j][k]: the jth entry of the unit holds symbol k
+    			Literal[][] entries = new Literal[size][size];
+    			Literal[][] symbols = new Literal[size][size];
+    			for (int j = 0; j < size; j++) {
+    				int row = unit == 0 ? i : unit == 1 ? j : (i / dim) * dim + j / dim;
+    				int column = unit == 0 ? j : unit == 1 ? i : (i % dim) * dim + j % dim;
+    				for (int k = 0; k < size; k++) {
+    					entries[j][k] = PosLiteral.make(occupies[row][column][k]);
+    					symbols[k][j] = entries[j][k];
+    				}
+    			}
+    			formula = formula.addAllDifferent(entries).addAllDifferent(symbols);
+    		}
+    	checkRep();
+    	return formula;
+    }
+
+    /**
+     * @return getGlobalRules() with the unit clauses of the givens, a
+     *         problem with the same solutions as getProblem()
+     */
+    public Formula getGlobalProblem() {
+    	Formula formula = getGlobalRules();
+    	for (Literal given : getGivens())
+    		formula = formula.addClause(new Clause(given));
+    	return formula;
+    }
+
+    /**
+     * @return getCompactRules() with the unit clauses of the givens, a
+     *         problem with the same solutions as getProblem()
+     */
+    public Formula getCompactProblem() {
+    	Formula formula = getCompactRules();
+    	for (Literal given : getGivens())
+    		formula = formula.addClause(new Clause(given));
+    	return formula;
+    }
+
+    /**
+     * @param formula
+     *            a compiled problem over the variables of this puzzle, such
+     *            as getProblem().compile()
+     * @return a propagator that makes pointing, claiming and X-wing
+     *         deductions about formula during a single solve, to be passed
+     *         to SATSolver.solve(CompiledFormula, SolverConfig,
+     *         ExternalPropagator). Requires dim <= 5
+     */
+    public ExternalPropagator propagator(CompiledFormula formula) {
+    	return new SudokuPropagator(dim, occupies, formula);
+    }
+
+    /**
+     * Count the ways of completing this puzzle, up to limit.
+     *
+     * Requires limit >= 0
+     * @return the number of filled-in grids that solve this puzzle, or
+     *         limit if there are at least that many
+     */
+    public long countSolutions(long limit) {
+    	Variable[] variables = new Variable[size * size * size];
+    	int n = 0;
+    	for (int i = 0; i < size; i++)
+    		for (int j = 0; j < size; j++)
+    			for (int k = 0; k < size; k++)
+    				variables[n++] = occupies[i][j][k];
+    	// the compact rules enumerate fastest: the filtering of the global
+    	// ones costs more in every solve than it saves
+    	return SATSolver.countSolutions(getCompactProblem(), variables, limit);
+    }
+
+    /**
+     * @return true iff this puzzle has exactly one solution, as a proper
+     *         Sudoku must; the search stops at a second solution
+     */
+    public boolean isUnique() {
+    	return countSolutions(2) == 1;
+    }
+
+    /**
+     * @return one positive literal occupies(i,j,k) for each entry of the
+     *         puzzle in row i, column j that is given as the kth symbol
+     */
+    public Literal[] getGivens() {
+    	List<Literal> givens = new ArrayList<Literal>();
+    	for(int i = 0; i < size; i++)
+    		for(int j = 0; j < size; j++)
+    			if(square[i][j] != -1)
+    				givens.add(PosLiteral.make(occupies[i][j][square[i][j]]));
+    	return givens.toArray(new Literal[givens.size()]);
+    }
+
     /**
      * Interpret the solved SAT problem as a filled-in grid.
      * 
@@ -0,0 +1,295 @@
+package sudoku;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import sat.ExternalPropagator;
+import sat.env.Variable;
+import sat.formula.CompiledFormula;
+
+/**
+ * Sudoku deductions that look at a symbol across several rows, columns and
+ * blocks at once, plugged into the CDCL search as an ExternalPropagator.
+ * They follow from the rules of Sudoku, but the clauses of the rules only
+ * reach them through search:
+ *
+ *     pointing: if the places left for a symbol in a block all lie in one
+ *         row (column), the symbol goes nowhere else in that row (column)
+ *     claiming: if the places left for a symbol in a row (column) all lie
+ *         in one block, the symbol goes nowhere else in that block
+ *     X-wing: if the places left for a symbol in two rows (columns) are
+ *         the same two columns (rows), the symbol goes nowhere else in
+ *         those columns (rows)
+ *
+ * The places left for each symbol are kept as one bit mask per row and one
+ * per column, updated as the solver assigns and backtracks, so that each
+ * rule is a few mask operations. A deduction remembers only which rule made
+ * it and where; its reason clause, the places found empty, is built from
+ * that if the solver asks for it. Only the symbols whose places changed
+ * since they were last looked at are searched for deductions again.
+ * Requires the puzzle to have at most 31 rows. A SudokuPropagator is
+ * mutable, and belongs to a single solve.
+ */
+final class SudokuPropagator implements ExternalPropagator {
+    // rules, as recorded for the reason of a deduction
+    private static final int POINT_ROW = 0;
+    private static final int POINT_COLUMN = 1;
+    private static final int CLAIM_ROW = 2;
+    private static final int CLAIM_COLUMN = 3;
+    private static final int XWING_ROWS = 4;
+    private static final int XWING_COLUMNS = 5;
+
+    private final int dim;
+    private final int size;
+    // lit[i][j][k] is the literal of occupies(i,j,k), or -1 if the problem
+    // does not mention it, and place[v] is i*size*size + j*size + k for the
+    // variable v of occupies(i,j,k), or -1
+    private final int[][][] lit;
+    private final int[] place;
+    // rows[k][i] has bit j set, and columns[k][j] has bit i set, unless the
+    // solver has made occupies(i,j,k) false
+    private final int[][] rows;
+    private final int[][] columns;
+    // the places made false, in order, and where each decision level starts
+    private final List<Integer> undo = new ArrayList<Integer>();
+    private final List<Integer> levels = new ArrayList<Integer>();
+    // deductions not yet handed to the solver, as places, and queued[p]
+    // iff place p is in pending
+    private final List<Integer> pending = new ArrayList<Integer>();
+    private final boolean[] queued;
+    // dirty[k] if the places of symbol k changed since the last search for
+    // its deductions, and changed if dirty[k] for some k
+    private final boolean[] dirty;
+    private boolean changed = true;
+    // why[v], for a literal ~occupies(i,j,k) of variable v handed to the
+    // solver, is {rule, k, a, b, mask}: the rule and where it applied
+    private final int[][] why;
+    /*
+     * Rep invariant:
+     *     bit j of rows[k][i] == bit i of columns[k][j]
+     *     a place in undo has its bits clear, and every place with its
+     *         bits clear and a literal is in undo
+     *
+     * Abstraction function:
+     *     the candidates of a Sudoku grid under the assignment the solver
+     *     has told about: symbol k may still occupy entry (i,j) iff bit j of
+     *     rows[k][i] is set
+     */
+
+    /**
+     * Make a propagator for occupies, the variables of a puzzle of dimension
+     * dim, in formula.
+     */
+    SudokuPropagator(int dim, Variable[][][] occupies, CompiledFormula formula) {
+        this.dim = dim;
+        size = dim * dim;
+        lit = new int[size][size][size];
+        place = new int[formula.getNumVariables()];
+        Arrays.fill(place, -1);
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++)
+                for (int k = 0; k < size; k++) {
+                    int v = formula.getId(occupies[i][j][k]);
+                    lit[i][j][k] = v < 0 ? -1 : CompiledFormula.literal(v, false);
+                    if (v >= 0) place[v] = (i * size + j) * size + k;
+                }
+        rows = new int[size][size];
+        columns = new int[size][size];
+        for (int k = 0; k < size; k++) {
+            Arrays.fill(rows[k], (1 << size) - 1);
+            Arrays.fill(columns[k], (1 << size) - 1);
+        }
+        why = new int[formula.getNumVariables()][];
+        queued = new boolean[size * size * size];
+        dirty = new boolean[size];
+        Arrays.fill(dirty, true);
+    }
+
+    public boolean observes(int v) {
+        return place[v] >= 0;
+    }
+
+    public void notifyAssignment(int l) {
+        if (!CompiledFormula.isNegated(l)) return;
+        int p = place[CompiledFormula.variableOf(l)];
+        int i = p / (size * size);
+        int j = p / size % size;
+        int k = p % size;
+        rows[k][i] &= ~(1 << j);
+        columns[k][j] &= ~(1 << i);
+        undo.add(p);
+        dirty[k] = true;
+        changed = true;
+    }
+
+    public void notifyNewDecisionLevel() {
+        levels.add(undo.size());
+    }
+
+    public void notifyBacktrack(int level) {
+        int stop = levels.get(level);
+        while (undo.size() > stop) {
+            int p = undo.remove(undo.size() - 1);
+            int i = p / (size * size);
+            int j = p / size % size;
+            int k = p % size;
+            rows[k][i] |= 1 << j;
+            columns[k][j] |= 1 << i;
+            dirty[k] = true;
+        }
+        levels.subList(level, levels.size()).clear();
+        // deductions dropped unhanded are found again
+        for (int p : pending) {
+            queued[p] = false;
+            dirty[p % size] = true;
+        }
+        pending.clear();
+        changed = true;
+    }
+
+    public int propagate() {
+        if (pending.isEmpty() && changed) {
+            changed = false;
+            for (int k = 0; k < size; k++) {
+                if (!dirty[k]) continue;
+                dirty[k] = false;
+                deduce(k);
+            }
+        }
+        if (pending.isEmpty()) return -1;
+        int p = pending.remove(pending.size() - 1);
+        queued[p] = false;
+        return lit[p / (size * size)][p / size % size][p % size] ^ 1;
+    }
+
+    public int[] reason(int l) {
+        int[] w = why[CompiledFormula.variableOf(l)];
+        int rule = w[0], k = w[1], a = w[2], b = w[3], mask = w[4];
+        List<Integer> clause = new ArrayList<Integer>();
+        clause.add(l);
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++) {
+                int block = (i / dim) * dim + j / dim;
+                boolean empty;
+                switch (rule) {
+                case POINT_ROW:
+                    empty = block == a && i != b;
+                    break;
+                case POINT_COLUMN:
+                    empty = block == a && j != b;
+                    break;
+                case CLAIM_ROW:
+                    empty = i == a && block != b;
+                    break;
+                case CLAIM_COLUMN:
+                    empty = j == a && block != b;
+                    break;
+                case XWING_ROWS:
+                    empty = (i == a || i == b) && (mask & 1 << j) == 0;
+                    break;
+                default:
+                    empty = (j == a || j == b) && (mask & 1 << i) == 0;
+                    break;
+                }
+                if (empty && lit[i][j][k] >= 0) clause.add(lit[i][j][k]);
+            }
+        int[] result = new int[clause.size()];
+        for (int n = 0; n < result.length; n++)
+            result[n] = clause.get(n);
+        return result;
+    }
+
+    public int[] checkModel(boolean[] model) {
+        // the clauses of the rules already hold
+        return null;
+    }
+
+    /**
+     * Look for the deductions about symbol k, and queue them.
+     */
+    private void deduce(int k) {
+        int band = (1 << dim) - 1;
+        for (int block = 0; block < size; block++) {
+            int top = (block / dim) * dim;
+            int left = (block % dim) * dim;
+            // the rows and columns of the places left for k in the block
+            int inRows = 0;
+            int inColumns = 0;
+            for (int i = top; i < top + dim; i++) {
+                int here = rows[k][i] >> left & band;
+                if (here != 0) inRows |= 1 << i;
+                inColumns |= here << left;
+            }
+            if (Integer.bitCount(inRows) == 1) {
+                int i = Integer.numberOfTrailingZeros(inRows);
+                eliminate(k, rows[k][i] & ~(band << left), i, -1, POINT_ROW, block, i, 0);
+            }
+            if (Integer.bitCount(inColumns) == 1) {
+                int j = Integer.numberOfTrailingZeros(inColumns);
+                eliminate(k, columns[k][j] & ~(band << top), -1, j, POINT_COLUMN, block, j, 0);
+            }
+        }
+        for (int line = 0; line < size; line++) {
+            int rowBlock = blockOf(rows[k][line]);
+            if (rowBlock >= 0) {
+                int block = (line / dim) * dim + rowBlock;
+                int left = rowBlock * dim;
+                for (int i = (line / dim) * dim; i < (line / dim + 1) * dim; i++)
+                    if (i != line) eliminate(k, rows[k][i] & band << left, i, -1, CLAIM_ROW, line, block, 0);
+            }
+            int columnBlock = blockOf(columns[k][line]);
+            if (columnBlock >= 0) {
+                int block = columnBlock * dim + line / dim;
+                int top = columnBlock * dim;
+                for (int j = (line / dim) * dim; j < (line / dim + 1) * dim; j++)
+                    if (j != line) eliminate(k, columns[k][j] & band << top, -1, j, CLAIM_COLUMN, line, block, 0);
+            }
+        }
+        for (int a = 0; a < size; a++)
+            for (int b = a + 1; b < size; b++) {
+                int mask = rows[k][a];
+                if (Integer.bitCount(mask) == 2 && rows[k][b] == mask)
+                    for (int j = 0; j < size; j++)
+                        if ((mask & 1 << j) != 0)
+                            eliminate(k, columns[k][j] & ~(1 << a | 1 << b), -1, j, XWING_ROWS, a, b, mask);
+                mask = columns[k][a];
+                if (Integer.bitCount(mask) == 2 && columns[k][b] == mask)
+                    for (int i = 0; i < size; i++)
+                        if ((mask & 1 << i) != 0)
+                            eliminate(k, rows[k][i] & ~(1 << a | 1 << b), i, -1, XWING_COLUMNS, a, b, mask);
+            }
+    }
+
+    /**
+     * @return the block, counted along the line, holding all the places set
+     *         in line, or -1 if they are in several blocks or there are none
+     */
+    private int blockOf(int line) {
+        if (line == 0) return -1;
+        int low = Integer.numberOfTrailingZeros(line) / dim;
+        int high = (31 - Integer.numberOfLeadingZeros(line)) / dim;
+        return low == high ? low : -1;
+    }
+
+    /**
+     * Queue ~occupies for symbol k at each place set in mask: the columns of
+     * row i if i >= 0, else the rows of column j; the rule and where it
+     * applied are kept for the reason.
+     */
+    private void eliminate(int k, int mask, int i, int j, int rule, int a, int b, int extra) {
+        for (; mask != 0; mask &= mask - 1) {
+            int n = Integer.numberOfTrailingZeros(mask);
+            int row = i >= 0 ? i : n;
+            int column = i >= 0 ? n : j;
+            int l = lit[row][column][k];
+            if (l < 0) continue;
+            int p = (row * size + column) * size + k;
+            // a place queued twice keeps the reason it was first queued with
+            if (queued[p]) continue;
+            queued[p] = true;
+            why[CompiledFormula.variableOf(l)] = new int[] { rule, k, a, b, extra };
+            pending.add(p);
+        }
+    }
+}
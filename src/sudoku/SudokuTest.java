@@ -2352,4 +2352,25 @@ public class SudokuTest {
     
     
     
+    @Test
+    public void testUniqueness() throws IOException, ParseException {
+    	// an empty 4x4 grid can be filled in 288 ways
+    	assertEquals(288, new Sudoku(2).countSolutions(1000));
+    	assertEquals(10, new Sudoku(2).countSolutions(10));
+    	assertFalse(new Sudoku(2).isUnique());
+    	for (String name : new String[] { "easy", "hard", "evil" }) {
+    		Sudoku puzzle = Sudoku.fromFile(3, "samples/sudoku_" + name + ".txt");
+    		assertTrue(name, puzzle.isUnique());
+    	}
+    	// two givens that contradict each other leave no solution
+    	Sudoku clash = new Sudoku(2, new int[][] { { 0, 0, -1, -1 }, { -1, -1, -1, -1 },
+    			{ -1, -1, -1, -1 }, { -1, -1, -1, -1 } });
+    	assertEquals(0, clash.countSolutions(10));
+    	assertFalse(clash.isUnique());
+    	// a single given fixes one symbol of 4, a quarter of the grids
+    	Sudoku one = new Sudoku(2, new int[][] { { 2, -1, -1, -1 }, { -1, -1, -1, -1 },
+    			{ -1, -1, -1, -1 }, { -1, -1, -1, -1 } });
+    	assertEquals(72, one.countSolutions(1000));
+    }
+    
 }
\ No newline at end of file